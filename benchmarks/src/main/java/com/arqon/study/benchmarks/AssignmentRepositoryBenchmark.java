@@ -0,0 +1,136 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.Assignment;
+import com.arqon.study.AssignmentRepository;
+import com.arqon.study.CalendarDay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and finders of {@link AssignmentRepository} at increasing sizes. Rows are
+ * unowned so the no-owner finders query all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g"})
+public class AssignmentRepositoryBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private AssignmentRepository repository;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        repository = new AssignmentRepository(
+                BenchmarkData.fixedClock(BenchmarkData.EPOCH.plusDays(BenchmarkData.DUE_DAYS / 2)));
+        random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) {
+            Assignment assignment = BenchmarkData.assignment(random);
+            assignment.setCourseId((long) (i % BenchmarkData.COURSES));
+            repository.save(assignment);
+        }
+    }
+
+    private long randomId() {
+        return 1 + random.nextInt(rows);
+    }
+
+    @Benchmark
+    public Assignment saveExisting() {
+        Assignment assignment = repository.findAssignmentById(randomId()).get();
+        assignment.setDueDate(BenchmarkData.EPOCH.plusMinutes(random.nextInt(BenchmarkData.DUE_DAYS * 24 * 60)));
+        return repository.save(assignment);
+    }
+
+    /** Insert a new row and delete it again, so the size stays at {@link #rows} */
+    @Benchmark
+    public boolean saveNewAndDelete() {
+        Assignment saved = repository.save(BenchmarkData.assignment(random));
+        return repository.deleteAssignment(saved.getId());
+    }
+
+    @Benchmark
+    public Optional<Assignment> findAssignmentById() {
+        return repository.findAssignmentById(randomId());
+    }
+
+    @Benchmark
+    public List<Assignment> findAllAssignments() {
+        return repository.findAllAssignments();
+    }
+
+    @Benchmark
+    public List<Assignment> findAssignmentsByCourse() {
+        return repository.findAssignmentsByCourse(BenchmarkData.courseCode(random.nextInt(BenchmarkData.COURSES)));
+    }
+
+    @Benchmark
+    public List<Assignment> findAssignmentsByCourseId() {
+        return repository.findAssignmentsByCourseId((long) random.nextInt(BenchmarkData.COURSES));
+    }
+
+    @Benchmark
+    public List<Assignment> findAssignmentsByStatus() {
+        return repository.findAssignmentsByStatus(
+                BenchmarkData.STATUSES[random.nextInt(BenchmarkData.STATUSES.length)]);
+    }
+
+    @Benchmark
+    public List<Assignment> findAssignmentsByDueDateRangeOneWeek() {
+        LocalDateTime start = BenchmarkData.EPOCH.plusDays(random.nextInt(BenchmarkData.DUE_DAYS - 7));
+        return repository.findAssignmentsByDueDateRange(start, start.plusDays(7));
+    }
+
+    @Benchmark
+    public List<Assignment> findOverdueAssignments() {
+        return repository.findOverdueAssignments();
+    }
+
+    @Benchmark
+    public List<Assignment> findAllAssignmentsSortedByDueDate() {
+        return repository.findAllAssignmentsSortedByDueDate();
+    }
+
+    @Benchmark
+    public List<Assignment> findAllAssignmentsSortedByPriority() {
+        return repository.findAllAssignmentsSortedByPriority(null);
+    }
+
+    @Benchmark
+    public List<Assignment> findMostUrgentAssignmentsTop20() {
+        return repository.findMostUrgentAssignments(null, 20);
+    }
+
+    @Benchmark
+    public List<CalendarDay> findCalendarDaysOneMonth() {
+        LocalDate start = BenchmarkData.EPOCH.toLocalDate().plusDays(random.nextInt(BenchmarkData.DUE_DAYS - 31));
+        return repository.findCalendarDays(null, start, start.plusDays(30));
+    }
+
+    @Benchmark
+    public long count() {
+        return repository.count();
+    }
+}
@@ -0,0 +1,96 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.DashboardAccessResult;
+import com.arqon.study.LoginResult;
+import com.arqon.study.PasswordHasher;
+import com.arqon.study.SessionManager;
+import com.arqon.study.UserAuthenticationService;
+import com.arqon.study.UserRegistrationResult;
+import com.arqon.study.UserRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Login, session validation and dashboard access with many threads hitting one service
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AuthBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"1000"})
+    public int users;
+
+    /** PBKDF2 iterations; the production default dominates login time */
+    @Param({"120000"})
+    public int iterations;
+
+    private PasswordHasher hasher;
+    private UserAuthenticationService service;
+    private SessionManager sessionManager;
+    private String[] emails;
+    private String[] sessionIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        hasher = new PasswordHasher(iterations, cores, cores * 8, 30_000);
+        sessionManager = new SessionManager();
+        service = UserAuthenticationService.builder(new UserRepository(), sessionManager)
+                .passwordHasher(hasher)
+                .build();
+        emails = new String[users];
+        sessionIds = new String[users];
+        // Registration hashes every password, so spread it over the cores
+        IntStream.range(0, users).parallel().forEach(i -> {
+            emails[i] = "user" + i + "@example.com";
+            UserRegistrationResult registration = service.registerUser(emails[i], PASSWORD);
+            if (!registration.isSuccess()) {
+                throw new IllegalStateException(registration.getErrorMessage());
+            }
+            sessionIds[i] = sessionManager.createSession(registration.getUser().getId()).getSessionId();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hasher.shutdown();
+    }
+
+    @Benchmark
+    public LoginResult loginUser() {
+        return service.loginUser(emails[ThreadLocalRandom.current().nextInt(users)], PASSWORD);
+    }
+
+    @Benchmark
+    public boolean isValidSession() {
+        return sessionManager.isValidSession(sessionIds[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    @Benchmark
+    public DashboardAccessResult accessDashboard() {
+        return service.accessDashboard(sessionIds[ThreadLocalRandom.current().nextInt(users)]);
+    }
+}
@@ -0,0 +1,64 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.Assignment;
+import com.arqon.study.Course;
+import com.arqon.study.TimeSource;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic rows shared by the benchmarks
+ */
+final class BenchmarkData {
+    static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+    static final String[] STATUSES = {"todo", "in-progress", "completed"};
+    static final String[] PRIORITIES = {"high", "medium", "low"};
+    static final int COURSES = 200;
+    /** Due dates are spread over this many days from {@link #EPOCH} */
+    static final int DUE_DAYS = 365;
+
+    private BenchmarkData() {}
+
+    static String courseCode(int index) {
+        return "C" + index;
+    }
+
+    static Assignment assignment(SplittableRandom random, String course) {
+        return new Assignment(null, "Assignment " + random.nextInt(1_000_000), "Synthetic benchmark row",
+                course, EPOCH.plusMinutes(random.nextInt(DUE_DAYS * 24 * 60)),
+                STATUSES[random.nextInt(STATUSES.length)], PRIORITIES[random.nextInt(PRIORITIES.length)],
+                1 + random.nextInt(10));
+    }
+
+    static Assignment assignment(SplittableRandom random) {
+        return assignment(random, courseCode(random.nextInt(COURSES)));
+    }
+
+    static Course course(SplittableRandom random, int index) {
+        int startDay = random.nextInt(DUE_DAYS);
+        return new Course("Course " + index + " " + Integer.toString(random.nextInt(1 << 20), 36),
+                "C" + index, "Instructor " + random.nextInt(500), null,
+                EPOCH.toLocalDate().plusDays(startDay).toString(),
+                EPOCH.toLocalDate().plusDays(startDay + 30 + random.nextInt(120)).toString());
+    }
+
+    /**
+     * Clock stopped at one instant, so timestamps and overdue checks are repeatable
+     */
+    static TimeSource fixedClock(LocalDateTime now) {
+        long millis = now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new TimeSource() {
+            @Override
+            public LocalDateTime now() {
+                return now;
+            }
+
+            @Override
+            public long currentTimeMillis() {
+                return millis;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.Course;
+import com.arqon.study.CourseRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and finders of {@link CourseRepository} at increasing sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g"})
+public class CourseRepositoryBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private CourseRepository repository;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        repository = new CourseRepository(BenchmarkData.fixedClock(BenchmarkData.EPOCH));
+        random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) {
+            repository.save(BenchmarkData.course(random, i));
+        }
+    }
+
+    private long randomId() {
+        return 1 + random.nextInt(rows);
+    }
+
+    @Benchmark
+    public Course saveExisting() {
+        Course course = repository.findById(randomId()).get();
+        course.setInstructor("Instructor " + random.nextInt(500));
+        return repository.save(course);
+    }
+
+    /** Insert a new row and delete it again, so the size stays at {@link #rows} */
+    @Benchmark
+    public boolean saveNewAndDelete() {
+        Course saved = repository.save(BenchmarkData.course(random, rows + random.nextInt(rows)));
+        return repository.deleteById(saved.getId());
+    }
+
+    @Benchmark
+    public Optional<Course> findById() {
+        return repository.findById(randomId());
+    }
+
+    @Benchmark
+    public List<Course> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<Course> suggestTop10() {
+        return repository.suggest("c" + random.nextInt(100), 10);
+    }
+
+    @Benchmark
+    public List<Course> findActiveOn() {
+        return repository.findActiveOn(null, BenchmarkData.EPOCH.toLocalDate().plusDays(random.nextInt(400)));
+    }
+
+    @Benchmark
+    public List<Course> findActiveBetweenOneWeek() {
+        LocalDate from = BenchmarkData.EPOCH.toLocalDate().plusDays(random.nextInt(400));
+        return repository.findActiveBetween(null, from, from.plusDays(6));
+    }
+}
@@ -0,0 +1,74 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.Assignment;
+import com.arqon.study.AssignmentRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findAssignmentsWithFilters} where the course filter matches a given fraction
+ * of the rows, alone and combined with a status and a one-month due date window
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g"})
+public class FilterSelectivityBenchmark {
+    private static final String TARGET_COURSE = "TARGET";
+
+    @Param({"1000000"})
+    public int rows;
+
+    /** Fraction of rows in the filtered course */
+    @Param({"0.001", "0.01", "0.1", "1.0"})
+    public double selectivity;
+
+    private AssignmentRepository repository;
+    private LocalDateTime windowStart;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        repository = new AssignmentRepository(BenchmarkData.fixedClock(BenchmarkData.EPOCH));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) {
+            Assignment assignment = random.nextDouble() < selectivity
+                    ? BenchmarkData.assignment(random, TARGET_COURSE)
+                    : BenchmarkData.assignment(random);
+            repository.save(assignment);
+        }
+        windowStart = BenchmarkData.EPOCH.plusDays(BenchmarkData.DUE_DAYS / 2);
+    }
+
+    @Benchmark
+    public List<Assignment> courseOnly() {
+        return repository.findAssignmentsWithFilters(TARGET_COURSE, null, null, null);
+    }
+
+    @Benchmark
+    public List<Assignment> courseAndStatus() {
+        return repository.findAssignmentsWithFilters(TARGET_COURSE, "todo", null, null);
+    }
+
+    @Benchmark
+    public List<Assignment> courseStatusAndMonth() {
+        return repository.findAssignmentsWithFilters(TARGET_COURSE, "todo", windowStart, windowStart.plusDays(30));
+    }
+}
@@ -0,0 +1,86 @@
+package com.arqon.study.benchmarks;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line for workload generation and replay.
+ *
+ * <pre>
+ * generate --seed 42 --users 1000 --courses 3000 --assignments 50000 --operations 200000 --out workload.tsv
+ * replay   --trace workload.tsv --threads 16 --rate 5000 --hash-iterations 1000
+ * run      (generate options, then replay options, without a trace file)
+ * </pre>
+ *
+ * A rate of 0 replays as fast as the threads allow.
+ */
+public final class LoadTestRunner {
+    private LoadTestRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || (args.length - 1) % 2 != 0) {
+            usage();
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        switch (args[0]) {
+            case "generate": {
+                Workload workload = generate(options);
+                Path out = Paths.get(options.getOrDefault("out", "workload.tsv"));
+                workload.write(out);
+                System.out.println("Wrote " + workload.getOperations().size() + " operations to " + out);
+                break;
+            }
+            case "replay":
+                replay(Workload.read(Paths.get(required(options, "trace"))), options);
+                break;
+            case "run":
+                replay(generate(options), options);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static Workload generate(Map<String, String> options) {
+        return new WorkloadGenerator(Long.parseLong(options.getOrDefault("seed", "42")))
+                .generate(intOption(options, "users", 1_000), intOption(options, "courses", 3_000),
+                        intOption(options, "assignments", 50_000), intOption(options, "operations", 200_000));
+    }
+
+    private static void replay(Workload workload, Map<String, String> options) throws Exception {
+        WorkloadReplayer replayer = new WorkloadReplayer(
+                intOption(options, "threads", Runtime.getRuntime().availableProcessors()),
+                Double.parseDouble(options.getOrDefault("rate", "0")),
+                intOption(options, "hash-iterations", 1_000));
+        System.out.printf("Replaying seed %d: %d users, %d courses, %d assignments, %d operations%n",
+                workload.getSeed(), workload.getUsers(), workload.getCourses(), workload.getAssignments(),
+                workload.getOperations().size());
+        System.out.print(replayer.replay(workload).format());
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("--" + name + " is required");
+        }
+        return value;
+    }
+
+    private static void usage() {
+        System.out.println("usage: LoadTestRunner generate|replay|run [--option value]...");
+        System.out.println("  generate: --seed --users --courses --assignments --operations --out");
+        System.out.println("  replay:   --trace --threads --rate --hash-iterations");
+        System.out.println("  run:      generate and replay options, without --out and --trace");
+    }
+}
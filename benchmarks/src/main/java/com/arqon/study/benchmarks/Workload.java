@@ -0,0 +1,86 @@
+package com.arqon.study.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated load test workload: how many users, courses and assignments it creates and
+ * the operations, in order.
+ *
+ * Trace files start with one header line
+ * {@code # study-planner workload seed=<seed> users=<n> courses=<n> assignments=<n>},
+ * followed by one {@link WorkloadOperation#toLine() operation} per line.
+ */
+final class Workload {
+    private static final String HEADER = "# study-planner workload";
+
+    private final long seed;
+    private final int users;
+    private final int courses;
+    private final int assignments;
+    private final List<WorkloadOperation> operations;
+
+    Workload(long seed, int users, int courses, int assignments, List<WorkloadOperation> operations) {
+        this.seed = seed;
+        this.users = users;
+        this.courses = courses;
+        this.assignments = assignments;
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    long getSeed() { return seed; }
+    int getUsers() { return users; }
+    int getCourses() { return courses; }
+    int getAssignments() { return assignments; }
+    List<WorkloadOperation> getOperations() { return operations; }
+
+    void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER + " seed=" + seed + " users=" + users + " courses=" + courses
+                    + " assignments=" + assignments);
+            out.newLine();
+            for (WorkloadOperation operation : operations) {
+                out.write(operation.toLine());
+                out.newLine();
+            }
+        }
+    }
+
+    static Workload read(Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER)) {
+                throw new IOException("Not a workload trace: " + file);
+            }
+            long seed = 0;
+            int users = 0;
+            int courses = 0;
+            int assignments = 0;
+            for (String field : header.substring(HEADER.length()).trim().split(" ")) {
+                String[] pair = field.split("=", 2);
+                switch (pair[0]) {
+                    case "seed": seed = Long.parseLong(pair[1]); break;
+                    case "users": users = Integer.parseInt(pair[1]); break;
+                    case "courses": courses = Integer.parseInt(pair[1]); break;
+                    case "assignments": assignments = Integer.parseInt(pair[1]); break;
+                    default: break;
+                }
+            }
+            List<WorkloadOperation> operations = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    operations.add(WorkloadOperation.parse(line));
+                }
+            }
+            return new Workload(seed, users, courses, assignments, operations);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.benchmarks.WorkloadOperation.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seedable generator of realistic study planner load.
+ *
+ * A workload first registers and logs in every user, creates the courses (course
+ * {@code c} belongs to user {@code c % users}) and then the assignments, each in a random
+ * course of its owner. It then runs a mix of reads and updates:
+ *
+ * <ul>
+ *   <li>35% filtered reads, by the reader's own course, status and/or the coming week</li>
+ *   <li>25% status updates, moving an assignment todo, in-progress, completed and now
+ *       and then reopening it</li>
+ *   <li>20% dashboard loads, 15% priority listings and 5% fresh logins</li>
+ * </ul>
+ *
+ * Mixed operations favour a minority of active users. Due dates cluster in the next two
+ * weeks, with some already overdue and a long tail over the term, at typical deadline
+ * times; one in five assignments is high priority and half are medium.
+ *
+ * The same seed and sizes always produce the same workload.
+ */
+final class WorkloadGenerator {
+    static final String[] STATUSES = {"todo", "in-progress", "completed"};
+    private static final int[] DUE_MINUTES_OF_DAY = {9 * 60, 12 * 60, 17 * 60, 23 * 60 + 59};
+    private static final int DAY = 24 * 60;
+
+    private final long seed;
+
+    WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param mixedOperations number of operations after the setup phase
+     */
+    Workload generate(int users, int courses, int assignments, int mixedOperations) {
+        if (users <= 0 || courses <= 0 || assignments < 0 || mixedOperations < 0) {
+            throw new IllegalArgumentException("Need at least one user and one course");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        List<WorkloadOperation> operations = new ArrayList<>(2 * users + courses + assignments + mixedOperations);
+        for (int user = 0; user < users; user++) {
+            operations.add(new WorkloadOperation(Type.REGISTER, user, -1, -1, 0, null, null));
+        }
+        for (int user = 0; user < users; user++) {
+            operations.add(new WorkloadOperation(Type.LOGIN, user, -1, -1, 0, null, null));
+        }
+        for (int course = 0; course < courses; course++) {
+            operations.add(new WorkloadOperation(Type.CREATE_COURSE, ownerOfCourse(course, users), course, -1,
+                    0, null, null));
+        }
+        int[] courseOfAssignment = new int[assignments];
+        int[] statusOfAssignment = new int[assignments];
+        for (int assignment = 0; assignment < assignments; assignment++) {
+            int course = random.nextInt(courses);
+            courseOfAssignment[assignment] = course;
+            operations.add(new WorkloadOperation(Type.CREATE_ASSIGNMENT, ownerOfCourse(course, users), course,
+                    assignment, dueOffsetMinutes(random), priority(random), null));
+        }
+        for (int i = 0; i < mixedOperations; i++) {
+            int roll = random.nextInt(100);
+            if (roll < 25 && assignments > 0) {
+                int assignment = random.nextInt(assignments);
+                int status = statusOfAssignment[assignment];
+                status = status == 2 ? (random.nextInt(4) == 0 ? 0 : 2) : status + 1;
+                statusOfAssignment[assignment] = status;
+                int course = courseOfAssignment[assignment];
+                operations.add(new WorkloadOperation(Type.UPDATE_STATUS, ownerOfCourse(course, users), course,
+                        assignment, 0, STATUSES[status], null));
+                continue;
+            }
+            int user = activeUser(random, users);
+            if (roll < 60) {
+                operations.add(filteredRead(random, user, users, courses));
+            } else if (roll < 80) {
+                operations.add(new WorkloadOperation(Type.DASHBOARD, user, -1, -1, 0, null, null));
+            } else if (roll < 95) {
+                operations.add(new WorkloadOperation(Type.LIST_BY_PRIORITY, user, -1, -1, 0, null, null));
+            } else {
+                operations.add(new WorkloadOperation(Type.LOGIN, user, -1, -1, 0, null, null));
+            }
+        }
+        return new Workload(seed, users, courses, assignments, operations);
+    }
+
+    static int ownerOfCourse(int course, int users) {
+        return course % users;
+    }
+
+    /**
+     * Filter by one of the reader's courses half the time, by status 40% of the time and
+     * by the coming week 60% of the time
+     */
+    private static WorkloadOperation filteredRead(SplittableRandom random, int user, int users, int courses) {
+        int owned = user < courses ? (courses - 1 - user) / users + 1 : 0;
+        int course = owned > 0 && random.nextBoolean() ? user + random.nextInt(owned) * users : -1;
+        String status = random.nextInt(10) < 4 ? STATUSES[random.nextInt(STATUSES.length)] : null;
+        long window = random.nextInt(10) < 6 ? 7L * DAY : 0;
+        return new WorkloadOperation(Type.FILTERED_READ, user, course, -1, window, null, status);
+    }
+
+    /**
+     * Squaring a uniform draw sends about half the traffic to the most active 25% of users
+     */
+    private static int activeUser(SplittableRandom random, int users) {
+        double r = random.nextDouble();
+        return Math.min(users - 1, (int) (users * r * r));
+    }
+
+    /**
+     * 10% overdue by up to two weeks, 60% due in the next two weeks, the rest within four months
+     */
+    private static long dueOffsetMinutes(SplittableRandom random) {
+        int roll = random.nextInt(10);
+        int day;
+        if (roll == 0) {
+            day = -1 - random.nextInt(14);
+        } else if (roll < 7) {
+            day = random.nextInt(14);
+        } else {
+            day = 14 + random.nextInt(106);
+        }
+        return (long) day * DAY + DUE_MINUTES_OF_DAY[random.nextInt(DUE_MINUTES_OF_DAY.length)];
+    }
+
+    private static String priority(SplittableRandom random) {
+        int roll = random.nextInt(10);
+        return roll < 2 ? "high" : roll < 7 ? "medium" : "low";
+    }
+}
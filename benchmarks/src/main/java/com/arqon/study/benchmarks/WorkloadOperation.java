@@ -0,0 +1,71 @@
+package com.arqon.study.benchmarks;
+
+/**
+ * One step of a load test workload, as stored in a trace file.
+ *
+ * Users, courses and assignments are referred to by their ordinal in the workload
+ * rather than by id, since ids only exist once the workload is replayed. Every
+ * operation acts as {@link #getUser() its user}, so replaying each user's operations in
+ * order keeps their dependencies (register before login, course before assignment).
+ */
+final class WorkloadOperation {
+    enum Type {
+        REGISTER, LOGIN, CREATE_COURSE, CREATE_ASSIGNMENT, UPDATE_STATUS, FILTERED_READ, LIST_BY_PRIORITY,
+        DASHBOARD
+    }
+
+    private static final String NONE = "-";
+
+    private final Type type;
+    private final int user;
+    private final int course;
+    private final int assignment;
+    private final long minutes;
+    private final String value;
+    private final String secondValue;
+
+    /**
+     * @param course course ordinal, or -1 if the operation has none
+     * @param assignment assignment ordinal, or -1 if the operation has none
+     * @param minutes due date offset from replay start for new assignments, or the width of
+     *                a filtered read's due date window
+     * @param value priority, new status or course filter, depending on the type
+     * @param secondValue status filter of a filtered read
+     */
+    WorkloadOperation(Type type, int user, int course, int assignment, long minutes, String value,
+                      String secondValue) {
+        this.type = type;
+        this.user = user;
+        this.course = course;
+        this.assignment = assignment;
+        this.minutes = minutes;
+        this.value = value;
+        this.secondValue = secondValue;
+    }
+
+    Type getType() { return type; }
+    int getUser() { return user; }
+    int getCourse() { return course; }
+    int getAssignment() { return assignment; }
+    long getMinutes() { return minutes; }
+    String getValue() { return value; }
+    String getSecondValue() { return secondValue; }
+
+    /**
+     * Tab separated: type, user, course, assignment, minutes, value, second value
+     */
+    String toLine() {
+        return type + "\t" + user + "\t" + course + "\t" + assignment + "\t" + minutes + "\t"
+                + (value == null ? NONE : value) + "\t" + (secondValue == null ? NONE : secondValue);
+    }
+
+    static WorkloadOperation parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 7) {
+            throw new IllegalArgumentException("Malformed trace line: " + line);
+        }
+        return new WorkloadOperation(Type.valueOf(fields[0]), Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Long.parseLong(fields[4]),
+                NONE.equals(fields[5]) ? null : fields[5], NONE.equals(fields[6]) ? null : fields[6]);
+    }
+}
@@ -0,0 +1,262 @@
+package com.arqon.study.benchmarks;
+
+import com.arqon.study.AssignmentCreationResult;
+import com.arqon.study.AssignmentManagementService;
+import com.arqon.study.AssignmentRepository;
+import com.arqon.study.Course;
+import com.arqon.study.CourseManagementService;
+import com.arqon.study.CourseRepository;
+import com.arqon.study.LatencyHistogram;
+import com.arqon.study.LoginResult;
+import com.arqon.study.PasswordHasher;
+import com.arqon.study.Session;
+import com.arqon.study.SessionManager;
+import com.arqon.study.UserAuthenticationService;
+import com.arqon.study.UserRepository;
+import com.arqon.study.benchmarks.WorkloadOperation.Type;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link Workload} against freshly built services on several threads.
+ *
+ * Each user's operations run on one thread, in trace order, so a user's session,
+ * courses and assignments exist before they are used; users are spread over threads
+ * round-robin. With a target rate, operation {@code i} of the trace is scheduled at
+ * {@code i / rate} seconds after the start and its response time is measured from that
+ * moment, so time spent queued behind a slow operation counts against the system instead
+ * of being hidden (coordinated omission). Service time is measured from the actual call;
+ * without a target rate both are the same.
+ */
+final class WorkloadReplayer {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private final int threads;
+    private final double targetRate;
+    private final int hashIterations;
+
+    /**
+     * @param targetRate operations per second across all threads, or 0 to run flat out
+     * @param hashIterations PBKDF2 work factor for the password hasher
+     */
+    WorkloadReplayer(int threads, double targetRate, int hashIterations) {
+        if (threads <= 0 || targetRate < 0 || hashIterations <= 0) {
+            throw new IllegalArgumentException("Threads and hash iterations must be positive, rate not negative");
+        }
+        this.threads = threads;
+        this.targetRate = targetRate;
+        this.hashIterations = hashIterations;
+    }
+
+    Report replay(Workload workload) throws Exception {
+        Services services = new Services(workload, hashIterations);
+        List<List<Integer>> queues = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            queues.add(new ArrayList<>());
+        }
+        List<WorkloadOperation> operations = workload.getOperations();
+        for (int i = 0; i < operations.size(); i++) {
+            queues.get(operations.get(i).getUser() % threads).add(i);
+        }
+
+        Report report = new Report();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            double intervalNanos = targetRate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / targetRate;
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for (List<Integer> queue : queues) {
+                workers.add(executor.submit(() -> {
+                    for (int index : queue) {
+                        long intended = start + (long) (index * intervalNanos);
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        WorkloadOperation operation = operations.get(index);
+                        long begin = System.nanoTime();
+                        boolean success = services.run(operation);
+                        long end = System.nanoTime();
+                        long scheduled = intervalNanos == 0 ? begin : Math.min(intended, begin);
+                        report.record(operation.getType(), end - begin, end - scheduled, success);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+            services.hasher.shutdown();
+        }
+        return report;
+    }
+
+    /**
+     * The services under test and the ids and sessions the workload's ordinals resolve to.
+     * Each slot is only touched by the thread running its user.
+     */
+    private static final class Services {
+        final PasswordHasher hasher;
+        final UserAuthenticationService auth;
+        final CourseManagementService courses;
+        final AssignmentManagementService assignments;
+        final LocalDateTime dayStart = LocalDate.now().atStartOfDay();
+        final Session[] sessions;
+        final Long[] courseIds;
+        final Long[] assignmentIds;
+
+        Services(Workload workload, int hashIterations) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            hasher = new PasswordHasher(hashIterations, cores, cores * 64, 60_000);
+            SessionManager sessionManager = new SessionManager();
+            CourseRepository courseRepository = new CourseRepository();
+            AssignmentRepository assignmentRepository = new AssignmentRepository();
+            auth = UserAuthenticationService.builder(new UserRepository(), sessionManager)
+                    .passwordHasher(hasher)
+                    .build();
+            courses = CourseManagementService.builder(courseRepository)
+                    .assignmentRepository(assignmentRepository)
+                    .sessionManager(sessionManager)
+                    .build();
+            assignments = AssignmentManagementService.builder(assignmentRepository)
+                    .courseRepository(courseRepository)
+                    .sessionManager(sessionManager)
+                    .build();
+            sessions = new Session[workload.getUsers()];
+            courseIds = new Long[workload.getCourses()];
+            assignmentIds = new Long[workload.getAssignments()];
+        }
+
+        boolean run(WorkloadOperation operation) {
+            int user = operation.getUser();
+            switch (operation.getType()) {
+                case REGISTER:
+                    return auth.registerUser(email(user), PASSWORD).isSuccess();
+                case LOGIN: {
+                    LoginResult login = auth.loginUser(email(user), PASSWORD);
+                    if (login.isSuccess()) {
+                        sessions[user] = login.getSession();
+                    }
+                    return login.isSuccess();
+                }
+                case CREATE_COURSE: {
+                    int course = operation.getCourse();
+                    LocalDate start = dayStart.toLocalDate().minusDays(30);
+                    Course created = courses.createCourse(sessions[user], "Course " + course,
+                            BenchmarkData.courseCode(course), "Instructor " + course % 97, null,
+                            start.toString(), start.plusDays(120).toString()).getCourse();
+                    courseIds[course] = created == null ? null : created.getId();
+                    return created != null;
+                }
+                case CREATE_ASSIGNMENT: {
+                    AssignmentCreationResult result = assignments.createAssignmentForCourse(sessions[user],
+                            "Assignment " + operation.getAssignment(), null, courseIds[operation.getCourse()],
+                            dayStart.plusMinutes(operation.getMinutes()), operation.getValue(),
+                            1 + operation.getAssignment() % 8);
+                    if (result.isSuccess()) {
+                        assignmentIds[operation.getAssignment()] = result.getAssignment().getId();
+                    }
+                    return result.isSuccess();
+                }
+                case UPDATE_STATUS:
+                    return assignments.updateAssignmentStatus(sessions[user],
+                            assignmentIds[operation.getAssignment()], operation.getValue()).isSuccess();
+                case FILTERED_READ: {
+                    String course = operation.getCourse() < 0 ? null
+                            : BenchmarkData.courseCode(operation.getCourse());
+                    boolean windowed = operation.getMinutes() > 0;
+                    assignments.getAssignmentsWithFilters(sessions[user], course, operation.getSecondValue(),
+                            windowed ? dayStart : null, windowed ? dayStart.plusMinutes(operation.getMinutes()) : null);
+                    return sessions[user] != null;
+                }
+                case LIST_BY_PRIORITY:
+                    assignments.getMostUrgentAssignments(sessions[user], 10);
+                    return sessions[user] != null;
+                case DASHBOARD:
+                    return sessions[user] != null && auth.accessDashboard(sessions[user].getSessionId()).isSuccess();
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation.getType());
+            }
+        }
+
+        private static String email(int user) {
+            return "user" + user + "@load.test";
+        }
+    }
+
+    /**
+     * Throughput and per-operation latency percentiles of a replay
+     */
+    static final class Report {
+        private final Map<Type, Stats> stats = new EnumMap<>(Type.class);
+        private long elapsedNanos;
+
+        Report() {
+            for (Type type : Type.values()) {
+                stats.put(type, new Stats());
+            }
+        }
+
+        void record(Type type, long serviceNanos, long responseNanos, boolean success) {
+            Stats s = stats.get(type);
+            s.service.record(serviceNanos);
+            s.response.record(responseNanos);
+            if (!success) {
+                s.failures.increment();
+            }
+        }
+
+        long getOperations() {
+            return stats.values().stream().mapToLong(s -> s.service.getCount()).sum();
+        }
+
+        double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getOperations() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Latencies in microseconds; "resp" columns include time queued behind the schedule
+         */
+        String format() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%d operations in %.2f s, %.0f ops/s%n%n", getOperations(),
+                    elapsedNanos / 1e9, getThroughput()));
+            text.append(String.format("%-18s %9s %7s %9s %9s %9s %9s %10s %10s %10s%n", "operation", "count",
+                    "failed", "p50", "p90", "p99", "p99.9", "max", "resp p50", "resp p99"));
+            stats.forEach((type, s) -> {
+                if (s.service.getCount() == 0) {
+                    return;
+                }
+                text.append(String.format("%-18s %9d %7d %9d %9d %9d %9d %10d %10d %10d%n", type,
+                        s.service.getCount(), s.failures.sum(), micros(s.service, 50), micros(s.service, 90),
+                        micros(s.service, 99), micros(s.service, 99.9), s.service.getMax() / 1000,
+                        micros(s.response, 50), micros(s.response, 99)));
+            });
+            return text.toString();
+        }
+
+        private static long micros(LatencyHistogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000;
+        }
+
+        private static final class Stats {
+            final LatencyHistogram service = new LatencyHistogram();
+            final LatencyHistogram response = new LatencyHistogram();
+            final LongAdder failures = new LongAdder();
+        }
+    }
+}
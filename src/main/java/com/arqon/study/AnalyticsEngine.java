@@ -0,0 +1,255 @@
+package com.arqon.study;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Completion analytics by course and ISO week, kept up to date from
+ * {@link AssignmentRepository} writes.
+ *
+ * Per owner and per course (plus a total over all courses) the engine keeps weekly
+ * counters in primitive arrays: assignments created, completed, due, completed by
+ * their due date, and estimated hours due. A save only adjusts the counters the
+ * assignment's previous version contributed to and those of its new version, so
+ * queries never touch the repository. Completion is stamped with the time the
+ * status change to completed was saved.
+ *
+ * Register the engine with {@link AssignmentRepository#addListener(RepositoryListener)}
+ * before any assignments are saved.
+ */
+public class AnalyticsEngine implements RepositoryListener<Assignment> {
+    /** Course key for the totals over all of an owner's courses */
+    public static final String ALL_COURSES = "";
+    
+    private static final String COMPLETED = "completed";
+    
+    private final Map<String, OwnerRollups> rollupsByOwner = new ConcurrentHashMap<>();
+    private final TimeSource timeSource;
+    
+    public AnalyticsEngine(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+    
+    /**
+     * Weekly activity for one course, or all courses with {@link #ALL_COURSES}, one entry
+     * per ISO week from the week containing {@code from} to the week containing {@code to}
+     */
+    public List<WeeklyRollup> getWeeklyRollups(String ownerId, String course, LocalDate from, LocalDate to) {
+        long firstWeek = weekIndex(from);
+        long lastWeek = weekIndex(to);
+        long currentWeek = weekIndex(timeSource.now().toLocalDate());
+        OwnerRollups rollups = rollupsByOwner.get(AssignmentRepository.partitionKey(ownerId));
+        List<WeeklyRollup> result = new ArrayList<>();
+        for (long week = firstWeek; week <= lastWeek; week++) {
+            result.add(rollups == null
+                    ? new WeeklyRollup(weekStart(week), 0, 0, 0, 0)
+                    : rollups.rollup(course == null ? ALL_COURSES : course, week, week < currentWeek));
+        }
+        return result;
+    }
+    
+    /**
+     * Courses an owner has analytics for
+     */
+    public Set<String> getCourses(String ownerId) {
+        OwnerRollups rollups = rollupsByOwner.get(AssignmentRepository.partitionKey(ownerId));
+        return rollups == null ? new TreeSet<>() : rollups.courses();
+    }
+    
+    @Override
+    public void onSave(Assignment assignment) {
+        rollupsByOwner.computeIfAbsent(AssignmentRepository.partitionKey(assignment.getOwnerId()),
+                owner -> new OwnerRollups()).put(assignment, timeSource.now());
+    }
+    
+    @Override
+    public void onDelete(Assignment assignment) {
+        OwnerRollups rollups = rollupsByOwner.get(AssignmentRepository.partitionKey(assignment.getOwnerId()));
+        if (rollups != null) {
+            rollups.remove(assignment.getId());
+        }
+    }
+    
+    /**
+     * Weeks since the ISO week of 1970-01-01, counting from Monday
+     */
+    static long weekIndex(LocalDate date) {
+        return Math.floorDiv(date.with(DayOfWeek.MONDAY).toEpochDay() + 3, 7);
+    }
+    
+    static LocalDate weekStart(long weekIndex) {
+        return LocalDate.ofEpochDay(weekIndex * 7 - 3);
+    }
+    
+    /**
+     * What an assignment version contributed, so it can be taken back out
+     */
+    private static final class Contribution {
+        final String course;
+        final long createdWeek;
+        final long completedWeek;
+        final long dueWeek;
+        final boolean completedOnTime;
+        final int hours;
+        /** When the assignment was completed, carried over while it stays completed */
+        final LocalDateTime completedAt;
+        
+        Contribution(Assignment assignment, Contribution previous, LocalDateTime now) {
+            this.course = assignment.getCourse() == null ? ALL_COURSES : assignment.getCourse();
+            this.createdWeek = assignment.getCreatedAt() == null ? Long.MIN_VALUE
+                    : weekIndex(assignment.getCreatedAt().toLocalDate());
+            this.dueWeek = assignment.getDueDate() == null ? Long.MIN_VALUE
+                    : weekIndex(assignment.getDueDate().toLocalDate());
+            this.hours = assignment.getEstimatedHours() == null ? 0 : assignment.getEstimatedHours();
+            if (COMPLETED.equals(assignment.getStatus())) {
+                this.completedAt = previous != null && previous.completedAt != null ? previous.completedAt : now;
+                this.completedWeek = weekIndex(completedAt.toLocalDate());
+                this.completedOnTime = assignment.getDueDate() != null && !completedAt.isAfter(assignment.getDueDate());
+            } else {
+                this.completedAt = null;
+                this.completedWeek = Long.MIN_VALUE;
+                this.completedOnTime = false;
+            }
+        }
+    }
+    
+    private static final class OwnerRollups {
+        private final Map<Long, Contribution> contributions = new HashMap<>();
+        private final Map<String, WeeklySeries> seriesByCourse = new HashMap<>();
+        
+        synchronized void put(Assignment assignment, LocalDateTime now) {
+            Contribution previous = contributions.get(assignment.getId());
+            Contribution next = new Contribution(assignment, previous, now);
+            if (previous != null) {
+                apply(previous, -1);
+            }
+            contributions.put(assignment.getId(), next);
+            apply(next, 1);
+        }
+        
+        synchronized void remove(Long id) {
+            Contribution previous = contributions.remove(id);
+            if (previous != null) {
+                apply(previous, -1);
+            }
+        }
+        
+        synchronized WeeklyRollup rollup(String course, long week, boolean weekOver) {
+            WeeklySeries series = seriesByCourse.get(course);
+            if (series == null) {
+                return new WeeklyRollup(weekStart(week), 0, 0, 0, 0);
+            }
+            int due = series.get(series.due, week);
+            int overdue = weekOver ? due - series.get(series.completedOnTime, week) : 0;
+            return new WeeklyRollup(weekStart(week), series.get(series.created, week),
+                    series.get(series.completed, week), overdue, series.get(series.hours, week));
+        }
+        
+        synchronized Set<String> courses() {
+            Set<String> courses = new TreeSet<>(seriesByCourse.keySet());
+            courses.remove(ALL_COURSES);
+            return courses;
+        }
+        
+        private void apply(Contribution contribution, int sign) {
+            apply(seriesByCourse.computeIfAbsent(ALL_COURSES, c -> new WeeklySeries()), contribution, sign);
+            if (!ALL_COURSES.equals(contribution.course)) {
+                WeeklySeries series = seriesByCourse.computeIfAbsent(contribution.course, c -> new WeeklySeries());
+                apply(series, contribution, sign);
+                if (sign < 0 && series.isEmpty()) {
+                    seriesByCourse.remove(contribution.course);
+                }
+            }
+        }
+        
+        private static void apply(WeeklySeries series, Contribution contribution, int sign) {
+            series.add(WeeklySeries.CREATED, contribution.createdWeek, sign);
+            series.add(WeeklySeries.COMPLETED, contribution.completedWeek, sign);
+            series.add(WeeklySeries.DUE, contribution.dueWeek, sign);
+            series.add(WeeklySeries.HOURS, contribution.dueWeek, sign * contribution.hours);
+            if (contribution.completedOnTime) {
+                series.add(WeeklySeries.COMPLETED_ON_TIME, contribution.dueWeek, sign);
+            }
+            series.live += sign;
+        }
+    }
+    
+    /**
+     * Weekly counters over a contiguous, growable range of weeks
+     */
+    private static final class WeeklySeries {
+        static final int CREATED = 0;
+        static final int COMPLETED = 1;
+        static final int DUE = 2;
+        static final int COMPLETED_ON_TIME = 3;
+        static final int HOURS = 4;
+        
+        int[] created = new int[0];
+        int[] completed = new int[0];
+        int[] due = new int[0];
+        int[] completedOnTime = new int[0];
+        int[] hours = new int[0];
+        long firstWeek;
+        int live;
+        
+        boolean isEmpty() {
+            return live == 0;
+        }
+        
+        int get(int[] counters, long week) {
+            long offset = week - firstWeek;
+            return offset < 0 || offset >= counters.length ? 0 : counters[(int) offset];
+        }
+        
+        void add(int counter, long week, int delta) {
+            if (week == Long.MIN_VALUE || delta == 0) {
+                return;
+            }
+            ensure(week);
+            int offset = (int) (week - firstWeek);
+            switch (counter) {
+                case CREATED: created[offset] += delta; break;
+                case COMPLETED: completed[offset] += delta; break;
+                case DUE: due[offset] += delta; break;
+                case COMPLETED_ON_TIME: completedOnTime[offset] += delta; break;
+                default: hours[offset] += delta; break;
+            }
+        }
+        
+        private void ensure(long week) {
+            int length = created.length;
+            if (length == 0) {
+                firstWeek = week - 8;
+                resize(16, 0);
+            } else if (week < firstWeek) {
+                int shift = (int) Math.max(firstWeek - week, length / 2);
+                firstWeek -= shift;
+                resize(length + shift, shift);
+            } else if (week >= firstWeek + length) {
+                resize((int) Math.max(week - firstWeek + 1, length + length / 2), 0);
+            }
+        }
+        
+        private void resize(int length, int shift) {
+            created = copy(created, length, shift);
+            completed = copy(completed, length, shift);
+            due = copy(due, length, shift);
+            completedOnTime = copy(completedOnTime, length, shift);
+            hours = copy(hours, length, shift);
+        }
+        
+        private static int[] copy(int[] counters, int length, int shift) {
+            int[] resized = new int[length];
+            System.arraycopy(counters, 0, resized, shift, counters.length);
+            return resized;
+        }
+    }
+}
@@ -5,9 +5,13 @@ import java.util.Objects;
 
 public class Assignment {
     private Long id;
+    private String ownerId;
     private String title;
     private String description;
-    private String course;
+    private String course; // Course code, kept in sync with the course referenced by courseId
+    private Long courseId;
+    private Long recurrenceId; // Recurring template this is an occurrence of, if any
+    private Integer occurrenceIndex;
     private LocalDateTime dueDate;
     private String status;
     private String priority;
@@ -25,15 +29,17 @@ public class Assignment {
         this.status = status;
         this.priority = priority;
         this.estimatedHours = estimatedHours;
-        this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
     }
 
     // Getters
     public Long getId() { return id; }
+    public String getOwnerId() { return ownerId; }
     public String getTitle() { return title; }
     public String getDescription() { return description; }
     public String getCourse() { return course; }
+    public Long getCourseId() { return courseId; }
+    public Long getRecurrenceId() { return recurrenceId; }
+    public Integer getOccurrenceIndex() { return occurrenceIndex; }
     public LocalDateTime getDueDate() { return dueDate; }
     public String getStatus() { return status; }
     public String getPriority() { return priority; }
@@ -43,16 +49,18 @@ public class Assignment {
 
     // Setters
     public void setId(Long id) { this.id = id; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
     public void setTitle(String title) { this.title = title; }
     public void setDescription(String description) { this.description = description; }
     public void setCourse(String course) { this.course = course; }
+    public void setCourseId(Long courseId) { this.courseId = courseId; }
+    public void setRecurrenceId(Long recurrenceId) { this.recurrenceId = recurrenceId; }
+    public void setOccurrenceIndex(Integer occurrenceIndex) { this.occurrenceIndex = occurrenceIndex; }
     public void setDueDate(LocalDateTime dueDate) { this.dueDate = dueDate; }
-    public void setStatus(String status) { 
-        this.status = status; 
-        this.updatedAt = LocalDateTime.now();
-    }
+    public void setStatus(String status) { this.status = status; }
     public void setPriority(String priority) { this.priority = priority; }
     public void setEstimatedHours(Integer estimatedHours) { this.estimatedHours = estimatedHours; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
 
     @Override
@@ -60,21 +68,29 @@ public class Assignment {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Assignment that = (Assignment) o;
+        if (id == null && that.id == null && recurrenceId != null) {
+            // Unsaved occurrences of a recurring assignment are identified by their position
+            return recurrenceId.equals(that.recurrenceId) && Objects.equals(occurrenceIndex, that.occurrenceIndex);
+        }
         return Objects.equals(id, that.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return id == null && recurrenceId != null ? Objects.hash(recurrenceId, occurrenceIndex) : Objects.hash(id);
     }
 
     @Override
     public String toString() {
         return "Assignment{" +
                 "id=" + id +
+                ", ownerId='" + ownerId + '\'' +
                 ", title='" + title + '\'' +
                 ", description='" + description + '\'' +
                 ", course='" + course + '\'' +
+                ", courseId=" + courseId +
+                ", recurrenceId=" + recurrenceId +
+                ", occurrenceIndex=" + occurrenceIndex +
                 ", dueDate=" + dueDate +
                 ", status='" + status + '\'' +
                 ", priority='" + priority + '\'' +
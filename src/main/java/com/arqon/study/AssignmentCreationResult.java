@@ -1,6 +1,6 @@
 package com.arqon.study;
 
-public class AssignmentCreationResult {
+public class AssignmentCreationResult implements OperationResult {
     private final boolean success;
     private final String errorMessage;
     private final Assignment assignment;
@@ -1,51 +1,341 @@
 package com.arqon.study;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * Service for managing assignments.
+ *
+ * Methods taking a {@link Session} act on the assignments of the session's user; the
+ * session is re-validated with the {@link SessionManager} and only its user id is trusted.
+ * Without a SessionManager every session is rejected.
+ * Methods without a session act on unowned assignments.
+ *
+ * With a {@link RecurringAssignmentRepository}, queries bounded by a due date also include
+ * the generated occurrences of recurring assignments: filters given an end date, calendars
+ * and overdue queries. Listings without an end date and counts cover stored assignments
+ * only, so they never expand every occurrence of a rule. Generated occurrences have no id
+ * until they are changed through {@link #updateOccurrenceStatus}.
+ */
 public class AssignmentManagementService {
+    private static final String INVALID_SESSION = "Invalid session";
+    private static final String CREATE_ASSIGNMENT = "AssignmentManagementService.createAssignment";
+    private static final String UPDATE_ASSIGNMENT_STATUS = "AssignmentManagementService.updateAssignmentStatus";
+    private static final String GET_ALL_ASSIGNMENTS = "AssignmentManagementService.getAllAssignments";
+    private static final String GET_ASSIGNMENTS_WITH_FILTERS = "AssignmentManagementService.getAssignmentsWithFilters";
+    private static final String GET_ASSIGNMENT_BY_ID = "AssignmentManagementService.getAssignmentById";
+    private static final String GET_OVERDUE_ASSIGNMENTS = "AssignmentManagementService.getOverdueAssignments";
+    private static final String COUNT_BY_STATUS = "AssignmentManagementService.getAssignmentsCountByStatus";
+    private static final String UPDATE_OCCURRENCE_STATUS = "AssignmentManagementService.updateOccurrenceStatus";
+    private static final String CREATE_RECURRING_ASSIGNMENT = "AssignmentManagementService.createRecurringAssignment";
+    private static final String GET_ASSIGNMENTS_FOR_COURSE = "AssignmentManagementService.getAssignmentsForCourse";
+    private static final String GET_ASSIGNMENTS_BY_PRIORITY = "AssignmentManagementService.getAllAssignmentsByPriority";
+    private static final String GET_MOST_URGENT = "AssignmentManagementService.getMostUrgentAssignments";
+    private static final String GET_MONTH_CALENDAR = "AssignmentManagementService.getMonthCalendar";
+    private static final String GET_WEEK_CALENDAR = "AssignmentManagementService.getWeekCalendar";
+    private static final String COUNT_ALL = "AssignmentManagementService.getTotalAssignmentsCount";
+
     private final AssignmentRepository assignmentRepository;
+    private final CourseRepository courseRepository;
+    private final RecurringAssignmentRepository recurringRepository;
+    private final SessionManager sessionManager;
+    private final MetricsRegistry metrics;
+    private final Tracer tracer;
 
     public AssignmentManagementService(AssignmentRepository assignmentRepository) {
-        this.assignmentRepository = assignmentRepository;
+        this(builder(assignmentRepository));
+    }
+
+    public AssignmentManagementService(AssignmentRepository assignmentRepository, SessionManager sessionManager) {
+        this(builder(assignmentRepository).sessionManager(sessionManager));
+    }
+
+    private AssignmentManagementService(Builder builder) {
+        this.tracer = builder.tracer;
+        this.metrics = builder.metrics;
+        this.assignmentRepository = builder.assignmentRepository;
+        this.courseRepository = builder.courseRepository;
+        this.recurringRepository = builder.recurringRepository;
+        this.sessionManager = builder.sessionManager;
+        metrics.gauge("AssignmentRepository.size", assignmentRepository::count);
+        metrics.gauge("AssignmentRepository.bytes", () -> assignmentRepository.getMemoryFootprint().getTotalBytes());
+    }
+
+    /**
+     * Start configuring a service over a repository; every other collaborator is optional
+     */
+    public static Builder builder(AssignmentRepository assignmentRepository) {
+        return new Builder(assignmentRepository);
+    }
+
+    public AssignmentCreationResult createAssignment(String title, String description, String course,
+                                                   LocalDateTime dueDate, String priority, Integer estimatedHours) {
+        return observe(CREATE_ASSIGNMENT, () -> createAssignmentFor(null, title, description, course, dueDate,
+                priority, estimatedHours, null));
     }
 
-    public AssignmentCreationResult createAssignment(String title, String description, String course, 
+    public AssignmentCreationResult createAssignment(Session session, String title, String description, String course,
                                                    LocalDateTime dueDate, String priority, Integer estimatedHours) {
+        return observe(CREATE_ASSIGNMENT, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return AssignmentCreationResult.failure(INVALID_SESSION);
+            }
+            return createAssignmentFor(owner.get(), title, description, course, dueDate, priority, estimatedHours,
+                    null);
+        });
+    }
+
+    /**
+     * Create an assignment for one of the session user's courses, referenced by id
+     */
+    public AssignmentCreationResult createAssignmentForCourse(Session session, String title, String description,
+                                                            Long courseId, LocalDateTime dueDate, String priority,
+                                                            Integer estimatedHours) {
+        return observe(CREATE_ASSIGNMENT, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return AssignmentCreationResult.failure(INVALID_SESSION);
+            }
+            if (courseId == null || courseRepository == null) {
+                return AssignmentCreationResult.failure("Course not found.");
+            }
+            return createAssignmentFor(owner.get(), title, description, null, dueDate, priority, estimatedHours,
+                    courseId);
+        });
+    }
+
+    /**
+     * Assignments of one of the session user's courses, looked up through the course index
+     */
+    public List<Assignment> getAssignmentsForCourse(Session session, Long courseId) {
+        return observe(GET_ASSIGNMENTS_FOR_COURSE, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> assignmentRepository.findAssignmentsByCourseId(courseId).stream()
+                        .filter(assignment -> owner.equals(assignment.getOwnerId()))
+                        .collect(Collectors.toList()))
+                .orElse(Collections.emptyList()));
+    }
+
+    public RecurringAssignmentCreationResult createRecurringAssignment(String title, String description,
+                                                                     String course, RecurrenceRule rule,
+                                                                     String priority, Integer estimatedHours) {
+        return observe(CREATE_RECURRING_ASSIGNMENT, () -> createRecurringAssignmentFor(null, title, description,
+                course, rule, priority, estimatedHours));
+    }
+
+    public RecurringAssignmentCreationResult createRecurringAssignment(Session session, String title,
+                                                                     String description, String course,
+                                                                     RecurrenceRule rule, String priority,
+                                                                     Integer estimatedHours) {
+        return observe(CREATE_RECURRING_ASSIGNMENT, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return RecurringAssignmentCreationResult.failure(INVALID_SESSION);
+            }
+            return createRecurringAssignmentFor(owner.get(), title, description, course, rule, priority,
+                    estimatedHours);
+        });
+    }
+
+    /**
+     * Change the status of one occurrence of a recurring assignment, storing the occurrence
+     * as a regular assignment the first time it is changed
+     */
+    public AssignmentStatusUpdateResult updateOccurrenceStatus(Long recurrenceId, int index, String newStatus) {
+        return observe(UPDATE_OCCURRENCE_STATUS,
+                () -> updateOccurrenceStatusFor(null, recurrenceId, index, newStatus));
+    }
+
+    public AssignmentStatusUpdateResult updateOccurrenceStatus(Session session, Long recurrenceId, int index,
+                                                               String newStatus) {
+        return observe(UPDATE_OCCURRENCE_STATUS, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return AssignmentStatusUpdateResult.failure(INVALID_SESSION);
+            }
+            return updateOccurrenceStatusFor(owner.get(), recurrenceId, index, newStatus);
+        });
+    }
+
+    public List<Assignment> getAllAssignments() {
+        return observe(GET_ALL_ASSIGNMENTS, assignmentRepository::findAllAssignmentsSortedByDueDate);
+    }
+
+    public List<Assignment> getAllAssignments(Session session) {
+        return observe(GET_ALL_ASSIGNMENTS, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(assignmentRepository::findAllAssignmentsSortedByDueDate)
+                .orElse(Collections.emptyList()));
+    }
+
+    /**
+     * Unowned assignments, most urgent priority first and then by due date
+     */
+    public List<Assignment> getAllAssignmentsByPriority() {
+        return observe(GET_ASSIGNMENTS_BY_PRIORITY,
+                () -> assignmentRepository.findAllAssignmentsSortedByPriority(null));
+    }
+
+    public List<Assignment> getAllAssignmentsByPriority(Session session) {
+        return observe(GET_ASSIGNMENTS_BY_PRIORITY, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(assignmentRepository::findAllAssignmentsSortedByPriority)
+                .orElse(Collections.emptyList()));
+    }
+
+    /**
+     * The first {@code limit} unowned assignments still to do, by priority then due date
+     */
+    public List<Assignment> getMostUrgentAssignments(int limit) {
+        return observe(GET_MOST_URGENT, () -> assignmentRepository.findMostUrgentAssignments(null, limit));
+    }
+
+    public List<Assignment> getMostUrgentAssignments(Session session, int limit) {
+        return observe(GET_MOST_URGENT, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> assignmentRepository.findMostUrgentAssignments(owner, limit))
+                .orElse(Collections.emptyList()));
+    }
+
+    public List<Assignment> getAssignmentsWithFilters(String course, String status,
+                                                     LocalDateTime startDate, LocalDateTime endDate) {
+        return observe(GET_ASSIGNMENTS_WITH_FILTERS, () -> filtered(null, course, status, startDate, endDate));
+    }
+
+    public List<Assignment> getAssignmentsWithFilters(Session session, String course, String status,
+                                                     LocalDateTime startDate, LocalDateTime endDate) {
+        return observe(GET_ASSIGNMENTS_WITH_FILTERS, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> filtered(owner, course, status, startDate, endDate))
+                .orElse(Collections.emptyList()));
+    }
+
+    public AssignmentStatusUpdateResult updateAssignmentStatus(Long assignmentId, String newStatus) {
+        return observe(UPDATE_ASSIGNMENT_STATUS, () -> updateAssignmentStatusFor(null, assignmentId, newStatus));
+    }
+
+    public AssignmentStatusUpdateResult updateAssignmentStatus(Session session, Long assignmentId, String newStatus) {
+        return observe(UPDATE_ASSIGNMENT_STATUS, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return AssignmentStatusUpdateResult.failure(INVALID_SESSION);
+            }
+            return updateAssignmentStatusFor(owner.get(), assignmentId, newStatus);
+        });
+    }
+
+    public Optional<Assignment> getAssignmentById(Long id) {
+        return observe(GET_ASSIGNMENT_BY_ID, () -> assignmentRepository.findAssignmentById(null, id));
+    }
+
+    public Optional<Assignment> getAssignmentById(Session session, Long id) {
+        return observe(GET_ASSIGNMENT_BY_ID,
+                () -> SessionManager.ownerOf(sessionManager, session)
+                        .flatMap(owner -> assignmentRepository.findAssignmentById(owner, id)));
+    }
+
+    public List<Assignment> getOverdueAssignments() {
+        return observe(GET_OVERDUE_ASSIGNMENTS, () -> overdueFor(null));
+    }
+
+    public List<Assignment> getOverdueAssignments(Session session) {
+        return observe(GET_OVERDUE_ASSIGNMENTS, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(this::overdueFor)
+                .orElse(Collections.emptyList()));
+    }
+
+    /**
+     * Unowned assignments bucketed by due day, one entry per day of the month
+     */
+    public List<CalendarDay> getMonthCalendar(YearMonth month) {
+        return observe(GET_MONTH_CALENDAR, () -> calendarFor(null, month.atDay(1), month.atEndOfMonth()));
+    }
+
+    public List<CalendarDay> getMonthCalendar(Session session, YearMonth month) {
+        return observe(GET_MONTH_CALENDAR, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> calendarFor(owner, month.atDay(1), month.atEndOfMonth()))
+                .orElse(Collections.emptyList()));
+    }
+
+    /**
+     * Unowned assignments bucketed by due day, Monday to Sunday of the week containing a day
+     */
+    public List<CalendarDay> getWeekCalendar(LocalDate dayInWeek) {
+        LocalDate monday = dayInWeek.with(DayOfWeek.MONDAY);
+        return observe(GET_WEEK_CALENDAR, () -> calendarFor(null, monday, monday.plusDays(6)));
+    }
+
+    public List<CalendarDay> getWeekCalendar(Session session, LocalDate dayInWeek) {
+        LocalDate monday = dayInWeek.with(DayOfWeek.MONDAY);
+        return observe(GET_WEEK_CALENDAR, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> calendarFor(owner, monday, monday.plusDays(6)))
+                .orElse(Collections.emptyList()));
+    }
+
+    public long getTotalAssignmentsCount() {
+        return observe(COUNT_ALL, () -> assignmentRepository.count(null));
+    }
+
+    public long getTotalAssignmentsCount(Session session) {
+        return observe(COUNT_ALL,
+                () -> SessionManager.ownerOf(sessionManager, session).map(assignmentRepository::count).orElse(0L));
+    }
+
+    public long getAssignmentsCountByStatus(String status) {
+        return observe(COUNT_BY_STATUS, () -> assignmentRepository.countAssignmentsByStatus(null, status));
+    }
+
+    public long getAssignmentsCountByStatus(Session session, String status) {
+        return observe(COUNT_BY_STATUS, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> assignmentRepository.countAssignmentsByStatus(owner, status))
+                .orElse(0L));
+    }
+
+    private AssignmentCreationResult createAssignmentFor(String ownerId, String title, String description,
+                                                         String course, LocalDateTime dueDate, String priority,
+                                                         Integer estimatedHours, Long courseId) {
         if (title == null || title.trim().isEmpty()) {
             return AssignmentCreationResult.failure("Assignment title is required.");
         }
-        
+
         if (dueDate == null) {
             return AssignmentCreationResult.failure("Due date is required.");
         }
 
-        Assignment newAssignment = new Assignment(null, title.trim(), description, course, dueDate, 
+        Assignment newAssignment = new Assignment(null, title.trim(), description, course, dueDate,
                                                 "todo", priority, estimatedHours);
-        assignmentRepository.save(newAssignment);
+        newAssignment.setOwnerId(ownerId);
+        if (courseId == null) {
+            assignmentRepository.save(newAssignment);
+        } else if (assignmentRepository.saveForCourse(newAssignment,
+                () -> courseRepository.findById(ownerId, courseId)).isEmpty()) {
+            // Checked under the repository's write lock, so a concurrent course delete cannot orphan it
+            return AssignmentCreationResult.failure("Course not found.");
+        }
         return AssignmentCreationResult.success(newAssignment);
     }
 
-    public List<Assignment> getAllAssignments() {
-        return assignmentRepository.findAllAssignmentsSortedByDueDate();
-    }
-
-    public List<Assignment> getAssignmentsWithFilters(String course, String status, 
-                                                     LocalDateTime startDate, LocalDateTime endDate) {
-        return assignmentRepository.findAssignmentsWithFilters(course, status, startDate, endDate);
-    }
-
-    public AssignmentStatusUpdateResult updateAssignmentStatus(Long assignmentId, String newStatus) {
+    private AssignmentStatusUpdateResult updateAssignmentStatusFor(String ownerId, Long assignmentId,
+                                                                   String newStatus) {
         if (assignmentId == null) {
             return AssignmentStatusUpdateResult.failure("Assignment ID cannot be null.");
         }
-        
+
         if (newStatus == null || newStatus.trim().isEmpty()) {
             return AssignmentStatusUpdateResult.failure("Status cannot be empty.");
         }
 
-        Optional<Assignment> assignmentOpt = assignmentRepository.findAssignmentById(assignmentId);
+        Optional<Assignment> assignmentOpt = assignmentRepository.findAssignmentById(ownerId, assignmentId);
         if (assignmentOpt.isEmpty()) {
             return AssignmentStatusUpdateResult.failure("Assignment not found.");
         }
@@ -53,23 +343,237 @@ public class AssignmentManagementService {
         Assignment assignment = assignmentOpt.get();
         assignment.setStatus(newStatus.trim());
         assignmentRepository.updateAssignment(assignment);
-        
+
         return AssignmentStatusUpdateResult.success("Assignment status updated successfully.");
     }
 
-    public Optional<Assignment> getAssignmentById(Long id) {
-        return assignmentRepository.findAssignmentById(id);
+    private RecurringAssignmentCreationResult createRecurringAssignmentFor(String ownerId, String title,
+                                                                         String description, String course,
+                                                                         RecurrenceRule rule, String priority,
+                                                                         Integer estimatedHours) {
+        if (recurringRepository == null) {
+            return RecurringAssignmentCreationResult.failure("Recurring assignments are not supported.");
+        }
+        if (title == null || title.trim().isEmpty()) {
+            return RecurringAssignmentCreationResult.failure("Assignment title is required.");
+        }
+        if (rule == null) {
+            return RecurringAssignmentCreationResult.failure("Recurrence rule is required.");
+        }
+        RecurringAssignment template = new RecurringAssignment(title.trim(), description, course, rule,
+                priority, estimatedHours);
+        template.setOwnerId(ownerId);
+        recurringRepository.save(template);
+        return RecurringAssignmentCreationResult.success(template);
     }
 
-    public List<Assignment> getOverdueAssignments() {
-        return assignmentRepository.findOverdueAssignments();
+    private AssignmentStatusUpdateResult updateOccurrenceStatusFor(String ownerId, Long recurrenceId, int index,
+                                                                   String newStatus) {
+        Optional<RecurringAssignment> found = recurrenceId == null || recurringRepository == null
+                ? Optional.empty()
+                : recurringRepository.findById(ownerId, recurrenceId);
+        if (found.isEmpty() || index < 0 || index >= found.get().getRule().getCount()) {
+            return AssignmentStatusUpdateResult.failure("Assignment not found.");
+        }
+        if (newStatus == null || newStatus.trim().isEmpty()) {
+            return AssignmentStatusUpdateResult.failure("Status cannot be empty.");
+        }
+        RecurringAssignment template = found.get();
+        synchronized (template) {
+            Optional<Long> stored = template.getOverride(index);
+            if (stored.isPresent()) {
+                return updateAssignmentStatusFor(ownerId, stored.get(), newStatus);
+            }
+            Assignment occurrence = template.occurrence(index);
+            occurrence.setCreatedAt(null);
+            occurrence.setStatus(newStatus.trim());
+            // Saved and marked under the template's lock, which readers take while generating;
+            // they generate before querying stored assignments, so the occurrence is never missing
+            assignmentRepository.save(occurrence);
+            template.markOverridden(index, occurrence.getId());
+        }
+        return AssignmentStatusUpdateResult.success("Assignment status updated successfully.");
     }
 
-    public long getTotalAssignmentsCount() {
-        return assignmentRepository.count();
+    /**
+     * Generated occurrences of an owner's recurring assignments due within a range,
+     * skipping overridden ones. Call before reading the stored assignments they are merged
+     * with, and drop the ones stored meanwhile with {@link #withoutStored}.
+     * @param from inclusive lower bound, or null for none
+     * @param to inclusive upper bound
+     */
+    private List<Assignment> occurrences(String ownerId, LocalDateTime from, LocalDateTime to) {
+        if (recurringRepository == null) {
+            return Collections.emptyList();
+        }
+        List<Assignment> result = new ArrayList<>();
+        for (RecurringAssignment template : recurringRepository.findAll(ownerId)) {
+            RecurrenceRule rule = template.getRule();
+            int first = from == null ? 0 : rule.firstIndexAtOrAfter(from);
+            int end = rule.endIndexAtOrBefore(to);
+            synchronized (template) {
+                for (int index = first; index < end; index++) {
+                    if (!template.isOverridden(index)) {
+                        result.add(template.occurrence(index));
+                    }
+                }
+            }
+        }
+        return result;
     }
 
-    public long getAssignmentsCountByStatus(String status) {
-        return assignmentRepository.findAssignmentsByStatus(status).size();
+    /**
+     * Drop generated occurrences that were changed, and so stored, after they were generated
+     */
+    private static List<Assignment> withoutStored(List<Assignment> generated, Collection<Assignment> stored) {
+        Map<Long, Set<Integer>> storedIndexes = new HashMap<>();
+        for (Assignment assignment : stored) {
+            if (assignment.getRecurrenceId() != null) {
+                storedIndexes.computeIfAbsent(assignment.getRecurrenceId(), id -> new HashSet<>())
+                        .add(assignment.getOccurrenceIndex());
+            }
+        }
+        if (storedIndexes.isEmpty()) {
+            return generated;
+        }
+        List<Assignment> result = new ArrayList<>(generated.size());
+        for (Assignment occurrence : generated) {
+            Set<Integer> indexes = storedIndexes.get(occurrence.getRecurrenceId());
+            if (indexes == null || !indexes.contains(occurrence.getOccurrenceIndex())) {
+                result.add(occurrence);
+            }
+        }
+        return result;
+    }
+
+    private List<Assignment> filtered(String ownerId, String course, String status,
+                                      LocalDateTime startDate, LocalDateTime endDate) {
+        if (endDate == null) {
+            return assignmentRepository.findAssignmentsWithFilters(ownerId, course, status, startDate, endDate);
+        }
+        List<Assignment> generated = occurrences(ownerId, startDate, endDate);
+        List<Assignment> stored = assignmentRepository.findAssignmentsWithFilters(ownerId, course, status,
+                startDate, endDate);
+        if (generated.isEmpty()) {
+            return stored;
+        }
+        List<Assignment> merged = new ArrayList<>(stored);
+        for (Assignment occurrence : withoutStored(generated, stored)) {
+            if ((course == null || course.isEmpty() || course.equals(occurrence.getCourse()))
+                    && (status == null || status.isEmpty() || status.equals(occurrence.getStatus()))) {
+                merged.add(occurrence);
+            }
+        }
+        merged.sort(Comparator.comparing(Assignment::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())));
+        return merged;
+    }
+
+    /**
+     * Generated occurrences are never completed, so every one already due is overdue
+     */
+    private List<Assignment> overdueFor(String ownerId) {
+        List<Assignment> generated = occurrences(ownerId, null, assignmentRepository.now().minusNanos(1));
+        List<Assignment> overdue = assignmentRepository.findOverdueAssignments(ownerId);
+        if (generated.isEmpty()) {
+            return overdue;
+        }
+        List<Assignment> merged = new ArrayList<>(overdue);
+        merged.addAll(withoutStored(generated, overdue));
+        return merged;
+    }
+
+    private List<CalendarDay> calendarFor(String ownerId, LocalDate from, LocalDate to) {
+        List<Assignment> generated = occurrences(ownerId, from.atStartOfDay(),
+                to.plusDays(1).atStartOfDay().minusNanos(1));
+        List<CalendarDay> days = assignmentRepository.findCalendarDays(ownerId, from, to);
+        if (generated.isEmpty()) {
+            return days;
+        }
+        List<List<Assignment>> buckets = new ArrayList<>(days.size());
+        List<Assignment> stored = new ArrayList<>();
+        for (CalendarDay day : days) {
+            buckets.add(new ArrayList<>(day.getAssignments()));
+            stored.addAll(day.getAssignments());
+        }
+        for (Assignment occurrence : withoutStored(generated, stored)) {
+            int offset = (int) (occurrence.getDueDate().toLocalDate().toEpochDay() - from.toEpochDay());
+            buckets.get(offset).add(occurrence);
+        }
+        List<CalendarDay> merged = new ArrayList<>(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            List<Assignment> bucket = buckets.get(i);
+            bucket.sort(Comparator.comparing(Assignment::getDueDate));
+            merged.add(new CalendarDay(days.get(i).getDate(), bucket));
+        }
+        return merged;
+    }
+
+    /**
+     * Time an operation and trace it as a request
+     */
+    private <T> T observe(String name, Supplier<T> operation) {
+        try (Span span = tracer.startTrace(name)) {
+            return metrics.timed(name, operation);
+        }
+    }
+
+    /**
+     * Optional collaborators of an {@link AssignmentManagementService}
+     */
+    public static final class Builder {
+        private final AssignmentRepository assignmentRepository;
+        private CourseRepository courseRepository;
+        private RecurringAssignmentRepository recurringRepository;
+        private SessionManager sessionManager;
+        private MetricsRegistry metrics = MetricsRegistry.disabled();
+        private Tracer tracer = Tracer.disabled();
+
+        private Builder(AssignmentRepository assignmentRepository) {
+            this.assignmentRepository = assignmentRepository;
+        }
+
+        /**
+         * @param courseRepository repository used to resolve course references
+         */
+        public Builder courseRepository(CourseRepository courseRepository) {
+            this.courseRepository = courseRepository;
+            return this;
+        }
+
+        /**
+         * @param recurringRepository repository of recurring assignment templates
+         */
+        public Builder recurringRepository(RecurringAssignmentRepository recurringRepository) {
+            this.recurringRepository = recurringRepository;
+            return this;
+        }
+
+        /**
+         * @param sessionManager validates the sessions passed to the session-scoped methods
+         */
+        public Builder sessionManager(SessionManager sessionManager) {
+            this.sessionManager = sessionManager;
+            return this;
+        }
+
+        /**
+         * @param metrics registry recording latency and outcome of the public methods
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param tracer tracer starting a trace for every timed public method call
+         */
+        public Builder tracer(Tracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+
+        public AssignmentManagementService build() {
+            return new AssignmentManagementService(this);
+        }
     }
 }
@@ -1,120 +1,726 @@
 package com.arqon.study;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * In-memory repository for assignments, partitioned by owner.
+ *
+ * Every owner has its own partition, so per-owner queries only touch that owner's data.
+ * Assignments without an owner live in a shared partition, which is what the finders
+ * without an owner argument query. Ids are unique across partitions.
+ *
+ * A reverse index from course id to assignment ids makes course-wide operations
+ * proportional to that course's assignments. Writes hold a write lock and reads a read
+ * lock, so multi-row operations such as a course cascade are seen by readers either
+ * completely or not at all.
+ *
+ * Each partition also buckets its assignments by due date, so calendar views read only
+ * the requested days, and keeps them ordered by (priority, due date, id), so urgency
+ * listings are ordered traversals rather than sorts.
+ *
+ * Full-scan queries report to a {@link SlowQueryLog} when they take longer than its
+ * threshold; the time includes waiting for the read lock.
+ *
+ * The estimated heap held by the assignments and each index is kept up to date on every
+ * write and read with {@link #getMemoryFootprint()}.
+ */
 public class AssignmentRepository {
-    private final Map<Long, Assignment> assignments = new ConcurrentHashMap<>();
+    private final Map<Long, Assignment> assignmentsById = new ConcurrentHashMap<>();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> assignmentIdsByCourse = new ConcurrentHashMap<>();
+    private final Map<Long, Long> indexedCourseIds = new ConcurrentHashMap<>();
     private final AtomicLong nextId = new AtomicLong(1);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TimeSource timeSource;
+    private final List<RepositoryListener<Assignment>> listeners = new CopyOnWriteArrayList<>();
+    private final SlowQueryLog slowQueries;
+    private final FootprintTracker footprint = new FootprintTracker("AssignmentRepository",
+            "byId", "byOwner", "byCourse", "byDueDay", "byUrgency", "byStatus");
+
+    public AssignmentRepository() {
+        this(TimeSource.coarse());
+    }
+
+    public AssignmentRepository(TimeSource timeSource) {
+        this(timeSource, SlowQueryLog.disabled());
+    }
+
+    /**
+     * @param slowQueries log receiving slow filter and sorted listing queries
+     */
+    public AssignmentRepository(TimeSource timeSource, SlowQueryLog slowQueries) {
+        this.timeSource = timeSource;
+        this.slowQueries = slowQueries;
+    }
 
     public Assignment save(Assignment assignment) {
-        if (assignment.getId() == null) {
-            assignment.setId(nextId.getAndIncrement());
+        try (Span span = Tracer.startSpan("AssignmentRepository.save")) {
+            if (assignment.getId() == null) {
+                assignment.setId(nextId.getAndIncrement());
+            }
+            LocalDateTime now = timeSource.now();
+            if (assignment.getCreatedAt() == null) {
+                assignment.setCreatedAt(now);
+            }
+            assignment.setUpdatedAt(now);
+            write(() -> store(assignment));
+            return assignment;
         }
-        assignment.setUpdatedAt(LocalDateTime.now());
-        assignments.put(assignment.getId(), assignment);
-        return assignment;
+    }
+
+    /**
+     * Save an assignment for a course, looking the course up while holding the write lock.
+     * Course deletes made through {@link #deleteCourse} hold the same lock, so the
+     * assignment is either saved against a course that still exists or not at all.
+     * @param course looks up the referenced course
+     * @return the saved assignment, carrying the course's current id and code, or empty
+     *         if the course does not exist
+     */
+    public Optional<Assignment> saveForCourse(Assignment assignment, Supplier<Optional<Course>> course) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.saveForCourse")) {
+            return write(() -> course.get().map(found -> {
+                assignment.setCourseId(found.getId());
+                assignment.setCourse(found.getCode());
+                return save(assignment);
+            }));
+        }
+    }
+
+    public void addListener(RepositoryListener<Assignment> listener) {
+        listeners.add(listener);
     }
 
     public Optional<Assignment> findAssignmentById(Long id) {
-        return Optional.ofNullable(assignments.get(id));
+        return read(() -> Optional.ofNullable(assignmentsById.get(id)));
+    }
+
+    /**
+     * Find an assignment by ID, only if it belongs to the given owner
+     */
+    public Optional<Assignment> findAssignmentById(String ownerId, Long id) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findAssignmentById")) {
+            return read(() -> {
+                Partition partition = partitions.get(partitionKey(ownerId));
+                return partition == null ? Optional.empty() : Optional.ofNullable(partition.assignments.get(id));
+            });
+        }
     }
 
     public List<Assignment> findAllAssignments() {
-        return new ArrayList<>(assignments.values());
+        return findAllAssignments(null);
+    }
+
+    public List<Assignment> findAllAssignments(String ownerId) {
+        return read(() -> copyOf(partitionValues(ownerId)));
+    }
+
+    /**
+     * Find the assignments referencing a course, in time proportional to their number
+     */
+    public List<Assignment> findAssignmentsByCourseId(Long courseId) {
+        return read(() -> {
+            Set<Long> ids = assignmentIdsByCourse.get(courseId);
+            List<Assignment> result = new ArrayList<>(ids == null ? 0 : ids.size());
+            if (ids != null) {
+                for (Long id : ids) {
+                    result.add(assignmentsById.get(id));
+                }
+            }
+            return result;
+        });
     }
 
     public List<Assignment> findAssignmentsByCourse(String course) {
-        return assignments.values().stream()
+        return findAssignmentsByCourse(null, course);
+    }
+
+    public List<Assignment> findAssignmentsByCourse(String ownerId, String course) {
+        return read(() -> partitionValues(ownerId).stream()
                 .filter(assignment -> assignment.getCourse().equals(course))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     public List<Assignment> findAssignmentsByStatus(String status) {
-        return assignments.values().stream()
+        return findAssignmentsByStatus(null, status);
+    }
+
+    public List<Assignment> findAssignmentsByStatus(String ownerId, String status) {
+        return read(() -> partitionValues(ownerId).stream()
                 .filter(assignment -> assignment.getStatus().equals(status))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Count an owner's assignments with a status from a per-partition tally, without
+     * visiting or collecting the assignments
+     */
+    public long countAssignmentsByStatus(String ownerId, String status) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.countAssignmentsByStatus")) {
+            return read(() -> {
+                Partition partition = partitions.get(partitionKey(ownerId));
+                return partition == null ? 0L : partition.statusCounts.getOrDefault(status, 0);
+            });
+        }
     }
 
     public List<Assignment> findAssignmentsByDueDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return assignments.values().stream()
-                .filter(assignment -> {
+        return findAssignmentsByDueDateRange(null, startDate, endDate);
+    }
+
+    public List<Assignment> findAssignmentsByDueDateRange(String ownerId, LocalDateTime startDate,
+                                                          LocalDateTime endDate) {
+        if (startDate.isAfter(endDate)) {
+            return new ArrayList<>();
+        }
+        return read(() -> {
+            Partition partition = partitions.get(partitionKey(ownerId));
+            List<Assignment> result = new ArrayList<>();
+            if (partition == null) {
+                return result;
+            }
+            for (Set<Long> ids : partition.idsByDueDay
+                    .subMap(startDate.toLocalDate(), true, endDate.toLocalDate(), true).values()) {
+                for (Long id : ids) {
+                    Assignment assignment = partition.assignments.get(id);
                     LocalDateTime dueDate = assignment.getDueDate();
-                    if (dueDate == null) return false;
-                    return !dueDate.isBefore(startDate) && !dueDate.isAfter(endDate);
-                })
-                .collect(Collectors.toList());
+                    if (!dueDate.isBefore(startDate) && !dueDate.isAfter(endDate)) {
+                        result.add(assignment);
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * One owner's assignments bucketed by due date, with an entry for every day in the
+     * range, in time proportional to the days plus the assignments returned
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     */
+    public List<CalendarDay> findCalendarDays(String ownerId, LocalDate from, LocalDate to) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findCalendarDays")) {
+            return read(() -> {
+                Partition partition = partitions.get(partitionKey(ownerId));
+                NavigableMap<LocalDate, Set<Long>> buckets = partition == null
+                        ? new TreeMap<>()
+                        : partition.idsByDueDay.subMap(from, true, to, true);
+                List<CalendarDay> days = new ArrayList<>();
+                for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                    Set<Long> ids = buckets.get(day);
+                    List<Assignment> assignments = new ArrayList<>(ids == null ? 0 : ids.size());
+                    if (ids != null) {
+                        for (Long id : ids) {
+                            assignments.add(partition.assignments.get(id));
+                        }
+                        assignments.sort(BY_DUE_DATE);
+                    }
+                    days.add(new CalendarDay(day, assignments));
+                }
+                return days;
+            });
+        }
+    }
+
+    /**
+     * All of an owner's assignments, most urgent priority first, then by due date
+     * (assignments without one last within their priority)
+     */
+    public List<Assignment> findAllAssignmentsSortedByPriority(String ownerId) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findAllAssignmentsSortedByPriority")) {
+            return read(() -> {
+                Partition partition = partitions.get(partitionKey(ownerId));
+                List<Assignment> result = new ArrayList<>(partition == null ? 0 : partition.assignments.size());
+                if (partition != null) {
+                    for (UrgencyKey key : partition.byUrgency) {
+                        result.add(partition.assignments.get(key.id));
+                    }
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * The owner's first {@code limit} assignments that are not completed, in the same
+     * order as {@link #findAllAssignmentsSortedByPriority(String)}
+     */
+    public List<Assignment> findMostUrgentAssignments(String ownerId, int limit) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findMostUrgentAssignments")) {
+            return read(() -> {
+                Partition partition = partitions.get(partitionKey(ownerId));
+                List<Assignment> result = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+                if (partition == null) {
+                    return result;
+                }
+                for (UrgencyKey key : partition.byUrgency) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    Assignment assignment = partition.assignments.get(key.id);
+                    if (!"completed".equals(assignment.getStatus())) {
+                        result.add(assignment);
+                    }
+                }
+                return result;
+            });
+        }
     }
 
     public List<Assignment> findOverdueAssignments() {
-        LocalDateTime now = LocalDateTime.now();
-        return assignments.values().stream()
-                .filter(assignment -> {
-                    LocalDateTime dueDate = assignment.getDueDate();
-                    return dueDate != null && dueDate.isBefore(now) && 
-                           !assignment.getStatus().equals("completed");
-                })
-                .collect(Collectors.toList());
+        return findOverdueAssignments(null);
+    }
+
+    public List<Assignment> findOverdueAssignments(String ownerId) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findOverdueAssignments")) {
+            LocalDateTime now = timeSource.now();
+            return read(() -> partitionValues(ownerId).stream()
+                    .filter(assignment -> {
+                        LocalDateTime dueDate = assignment.getDueDate();
+                        return dueDate != null && dueDate.isBefore(now) &&
+                               !assignment.getStatus().equals("completed");
+                    })
+                    .collect(Collectors.toList()));
+        }
     }
 
     public List<Assignment> findAllAssignmentsSortedByDueDate() {
-        return assignments.values().stream()
-                .sorted(Comparator.comparing(Assignment::getDueDate, 
-                        Comparator.nullsLast(Comparator.naturalOrder())))
-                .collect(Collectors.toList());
+        return findAllAssignmentsSortedByDueDate(null);
+    }
+
+    public List<Assignment> findAllAssignmentsSortedByDueDate(String ownerId) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findAllAssignmentsSortedByDueDate")) {
+            long start = System.nanoTime();
+            return read(() -> {
+                List<Assignment> result = copyOf(partitionValues(ownerId));
+                result.sort(BY_DUE_DATE_NULLS_LAST);
+                long elapsed = System.nanoTime() - start;
+                if (slowQueries.shouldRecord(elapsed)) {
+                    slowQueries.record("findAllAssignmentsSortedByDueDate", "owner=" + ownerId,
+                            result.size(), result.size(), elapsed);
+                }
+                return result;
+            });
+        }
+    }
+
+    public List<Assignment> findAssignmentsWithFilters(String course, String status,
+                                                       LocalDateTime startDate, LocalDateTime endDate) {
+        return findAssignmentsWithFilters(null, course, status, startDate, endDate);
     }
 
-    public List<Assignment> findAssignmentsWithFilters(String course, String status, 
+    public List<Assignment> findAssignmentsWithFilters(String ownerId, String course, String status,
                                                        LocalDateTime startDate, LocalDateTime endDate) {
-        return assignments.values().stream()
-                .filter(assignment -> {
+        try (Span span = Tracer.startSpan("AssignmentRepository.findAssignmentsWithFilters")) {
+            long start = System.nanoTime();
+            return read(() -> {
+                Collection<Assignment> values = partitionValues(ownerId);
+                List<Assignment> result = new ArrayList<>();
+                for (Assignment assignment : values) {
                     if (course != null && !course.isEmpty() && !assignment.getCourse().equals(course)) {
-                        return false;
+                        continue;
                     }
                     if (status != null && !status.isEmpty() && !assignment.getStatus().equals(status)) {
-                        return false;
+                        continue;
                     }
-                    if (startDate != null && assignment.getDueDate() != null && 
+                    if (startDate != null && assignment.getDueDate() != null &&
                         assignment.getDueDate().isBefore(startDate)) {
-                        return false;
+                        continue;
                     }
-                    if (endDate != null && assignment.getDueDate() != null && 
+                    if (endDate != null && assignment.getDueDate() != null &&
                         assignment.getDueDate().isAfter(endDate)) {
-                        return false;
+                        continue;
                     }
-                    return true;
-                })
-                .sorted(Comparator.comparing(Assignment::getDueDate, 
-                        Comparator.nullsLast(Comparator.naturalOrder())))
-                .collect(Collectors.toList());
+                    result.add(assignment);
+                }
+                result.sort(BY_DUE_DATE_NULLS_LAST);
+                long elapsed = System.nanoTime() - start;
+                if (slowQueries.shouldRecord(elapsed)) {
+                    slowQueries.record("findAssignmentsWithFilters", "owner=" + ownerId + " course=" + course
+                            + " status=" + status + " from=" + startDate + " to=" + endDate,
+                            values.size(), result.size(), elapsed);
+                }
+                if (span.isRecording()) {
+                    span.setAttribute("rowsScanned", values.size()).setAttribute("rowsReturned", result.size());
+                }
+                return result;
+            });
+        }
     }
 
     public Optional<Assignment> updateAssignment(Assignment updatedAssignment) {
-        if (assignments.containsKey(updatedAssignment.getId())) {
-            updatedAssignment.setUpdatedAt(LocalDateTime.now());
-            assignments.put(updatedAssignment.getId(), updatedAssignment);
-            return Optional.of(updatedAssignment);
+        try (Span span = Tracer.startSpan("AssignmentRepository.updateAssignment")) {
+            return write(() -> {
+                if (assignmentsById.containsKey(updatedAssignment.getId())) {
+                    updatedAssignment.setUpdatedAt(timeSource.now());
+                    store(updatedAssignment);
+                    return Optional.of(updatedAssignment);
+                }
+                return Optional.empty();
+            });
         }
-        return Optional.empty();
     }
 
     public boolean deleteAssignment(Long id) {
-        return assignments.remove(id) != null;
+        return write(() -> remove(id) != null);
+    }
+
+    /**
+     * Delete a course and then every assignment referencing it, as one step for
+     * concurrent readers and for {@link #saveForCourse}
+     * @param deleteCourse deletes the course, returning false if it did not exist
+     * @return the number of assignments deleted, or -1 if the course was not deleted
+     */
+    public int deleteCourse(Long courseId, BooleanSupplier deleteCourse) {
+        return write(() -> deleteCourse.getAsBoolean() ? deleteAssignmentsByCourseId(courseId) : -1);
+    }
+
+    /**
+     * Save an edited course and relabel its assignments with its code, as one step for
+     * concurrent readers and for {@link #deleteCourse}, so a course deleted meanwhile is
+     * not saved back after its assignments are gone
+     * @param saveCourse saves the course if it still exists and returns it, or returns
+     *                   empty if it does not
+     * @return the saved course, or empty if it no longer exists
+     */
+    public Optional<Course> updateCourse(Supplier<Optional<Course>> saveCourse) {
+        try (Span span = Tracer.startSpan("AssignmentRepository.updateCourse")) {
+            return write(() -> {
+                Optional<Course> saved = saveCourse.get();
+                saved.ifPresent(course -> relabelCourse(course.getId(), course.getCode()));
+                return saved;
+            });
+        }
+    }
+
+    /**
+     * Delete every assignment referencing a course, as one step for concurrent readers
+     * @return the number of assignments deleted
+     */
+    public int deleteAssignmentsByCourseId(Long courseId) {
+        return write(() -> {
+            Set<Long> ids = assignmentIdsByCourse.get(courseId);
+            if (ids == null) {
+                return 0;
+            }
+            List<Long> toDelete = new ArrayList<>(ids);
+            toDelete.forEach(this::remove);
+            return toDelete.size();
+        });
+    }
+
+    /**
+     * Update the course code carried by every assignment referencing a course, as one
+     * step for concurrent readers. Assignments already carrying the code are left alone.
+     * @return the number of assignments updated
+     */
+    public int relabelCourse(Long courseId, String course) {
+        return write(() -> {
+            Set<Long> ids = assignmentIdsByCourse.get(courseId);
+            if (ids == null) {
+                return 0;
+            }
+            LocalDateTime now = timeSource.now();
+            int updated = 0;
+            for (Long id : new ArrayList<>(ids)) {
+                Assignment assignment = assignmentsById.get(id);
+                if (Objects.equals(assignment.getCourse(), course)) {
+                    continue;
+                }
+                assignment.setCourse(course);
+                assignment.setUpdatedAt(now);
+                store(assignment);
+                updated++;
+            }
+            return updated;
+        });
     }
 
     public void clear() {
-        assignments.clear();
-        nextId.set(1);
+        write(() -> {
+            for (Assignment assignment : assignmentsById.values()) {
+                listeners.forEach(listener -> listener.onDelete(assignment));
+            }
+            assignmentsById.clear();
+            partitions.clear();
+            assignmentIdsByCourse.clear();
+            indexedCourseIds.clear();
+            footprint.clear();
+            nextId.set(1);
+        });
+    }
+
+    /**
+     * Current time on the clock used for timestamps and overdue checks
+     */
+    LocalDateTime now() {
+        return timeSource.now();
     }
 
     public long count() {
-        return assignments.size();
+        return assignmentsById.size();
+    }
+
+    public long count(String ownerId) {
+        return read(() -> partitionValues(ownerId).size());
+    }
+
+    /**
+     * Estimated heap held by the assignments and by each index, maintained as rows change
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        return footprint.snapshot();
+    }
+
+    private Assignment remove(Long id) {
+        Assignment removed = assignmentsById.remove(id);
+        if (removed == null) {
+            return null;
+        }
+        Partition partition = partitions.get(partitionKey(removed.getOwnerId()));
+        if (partition != null) {
+            partition.remove(id);
+        }
+        unindexCourse(id);
+        footprint.remove(id);
+        listeners.forEach(listener -> listener.onDelete(removed));
+        return removed;
+    }
+
+    private void store(Assignment assignment) {
+        Assignment previous = assignmentsById.put(assignment.getId(), assignment);
+        String key = partitionKey(assignment.getOwnerId());
+        if (previous != null && !partitionKey(previous.getOwnerId()).equals(key)) {
+            Partition previousPartition = partitions.get(partitionKey(previous.getOwnerId()));
+            if (previousPartition != null) {
+                previousPartition.remove(assignment.getId());
+            }
+        }
+        partitions.computeIfAbsent(key, k -> new Partition()).put(assignment);
+        unindexCourse(assignment.getId());
+        if (assignment.getCourseId() != null) {
+            indexedCourseIds.put(assignment.getId(), assignment.getCourseId());
+            assignmentIdsByCourse.computeIfAbsent(assignment.getCourseId(), k -> ConcurrentHashMap.newKeySet())
+                    .add(assignment.getId());
+        }
+        trackFootprint(assignment);
+        listeners.forEach(listener -> listener.onSave(assignment));
+    }
+
+    /**
+     * Record the sizes of an assignment's row and index entries, mirroring what
+     * {@link #store} and {@link Partition#put} index
+     */
+    private void trackFootprint(Assignment assignment) {
+        int entity = MemoryLayout.object(14 * MemoryLayout.REFERENCE)
+                + MemoryLayout.boxed(assignment.getId())
+                + MemoryLayout.string(assignment.getOwnerId())
+                + MemoryLayout.string(assignment.getTitle())
+                + MemoryLayout.string(assignment.getDescription())
+                + MemoryLayout.string(assignment.getCourse())
+                + MemoryLayout.boxed(assignment.getCourseId())
+                + MemoryLayout.boxed(assignment.getRecurrenceId())
+                + MemoryLayout.boxed(assignment.getOccurrenceIndex())
+                + MemoryLayout.dateTime(assignment.getDueDate())
+                + MemoryLayout.string(assignment.getStatus())
+                + MemoryLayout.string(assignment.getPriority())
+                + MemoryLayout.boxed(assignment.getEstimatedHours())
+                + MemoryLayout.dateTime(assignment.getCreatedAt())
+                + MemoryLayout.dateTime(assignment.getUpdatedAt());
+        // Course index: the id in the course's key set plus the indexed course id
+        int byCourse = assignment.getCourseId() == null ? 0 : 2 * MemoryLayout.HASH_ENTRY;
+        // Due day index: the id in the day's bucket plus the indexed day
+        int byDueDay = assignment.getDueDate() == null ? 0
+                : 2 * MemoryLayout.HASH_ENTRY + MemoryLayout.LOCAL_DATE;
+        // Urgency index: the ordered key plus the key kept per id
+        int byUrgency = MemoryLayout.TREE_ENTRY + MemoryLayout.object(4 + MemoryLayout.REFERENCE + 8)
+                + MemoryLayout.HASH_ENTRY;
+        int byStatus = assignment.getStatus() == null ? 0 : MemoryLayout.HASH_ENTRY;
+        footprint.update(assignment.getId(), entity, MemoryLayout.HASH_ENTRY, MemoryLayout.HASH_ENTRY, byCourse,
+                byDueDay, byUrgency, byStatus);
+    }
+
+    private void unindexCourse(Long assignmentId) {
+        Long courseId = indexedCourseIds.remove(assignmentId);
+        if (courseId != null) {
+            Set<Long> ids = assignmentIdsByCourse.get(courseId);
+            ids.remove(assignmentId);
+            if (ids.isEmpty()) {
+                assignmentIdsByCourse.remove(courseId);
+            }
+        }
+    }
+
+    private <T> T read(Supplier<T> query) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return query.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> update) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            return update.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(Runnable update) {
+        write(() -> {
+            update.run();
+            return null;
+        });
+    }
+
+    private Collection<Assignment> partitionValues(String ownerId) {
+        Partition partition = partitions.get(partitionKey(ownerId));
+        return partition == null ? List.of() : partition.assignments.values();
+    }
+
+    static String partitionKey(String ownerId) {
+        return ownerId == null ? "" : ownerId;
+    }
+
+    /**
+     * Copy into an exactly sized list; {@code new ArrayList<>(values)} would copy twice
+     */
+    private static List<Assignment> copyOf(Collection<Assignment> values) {
+        List<Assignment> copy = new ArrayList<>(values.size());
+        for (Assignment assignment : values) {
+            copy.add(assignment);
+        }
+        return copy;
+    }
+
+    private static final Comparator<Assignment> BY_DUE_DATE = Comparator.comparing(Assignment::getDueDate)
+            .thenComparing(Assignment::getId);
+    private static final Comparator<Assignment> BY_DUE_DATE_NULLS_LAST = Comparator.comparing(Assignment::getDueDate,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+
+    /**
+     * Snapshot of the fields an assignment is ordered by, so edits made in place before a
+     * save cannot corrupt the ordered index
+     */
+    private static final class UrgencyKey implements Comparable<UrgencyKey> {
+        final int priority;
+        final LocalDateTime dueDate;
+        final long id;
+
+        UrgencyKey(Assignment assignment) {
+            this.priority = Priority.parse(assignment.getPriority()).ordinal();
+            this.dueDate = assignment.getDueDate();
+            this.id = assignment.getId();
+        }
+
+        @Override
+        public int compareTo(UrgencyKey other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            if (dueDate == null || other.dueDate == null) {
+                if (dueDate != other.dueDate) {
+                    return dueDate == null ? 1 : -1;
+                }
+            } else {
+                int byDueDate = dueDate.compareTo(other.dueDate);
+                if (byDueDate != 0) {
+                    return byDueDate;
+                }
+            }
+            return Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * One owner's assignments and the indexes over them. Index fields are only changed
+     * under the repository's write lock.
+     */
+    private static final class Partition {
+        final Map<Long, Assignment> assignments = new ConcurrentHashMap<>();
+        final TreeMap<LocalDate, Set<Long>> idsByDueDay = new TreeMap<>();
+        /** Day each assignment is bucketed under, since assignments may be edited in place */
+        final Map<Long, LocalDate> indexedDueDays = new HashMap<>();
+        final TreeSet<UrgencyKey> byUrgency = new TreeSet<>();
+        final Map<Long, UrgencyKey> urgencyKeys = new HashMap<>();
+        final Map<String, Integer> statusCounts = new HashMap<>();
+        /** Status each assignment is counted under, since assignments may be edited in place */
+        final Map<Long, String> countedStatuses = new HashMap<>();
+
+        void put(Assignment assignment) {
+            assignments.put(assignment.getId(), assignment);
+            unindexDueDay(assignment.getId());
+            uncountStatus(assignment.getId());
+            if (assignment.getStatus() != null) {
+                countedStatuses.put(assignment.getId(), assignment.getStatus());
+                statusCounts.merge(assignment.getStatus(), 1, Integer::sum);
+            }
+            UrgencyKey key = new UrgencyKey(assignment);
+            UrgencyKey previousKey = urgencyKeys.put(assignment.getId(), key);
+            if (previousKey != null) {
+                byUrgency.remove(previousKey);
+            }
+            byUrgency.add(key);
+            if (assignment.getDueDate() != null) {
+                LocalDate day = assignment.getDueDate().toLocalDate();
+                indexedDueDays.put(assignment.getId(), day);
+                idsByDueDay.computeIfAbsent(day, d -> new HashSet<>()).add(assignment.getId());
+            }
+        }
+
+        void remove(Long id) {
+            assignments.remove(id);
+            unindexDueDay(id);
+            uncountStatus(id);
+            UrgencyKey key = urgencyKeys.remove(id);
+            if (key != null) {
+                byUrgency.remove(key);
+            }
+        }
+
+        private void uncountStatus(Long id) {
+            String status = countedStatuses.remove(id);
+            if (status != null) {
+                statusCounts.computeIfPresent(status, (s, count) -> count == 1 ? null : count - 1);
+            }
+        }
+
+        private void unindexDueDay(Long id) {
+            LocalDate day = indexedDueDays.remove(id);
+            if (day != null) {
+                Set<Long> ids = idsByDueDay.get(day);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    idsByDueDay.remove(day);
+                }
+            }
+        }
     }
 }
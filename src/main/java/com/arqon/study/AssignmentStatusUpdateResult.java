@@ -1,6 +1,6 @@
 package com.arqon.study;
 
-public class AssignmentStatusUpdateResult {
+public class AssignmentStatusUpdateResult implements OperationResult {
     private final boolean success;
     private final String message;
     private final String errorMessage;
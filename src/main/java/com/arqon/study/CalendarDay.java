@@ -0,0 +1,22 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One calendar day and the assignments due on it, ordered by due time
+ */
+public class CalendarDay {
+    private final LocalDate date;
+    private final List<Assignment> assignments;
+    
+    public CalendarDay(LocalDate date, List<Assignment> assignments) {
+        this.date = date;
+        this.assignments = Collections.unmodifiableList(assignments);
+    }
+    
+    public LocalDate getDate() { return date; }
+    public List<Assignment> getAssignments() { return assignments; }
+    public boolean isEmpty() { return assignments.isEmpty(); }
+}
@@ -0,0 +1,82 @@
+package com.arqon.study;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time source that serves a cached value refreshed by one background thread every millisecond.
+ *
+ * Reads are a single volatile load, with no system call, time zone lookup or allocation,
+ * at the cost of being up to about a millisecond stale.
+ */
+public class CoarseTimeSource implements TimeSource, AutoCloseable {
+    private static final class Holder {
+        static final CoarseTimeSource SHARED = new CoarseTimeSource();
+    }
+    
+    private final ScheduledExecutorService ticker;
+    private volatile Tick tick;
+    
+    public CoarseTimeSource() {
+        this.tick = Tick.of(System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "coarse-time-source");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::refresh, 1, 1, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * @return the process-wide instance, started on first use
+     */
+    public static CoarseTimeSource shared() {
+        return Holder.SHARED;
+    }
+    
+    @Override
+    public LocalDateTime now() {
+        return tick.dateTime;
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        return tick.millis;
+    }
+    
+    @Override
+    public void close() {
+        if (this != Holder.SHARED) {
+            ticker.shutdownNow();
+        }
+    }
+    
+    private void refresh() {
+        long millis = System.currentTimeMillis();
+        if (millis != tick.millis) {
+            tick = Tick.of(millis);
+        }
+    }
+    
+    // Published together so readers never see a date-time from one tick and millis from another
+    private static final class Tick {
+        final long millis;
+        final LocalDateTime dateTime;
+        
+        Tick(long millis, LocalDateTime dateTime) {
+            this.millis = millis;
+            this.dateTime = dateTime;
+        }
+        
+        /**
+         * Derive the date-time from the same clock reading, so the two never disagree
+         */
+        static Tick of(long millis) {
+            return new Tick(millis, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        }
+    }
+}
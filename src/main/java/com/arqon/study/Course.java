@@ -7,6 +7,7 @@ import java.time.LocalDateTime;
  */
 public class Course {
     private Long id;
+    private String ownerId;
     private String name;
     private String code;
     private String instructor;
@@ -16,10 +17,8 @@ public class Course {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
-    // Default constructor
+    // Default constructor; timestamps are assigned by the repository on save
     public Course() {
-        this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
     }
     
     // Constructor with all fields
@@ -43,13 +42,20 @@ public class Course {
         this.id = id;
     }
     
+    public String getOwnerId() {
+        return ownerId;
+    }
+    
+    public void setOwnerId(String ownerId) {
+        this.ownerId = ownerId;
+    }
+    
     public String getName() {
         return name;
     }
     
     public void setName(String name) {
         this.name = name;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public String getCode() {
@@ -58,7 +64,6 @@ public class Course {
     
     public void setCode(String code) {
         this.code = code;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public String getInstructor() {
@@ -67,7 +72,6 @@ public class Course {
     
     public void setInstructor(String instructor) {
         this.instructor = instructor;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public String getDescription() {
@@ -76,7 +80,6 @@ public class Course {
     
     public void setDescription(String description) {
         this.description = description;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public String getStartDate() {
@@ -85,7 +88,6 @@ public class Course {
     
     public void setStartDate(String startDate) {
         this.startDate = startDate;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public String getEndDate() {
@@ -94,7 +96,6 @@ public class Course {
     
     public void setEndDate(String endDate) {
         this.endDate = endDate;
-        this.updatedAt = LocalDateTime.now();
     }
     
     public LocalDateTime getCreatedAt() {
@@ -117,6 +118,7 @@ public class Course {
     public String toString() {
         return "Course{" +
                 "id=" + id +
+                ", ownerId='" + ownerId + '\'' +
                 ", name='" + name + '\'' +
                 ", code='" + code + '\'' +
                 ", instructor='" + instructor + '\'' +
@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of course creation operation
  */
-public class CourseCreationResult {
+public class CourseCreationResult implements OperationResult {
     private final boolean success;
     private final Course course;
     private final String message;
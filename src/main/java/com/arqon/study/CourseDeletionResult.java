@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of course deletion operation
  */
-public class CourseDeletionResult {
+public class CourseDeletionResult implements OperationResult {
     private final boolean success;
     private final String message;
     private final String errorMessage;
@@ -0,0 +1,274 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of course date ranges answering "active on a day" and "active during a range".
+ *
+ * Intervals are laid out as an implicit balanced search tree over an array sorted by
+ * start day: the node for a range of the array is its middle element, and each node
+ * stores the latest end day in its subtree. Queries skip subtrees that end too early or
+ * start too late. Each of the k matches can cost a root-to-leaf path of its own, so a
+ * tree walk is O(min(n, (k + 1) log n)) in the worst case; it is close to O(log n + k)
+ * when matches are clustered by start day, as courses of one term are.
+ *
+ * Writes do not touch the tree. They go to a small sorted delta of changed intervals,
+ * and the tree entries they replace or remove are masked. Queries walk the tree and scan
+ * the whole delta, and merge the two; masked entries are still visited by the walk and
+ * then dropped. Once the delta and mask grow past max(16, sqrt(n)) entries, the next
+ * write folds them into a new tree with one linear merge. A write therefore costs
+ * O(sqrt n) amortized, and a query pays up to O(sqrt n) more on top of the tree walk.
+ *
+ * Writes are synchronized; queries read an immutable snapshot and are lock-free.
+ */
+public class CourseIntervalIndex {
+    /** Delta and mask size below which writes never fold, whatever the index size */
+    private static final int MIN_PENDING = 16;
+    
+    private final Map<Long, long[]> intervals = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    
+    /**
+     * Index a course's dates; a missing start or end leaves that side open. A course
+     * with neither is removed from the index.
+     */
+    public synchronized void put(Long id, LocalDate start, LocalDate end) {
+        if (start == null && end == null) {
+            remove(id);
+            return;
+        }
+        long[] interval = {
+                start == null ? Long.MIN_VALUE : start.toEpochDay(),
+                end == null ? Long.MAX_VALUE : end.toEpochDay()};
+        // A course new to the index has no tree entry to mask
+        boolean indexed = intervals.put(id, interval) != null;
+        publish(snapshot.with(id, interval, indexed, intervals.size()));
+    }
+    
+    public synchronized void remove(Long id) {
+        if (intervals.remove(id) != null) {
+            publish(snapshot.with(id, null, true, intervals.size()));
+        }
+    }
+    
+    /**
+     * Ids of courses active on a day, ordered by start day
+     */
+    public List<Long> activeOn(LocalDate day) {
+        return overlapping(day, day);
+    }
+    
+    /**
+     * Ids of courses active on any day of a range, ordered by start day
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     */
+    public List<Long> overlapping(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        return snapshot.overlapping(from.toEpochDay(), to.toEpochDay());
+    }
+    
+    public int size() {
+        return snapshot.size;
+    }
+    
+    private void publish(Snapshot next) {
+        int pending = next.pendingIds.length + next.masked.size();
+        snapshot = pending > Math.max(MIN_PENDING, (int) Math.sqrt(next.size)) ? next.fold() : next;
+    }
+    
+    /**
+     * A tree over intervals sorted by start day, plus the writes made since it was built
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new long[0], new long[0],
+                new long[0], new long[0], new long[0], Collections.emptySet(), 0);
+        
+        final long[] ids;
+        final long[] starts;
+        final long[] ends;
+        final long[] maxEnds;
+        /** Intervals written since the tree was built, sorted by start day then id */
+        final long[] pendingIds;
+        final long[] pendingStarts;
+        final long[] pendingEnds;
+        /** Ids whose tree entry was replaced or removed since the tree was built */
+        final Set<Long> masked;
+        final int size;
+        
+        private Snapshot(long[] ids, long[] starts, long[] ends, long[] pendingIds, long[] pendingStarts,
+                         long[] pendingEnds, Set<Long> masked, int size) {
+            this.ids = ids;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = new long[ids.length];
+            this.pendingIds = pendingIds;
+            this.pendingStarts = pendingStarts;
+            this.pendingEnds = pendingEnds;
+            this.masked = masked;
+            this.size = size;
+            fillMaxEnds(0, ids.length);
+        }
+        
+        private Snapshot(Snapshot tree, long[] pendingIds, long[] pendingStarts, long[] pendingEnds,
+                         Set<Long> masked, int size) {
+            this.ids = tree.ids;
+            this.starts = tree.starts;
+            this.ends = tree.ends;
+            this.maxEnds = tree.maxEnds;
+            this.pendingIds = pendingIds;
+            this.pendingStarts = pendingStarts;
+            this.pendingEnds = pendingEnds;
+            this.masked = masked;
+            this.size = size;
+        }
+        
+        /**
+         * This snapshot with one interval written to the delta, or removed if null
+         * @param indexed whether the id may have a tree entry, which is then masked
+         */
+        Snapshot with(Long id, long[] interval, boolean indexed, int size) {
+            int count = pendingIds.length;
+            int at = -1;
+            for (int i = 0; i < count; i++) {
+                if (pendingIds[i] == id) {
+                    at = i;
+                    break;
+                }
+            }
+            int length = count - (at >= 0 ? 1 : 0) + (interval != null ? 1 : 0);
+            long[] nextIds = new long[length];
+            long[] nextStarts = new long[length];
+            long[] nextEnds = new long[length];
+            int out = 0;
+            boolean placed = interval == null;
+            for (int i = 0; i < count; i++) {
+                if (i == at) {
+                    continue;
+                }
+                if (!placed && before(interval[0], id, pendingStarts[i], pendingIds[i])) {
+                    nextIds[out] = id;
+                    nextStarts[out] = interval[0];
+                    nextEnds[out++] = interval[1];
+                    placed = true;
+                }
+                nextIds[out] = pendingIds[i];
+                nextStarts[out] = pendingStarts[i];
+                nextEnds[out++] = pendingEnds[i];
+            }
+            if (!placed) {
+                nextIds[out] = id;
+                nextStarts[out] = interval[0];
+                nextEnds[out] = interval[1];
+            }
+            Set<Long> nextMasked = masked;
+            if (indexed && !masked.contains(id)) {
+                nextMasked = new HashSet<>(masked);
+                nextMasked.add(id);
+            }
+            return new Snapshot(this, nextIds, nextStarts, nextEnds, nextMasked, size);
+        }
+        
+        /**
+         * Merge the unmasked tree entries with the delta into a new tree, in linear time
+         */
+        Snapshot fold() {
+            long[] nextIds = new long[size];
+            long[] nextStarts = new long[size];
+            long[] nextEnds = new long[size];
+            int out = 0;
+            int tree = 0;
+            int pending = 0;
+            while (tree < ids.length || pending < pendingIds.length) {
+                if (tree < ids.length && masked.contains(ids[tree])) {
+                    tree++;
+                } else if (pending >= pendingIds.length || (tree < ids.length
+                        && before(starts[tree], ids[tree], pendingStarts[pending], pendingIds[pending]))) {
+                    nextIds[out] = ids[tree];
+                    nextStarts[out] = starts[tree];
+                    nextEnds[out++] = ends[tree++];
+                } else {
+                    nextIds[out] = pendingIds[pending];
+                    nextStarts[out] = pendingStarts[pending];
+                    nextEnds[out++] = pendingEnds[pending++];
+                }
+            }
+            return new Snapshot(nextIds, nextStarts, nextEnds, new long[0], new long[0], new long[0],
+                    Collections.emptySet(), size);
+        }
+        
+        List<Long> overlapping(long from, long to) {
+            List<Integer> fromTree = new ArrayList<>();
+            collect(0, ids.length, from, to, fromTree);
+            List<Long> result = new ArrayList<>(fromTree.size());
+            int pending = nextPending(0, from, to);
+            for (int node : fromTree) {
+                while (pending < pendingIds.length
+                        && before(pendingStarts[pending], pendingIds[pending], starts[node], ids[node])) {
+                    result.add(pendingIds[pending]);
+                    pending = nextPending(pending + 1, from, to);
+                }
+                result.add(ids[node]);
+            }
+            for (; pending < pendingIds.length; pending = nextPending(pending + 1, from, to)) {
+                result.add(pendingIds[pending]);
+            }
+            return result;
+        }
+        
+        /**
+         * First delta entry at or after an index that overlaps the range
+         */
+        private int nextPending(int index, long from, long to) {
+            while (index < pendingIds.length && (pendingStarts[index] > to || pendingEnds[index] < from)) {
+                index++;
+            }
+            return index;
+        }
+        
+        private static boolean before(long start, long id, long otherStart, long otherId) {
+            return start != otherStart ? start < otherStart : id < otherId;
+        }
+        
+        private long fillMaxEnds(int low, int high) {
+            if (low >= high) {
+                return Long.MIN_VALUE;
+            }
+            int mid = (low + high) >>> 1;
+            long max = Math.max(ends[mid], Math.max(fillMaxEnds(low, mid), fillMaxEnds(mid + 1, high)));
+            maxEnds[mid] = max;
+            return max;
+        }
+        
+        /**
+         * In-order walk of the subtree over [low, high), pruned by end and start bounds,
+         * collecting the positions of unmasked matches
+         */
+        void collect(int low, int high, long from, long to, List<Integer> result) {
+            if (low >= high) {
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            if (maxEnds[mid] < from) {
+                return;
+            }
+            collect(low, mid, from, to, result);
+            if (starts[mid] > to) {
+                return;
+            }
+            if (ends[mid] >= from && !masked.contains(ids[mid])) {
+                result.add(mid);
+            }
+            collect(mid + 1, high, from, to, result);
+        }
+    }
+}
@@ -1,16 +1,60 @@
 package com.arqon.study;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Service for managing course operations
  * Handles business logic for course creation, deletion, and validation
+ * 
+ * Methods taking a {@link Session} act on the courses of the session's user; the
+ * session is re-validated with the {@link SessionManager} and only its user id is
+ * trusted, so without a SessionManager every session is rejected. Methods without a
+ * session act on unowned courses.
  */
 public class CourseManagementService {
+    private static final String INVALID_SESSION = "Invalid session";
+    private static final String CREATE_COURSE = "CourseManagementService.createCourse";
+    private static final String UPDATE_COURSE = "CourseManagementService.updateCourse";
+    private static final String DELETE_COURSE = "CourseManagementService.deleteCourse";
+    private static final String GET_ALL_COURSES = "CourseManagementService.getAllCourses";
+    private static final String GET_COURSE_BY_ID = "CourseManagementService.getCourseById";
+    private static final String SUGGEST_COURSES = "CourseManagementService.suggestCourses";
+    private static final String GET_ACTIVE_COURSES = "CourseManagementService.getActiveCourses";
+    private static final String GET_COURSES_ACTIVE_BETWEEN = "CourseManagementService.getCoursesActiveBetween";
+    
     private final CourseRepository courseRepository;
+    private final AssignmentRepository assignmentRepository;
+    private final SessionManager sessionManager;
+    private final MetricsRegistry metrics;
+    private final Tracer tracer;
     
     public CourseManagementService(CourseRepository courseRepository) {
-        this.courseRepository = courseRepository;
+        this(builder(courseRepository));
+    }
+    
+    public CourseManagementService(CourseRepository courseRepository, SessionManager sessionManager) {
+        this(builder(courseRepository).sessionManager(sessionManager));
+    }
+    
+    private CourseManagementService(Builder builder) {
+        this.tracer = builder.tracer;
+        this.metrics = builder.metrics;
+        this.courseRepository = builder.courseRepository;
+        this.assignmentRepository = builder.assignmentRepository;
+        this.sessionManager = builder.sessionManager;
+        metrics.gauge("CourseRepository.size", courseRepository::count);
+        metrics.gauge("CourseRepository.bytes", () -> courseRepository.getMemoryFootprint().getTotalBytes());
+    }
+    
+    /**
+     * Start configuring a service over a repository; every other collaborator is optional
+     */
+    public static Builder builder(CourseRepository courseRepository) {
+        return new Builder(courseRepository);
     }
     
     /**
@@ -25,13 +69,40 @@ public class CourseManagementService {
      */
     public CourseCreationResult createCourse(String name, String code, String instructor, 
                                            String description, String startDate, String endDate) {
+        return observe(CREATE_COURSE,
+                () -> createCourseFor(null, name, code, instructor, description, startDate, endDate));
+    }
+    
+    /**
+     * Create a new course owned by the session's user
+     * @param session the caller's session
+     * @return CourseCreationResult with success status and course or error message
+     */
+    public CourseCreationResult createCourse(Session session, String name, String code, String instructor, 
+                                           String description, String startDate, String endDate) {
+        return observe(CREATE_COURSE, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return new CourseCreationResult(false, null, INVALID_SESSION);
+            }
+            return createCourseFor(owner.get(), name, code, instructor, description, startDate, endDate);
+        });
+    }
+    
+    private CourseCreationResult createCourseFor(String ownerId, String name, String code, String instructor, 
+                                                 String description, String startDate, String endDate) {
         // Validate required fields
         if (name == null || name.trim().isEmpty()) {
             return new CourseCreationResult(false, null, "Course name is required");
         }
+        String dateError = validateDates(startDate, endDate);
+        if (dateError != null) {
+            return new CourseCreationResult(false, null, dateError);
+        }
         
         // Create course entity
         Course course = new Course(name.trim(), code, instructor, description, startDate, endDate);
+        course.setOwnerId(ownerId);
         
         // Save to repository
         Course savedCourse = courseRepository.save(course);
@@ -40,20 +111,105 @@ public class CourseManagementService {
     }
     
     /**
-     * Delete a course by ID
+     * Update a course's details; a changed course code is propagated to its assignments
+     * @param courseId the ID of the course to update
+     * @param name course name (required)
+     * @return CourseUpdateResult with success status and course or error message
+     */
+    public CourseUpdateResult updateCourse(Long courseId, String name, String code, String instructor,
+                                           String description, String startDate, String endDate) {
+        return observe(UPDATE_COURSE,
+                () -> updateCourseFor(null, courseId, name, code, instructor, description, startDate, endDate));
+    }
+    
+    /**
+     * Update one of the session user's courses
+     * @param session the caller's session
+     * @return CourseUpdateResult with success status and course or error message
+     */
+    public CourseUpdateResult updateCourse(Session session, Long courseId, String name, String code,
+                                           String instructor, String description, String startDate,
+                                           String endDate) {
+        return observe(UPDATE_COURSE, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return new CourseUpdateResult(false, null, INVALID_SESSION);
+            }
+            return updateCourseFor(owner.get(), courseId, name, code, instructor, description, startDate, endDate);
+        });
+    }
+    
+    private CourseUpdateResult updateCourseFor(String ownerId, Long courseId, String name, String code,
+                                               String instructor, String description, String startDate,
+                                               String endDate) {
+        if (courseId == null) {
+            return new CourseUpdateResult(false, null, "Course ID is required");
+        }
+        if (name == null || name.trim().isEmpty()) {
+            return new CourseUpdateResult(false, null, "Course name is required");
+        }
+        String dateError = validateDates(startDate, endDate);
+        if (dateError != null) {
+            return new CourseUpdateResult(false, null, dateError);
+        }
+        
+        // Edit a copy, so readers of the stored course never see a half-applied update
+        Supplier<Optional<Course>> save = () -> courseRepository.findById(ownerId, courseId).map(course -> {
+            Course updated = new Course(name.trim(), code, instructor, description, startDate, endDate);
+            updated.setId(course.getId());
+            updated.setOwnerId(course.getOwnerId());
+            updated.setCreatedAt(course.getCreatedAt());
+            return courseRepository.save(updated);
+        });
+        // With assignments, the save and the relabel of the course's assignments happen under
+        // the same write lock as a course delete, so a deleted course is never saved back
+        Course savedCourse = (assignmentRepository == null ? save.get() : assignmentRepository.updateCourse(save))
+                .orElse(null);
+        if (savedCourse == null) {
+            return new CourseUpdateResult(false, null, "Course not found");
+        }
+        return new CourseUpdateResult(true, savedCourse, "Course updated successfully");
+    }
+    
+    /**
+     * Delete a course by ID, together with its assignments
      * @param courseId the ID of the course to delete
      * @return CourseDeletionResult with success status and message
      */
     public CourseDeletionResult deleteCourse(Long courseId) {
+        return observe(DELETE_COURSE, () -> deleteCourseFor(null, courseId));
+    }
+    
+    /**
+     * Delete one of the session user's courses
+     * @param session the caller's session
+     * @param courseId the ID of the course to delete
+     * @return CourseDeletionResult with success status and message
+     */
+    public CourseDeletionResult deleteCourse(Session session, Long courseId) {
+        return observe(DELETE_COURSE, () -> {
+            Optional<String> owner = SessionManager.ownerOf(sessionManager, session);
+            if (owner.isEmpty()) {
+                return new CourseDeletionResult(false, INVALID_SESSION);
+            }
+            return deleteCourseFor(owner.get(), courseId);
+        });
+    }
+    
+    private CourseDeletionResult deleteCourseFor(String ownerId, Long courseId) {
         if (courseId == null) {
             return new CourseDeletionResult(false, "Course ID is required");
         }
         
-        if (!courseRepository.existsById(courseId)) {
+        if (courseRepository.findById(ownerId, courseId).isEmpty()) {
             return new CourseDeletionResult(false, "Course not found");
         }
         
-        boolean deleted = courseRepository.deleteById(courseId);
+        // The cascade holds the assignment write lock across both deletes, so an assignment
+        // created for the course concurrently either lands before and is deleted, or fails
+        boolean deleted = assignmentRepository == null
+                ? courseRepository.deleteById(courseId)
+                : assignmentRepository.deleteCourse(courseId, () -> courseRepository.deleteById(courseId)) >= 0;
         
         if (deleted) {
             return new CourseDeletionResult(true, "Course deleted successfully");
@@ -66,16 +222,175 @@ public class CourseManagementService {
      * Get all courses
      * @return list of all courses
      */
-    public java.util.List<Course> getAllCourses() {
-        return courseRepository.findAll();
+    public List<Course> getAllCourses() {
+        return observe(GET_ALL_COURSES, courseRepository::findAll);
     }
     
     /**
-     * Get a course by ID
+     * Get all courses of the session's user
+     * @param session the caller's session
+     * @return list of the user's courses, empty if the session is invalid
+     */
+    public List<Course> getAllCourses(Session session) {
+        return observe(GET_ALL_COURSES,
+                () -> SessionManager.ownerOf(sessionManager, session).map(courseRepository::findAll)
+                        .orElseGet(ArrayList::new));
+    }
+    
+    /**
+     * Get an unowned course by ID
      * @param courseId the course ID
-     * @return Optional containing the course if found
+     * @return Optional containing the course if found and unowned
      */
     public Optional<Course> getCourseById(Long courseId) {
-        return courseRepository.findById(courseId);
+        return observe(GET_COURSE_BY_ID, () -> courseRepository.findById(null, courseId));
+    }
+    
+    /**
+     * Get one of the session user's courses by ID
+     * @param session the caller's session
+     * @param courseId the course ID
+     * @return Optional containing the course if found and owned by the user
+     */
+    public Optional<Course> getCourseById(Session session, Long courseId) {
+        return observe(GET_COURSE_BY_ID,
+                () -> SessionManager.ownerOf(sessionManager, session)
+                        .flatMap(owner -> courseRepository.findById(owner, courseId)));
+    }
+    
+    /**
+     * Get unowned courses running on a day
+     * @param day the day to check
+     * @return courses ordered by start date
+     */
+    public List<Course> getActiveCourses(LocalDate day) {
+        return observe(GET_ACTIVE_COURSES, () -> courseRepository.findActiveOn(null, day));
+    }
+    
+    /**
+     * Get the session user's courses running on a day
+     * @param session the caller's session
+     * @param day the day to check
+     * @return courses ordered by start date, empty if the session is invalid
+     */
+    public List<Course> getActiveCourses(Session session, LocalDate day) {
+        return observe(GET_ACTIVE_COURSES, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> courseRepository.findActiveOn(owner, day))
+                .orElseGet(ArrayList::new));
+    }
+    
+    /**
+     * Get the session user's courses running on any day of a range, e.g. this week
+     * @param session the caller's session
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     * @return courses ordered by start date, empty if the session is invalid
+     */
+    public List<Course> getCoursesActiveBetween(Session session, LocalDate from, LocalDate to) {
+        return observe(GET_COURSES_ACTIVE_BETWEEN, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> courseRepository.findActiveBetween(owner, from, to))
+                .orElseGet(ArrayList::new));
+    }
+    
+    /**
+     * Suggest unowned courses for autocomplete
+     * @param prefix the typed prefix of a course code or name
+     * @param limit maximum number of suggestions
+     * @return matching courses
+     */
+    public List<Course> suggestCourses(String prefix, int limit) {
+        return observe(SUGGEST_COURSES, () -> courseRepository.suggest(prefix, limit));
+    }
+    
+    /**
+     * Suggest the session user's courses for autocomplete
+     * @param session the caller's session
+     * @param prefix the typed prefix of a course code or name
+     * @param limit maximum number of suggestions
+     * @return matching courses, empty if the session is invalid
+     */
+    public List<Course> suggestCourses(Session session, String prefix, int limit) {
+        return observe(SUGGEST_COURSES, () -> SessionManager.ownerOf(sessionManager, session)
+                .map(owner -> courseRepository.suggest(owner, prefix, limit))
+                .orElseGet(ArrayList::new));
+    }
+    
+    /**
+     * Check that given dates are ISO-8601 and in order
+     * @return an error message, or null if the dates are acceptable
+     */
+    private static String validateDates(String startDate, String endDate) {
+        LocalDate start = CourseRepository.parseDate(startDate);
+        LocalDate end = CourseRepository.parseDate(endDate);
+        if (start == null && startDate != null && !startDate.trim().isEmpty()) {
+            return "Invalid start date";
+        }
+        if (end == null && endDate != null && !endDate.trim().isEmpty()) {
+            return "Invalid end date";
+        }
+        if (start != null && end != null && end.isBefore(start)) {
+            return "End date must not be before start date";
+        }
+        return null;
+    }
+    
+    /**
+     * Time an operation and trace it as a request
+     */
+    private <T> T observe(String name, Supplier<T> operation) {
+        try (Span span = tracer.startTrace(name)) {
+            return metrics.timed(name, operation);
+        }
+    }
+    
+    /**
+     * Optional collaborators of a {@link CourseManagementService}
+     */
+    public static final class Builder {
+        private final CourseRepository courseRepository;
+        private AssignmentRepository assignmentRepository;
+        private SessionManager sessionManager;
+        private MetricsRegistry metrics = MetricsRegistry.disabled();
+        private Tracer tracer = Tracer.disabled();
+        
+        private Builder(CourseRepository courseRepository) {
+            this.courseRepository = courseRepository;
+        }
+        
+        /**
+         * @param assignmentRepository repository whose assignments follow course deletes and renames
+         */
+        public Builder assignmentRepository(AssignmentRepository assignmentRepository) {
+            this.assignmentRepository = assignmentRepository;
+            return this;
+        }
+        
+        /**
+         * @param sessionManager validates the sessions passed to the session-scoped methods
+         */
+        public Builder sessionManager(SessionManager sessionManager) {
+            this.sessionManager = sessionManager;
+            return this;
+        }
+        
+        /**
+         * @param metrics registry recording latency and outcome of the public methods
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+        
+        /**
+         * @param tracer tracer starting a trace for every timed public method call
+         */
+        public Builder tracer(Tracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+        
+        public CourseManagementService build() {
+            return new CourseManagementService(this);
+        }
     }
 }
@@ -1,27 +1,94 @@
 package com.arqon.study;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * In-memory repository for Course entities
+ * In-memory repository for Course entities, partitioned by owner
  * Simulates database operations for testing purposes
+ * 
+ * Each owner's courses are kept in their own partition so per-owner queries only touch
+ * that owner's data. Courses without an owner live in a shared partition, which is what
+ * the methods without an owner argument use. Ids are unique across partitions.
+ * 
+ * Each partition also keeps a sorted prefix index over lower-cased course codes and
+ * names, so autocomplete reads a short range of a skip list instead of every course, and
+ * an interval index over the course dates, parsed once on save.
+ * 
+ * Listing, suggestion and date queries report to a {@link SlowQueryLog} when they take
+ * longer than its threshold.
+ * 
+ * The estimated heap held by the courses and each index is kept up to date on every
+ * write and read with {@link #getMemoryFootprint()}.
  */
 public class CourseRepository {
-    private final Map<Long, Course> courses = new HashMap<>();
+    private final Map<Long, Course> coursesById = new ConcurrentHashMap<>();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
     private final AtomicLong idGenerator = new AtomicLong(1);
+    private final TimeSource timeSource;
+    private final SlowQueryLog slowQueries;
+    private final List<RepositoryListener<Course>> listeners = new CopyOnWriteArrayList<>();
+    private final FootprintTracker footprint = new FootprintTracker("CourseRepository",
+            "byId", "byOwner", "byPrefix", "byDates");
+    
+    public CourseRepository() {
+        this(TimeSource.coarse());
+    }
+    
+    public CourseRepository(TimeSource timeSource) {
+        this(timeSource, SlowQueryLog.disabled());
+    }
     
     /**
-     * Save a course to the repository
+     * @param slowQueries log receiving slow listing, suggestion and date queries
+     */
+    public CourseRepository(TimeSource timeSource, SlowQueryLog slowQueries) {
+        this.timeSource = timeSource;
+        this.slowQueries = slowQueries;
+    }
+    
+    /**
+     * Save a course to the repository, stamping its creation and update times
      * @param course the course to save
      * @return the saved course with generated ID
      */
     public Course save(Course course) {
-        if (course.getId() == null) {
-            course.setId(idGenerator.getAndIncrement());
+        try (Span span = Tracer.startSpan("CourseRepository.save")) {
+            if (course.getId() == null) {
+                course.setId(idGenerator.getAndIncrement());
+            }
+            LocalDateTime now = timeSource.now();
+            if (course.getCreatedAt() == null) {
+                course.setCreatedAt(now);
+            }
+            course.setUpdatedAt(now);
+            Course previous = coursesById.put(course.getId(), course);
+            String key = partitionKey(course.getOwnerId());
+            if (previous != null && !partitionKey(previous.getOwnerId()).equals(key)) {
+                partition(previous.getOwnerId()).ifPresent(p -> p.remove(course.getId()));
+            }
+            List<String> prefixKeys = partitions.computeIfAbsent(key, k -> new Partition()).put(course);
+            trackFootprint(course, prefixKeys);
+            listeners.forEach(listener -> listener.onSave(course));
+            return course;
         }
-        courses.put(course.getId(), course);
-        return course;
+    }
+    
+    /**
+     * Register a listener notified after every save and delete
+     * @param listener the listener to add
+     */
+    public void addListener(RepositoryListener<Course> listener) {
+        listeners.add(listener);
     }
     
     /**
@@ -30,15 +97,125 @@ public class CourseRepository {
      * @return Optional containing the course if found
      */
     public Optional<Course> findById(Long id) {
-        return Optional.ofNullable(courses.get(id));
+        return Optional.ofNullable(coursesById.get(id));
     }
     
     /**
-     * Find all courses
-     * @return list of all courses
+     * Find a course by ID within one owner's partition
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @param id the course ID
+     * @return Optional containing the course if found and owned by the owner
+     */
+    public Optional<Course> findById(String ownerId, Long id) {
+        try (Span span = Tracer.startSpan("CourseRepository.findById")) {
+            return partition(ownerId).map(p -> p.courses.get(id));
+        }
+    }
+    
+    /**
+     * Find all unowned courses
+     * @return list of all courses in the shared partition
      */
     public List<Course> findAll() {
-        return new ArrayList<>(courses.values());
+        return findAll(null);
+    }
+    
+    /**
+     * Find all courses of one owner
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @return list of the owner's courses
+     */
+    public List<Course> findAll(String ownerId) {
+        try (Span span = Tracer.startSpan("CourseRepository.findAll")) {
+            long start = System.nanoTime();
+            Partition partition = partitions.get(partitionKey(ownerId));
+            if (partition == null) {
+                return new ArrayList<>();
+            }
+            // Copy into an exactly sized list; new ArrayList<>(values()) would copy twice
+            List<Course> courses = new ArrayList<>(partition.courses.size());
+            for (Course course : partition.courses.values()) {
+                courses.add(course);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (slowQueries.shouldRecord(elapsed)) {
+                slowQueries.record("findAllCourses", "owner=" + ownerId, courses.size(), courses.size(), elapsed);
+            }
+            return courses;
+        }
+    }
+    
+    /**
+     * Suggest unowned courses whose code or name starts with a prefix
+     * @param prefix the typed prefix, matched case-insensitively
+     * @param limit maximum number of suggestions
+     * @return matching courses ordered by the matched code or name
+     */
+    public List<Course> suggest(String prefix, int limit) {
+        return suggest(null, prefix, limit);
+    }
+    
+    /**
+     * Suggest one owner's courses whose code or name starts with a prefix
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @param prefix the typed prefix, matched case-insensitively
+     * @param limit maximum number of suggestions
+     * @return matching courses ordered by the matched code or name
+     */
+    public List<Course> suggest(String ownerId, String prefix, int limit) {
+        try (Span span = Tracer.startSpan("CourseRepository.suggest")) {
+            if (prefix == null || limit <= 0) {
+                return new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            List<Course> result = partition(ownerId).map(p -> p.suggest(normalizePrefix(prefix), limit))
+                    .orElseGet(ArrayList::new);
+            long elapsed = System.nanoTime() - start;
+            if (slowQueries.shouldRecord(elapsed)) {
+                slowQueries.record("suggestCourses", "owner=" + ownerId + " prefix=" + prefix + " limit=" + limit,
+                        result.size(), result.size(), elapsed);
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Find one owner's courses running on a day
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @param day the day to check
+     * @return matching courses ordered by start date
+     */
+    public List<Course> findActiveOn(String ownerId, LocalDate day) {
+        return findActiveBetween(ownerId, day, day);
+    }
+    
+    /**
+     * Find one owner's courses running on any day of a range
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     * @return matching courses ordered by start date
+     */
+    public List<Course> findActiveBetween(String ownerId, LocalDate from, LocalDate to) {
+        try (Span span = Tracer.startSpan("CourseRepository.findActiveBetween")) {
+            long start = System.nanoTime();
+            return partition(ownerId).map(p -> {
+                List<Long> ids = p.intervals.overlapping(from, to);
+                List<Course> result = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    Course course = p.courses.get(id);
+                    if (course != null) {
+                        result.add(course);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                if (slowQueries.shouldRecord(elapsed)) {
+                    slowQueries.record("findCoursesActiveBetween", "owner=" + ownerId + " from=" + from + " to=" + to,
+                            ids.size(), result.size(), elapsed);
+                }
+                return result;
+            }).orElseGet(ArrayList::new);
+        }
     }
     
     /**
@@ -47,7 +224,14 @@ public class CourseRepository {
      * @return true if course was deleted, false if not found
      */
     public boolean deleteById(Long id) {
-        return courses.remove(id) != null;
+        Course removed = coursesById.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        partition(removed.getOwnerId()).ifPresent(p -> p.remove(id));
+        footprint.remove(id);
+        listeners.forEach(listener -> listener.onDelete(removed));
+        return true;
     }
     
     /**
@@ -56,22 +240,206 @@ public class CourseRepository {
      * @return true if course exists
      */
     public boolean existsById(Long id) {
-        return courses.containsKey(id);
+        return coursesById.containsKey(id);
     }
     
     /**
      * Clear all courses (useful for testing)
      */
     public void clear() {
-        courses.clear();
+        for (Course course : coursesById.values()) {
+            listeners.forEach(listener -> listener.onDelete(course));
+        }
+        coursesById.clear();
+        partitions.clear();
+        footprint.clear();
         idGenerator.set(1);
     }
     
     /**
      * Get the number of courses
-     * @return count of courses
+     * @return count of courses across all owners
      */
     public int count() {
-        return courses.size();
+        return coursesById.size();
+    }
+    
+    /**
+     * Get the number of courses of one owner
+     * @param ownerId the owning user ID, or null for unowned courses
+     * @return count of the owner's courses
+     */
+    public int count(String ownerId) {
+        return partition(ownerId).map(p -> p.courses.size()).orElse(0);
+    }
+    
+    /**
+     * Get the estimated heap held by the courses and by each index
+     * @return footprint maintained as courses are saved and deleted
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        return footprint.snapshot();
+    }
+    
+    /**
+     * Record the sizes of a course's row and index entries, mirroring what
+     * {@link Partition#put} indexes
+     */
+    private void trackFootprint(Course course, List<String> prefixKeys) {
+        int entity = MemoryLayout.object(10 * MemoryLayout.REFERENCE)
+                + MemoryLayout.boxed(course.getId())
+                + MemoryLayout.string(course.getOwnerId())
+                + MemoryLayout.string(course.getName())
+                + MemoryLayout.string(course.getCode())
+                + MemoryLayout.string(course.getInstructor())
+                + MemoryLayout.string(course.getDescription())
+                + MemoryLayout.string(course.getStartDate())
+                + MemoryLayout.string(course.getEndDate())
+                + MemoryLayout.dateTime(course.getCreatedAt())
+                + MemoryLayout.dateTime(course.getUpdatedAt());
+        // Prefix index: each key in the skip list, plus the key list kept per course
+        int byPrefix = MemoryLayout.HASH_ENTRY + MemoryLayout.object(4 + 4 + MemoryLayout.REFERENCE)
+                + MemoryLayout.array(MemoryLayout.REFERENCE, 2);
+        for (String key : prefixKeys) {
+            byPrefix += MemoryLayout.SKIP_LIST_ENTRY + MemoryLayout.string(key);
+        }
+        int byDates = course.getStartDate() == null && course.getEndDate() == null ? 0
+                : MemoryLayout.HASH_ENTRY + MemoryLayout.array(8, 2);
+        footprint.update(course.getId(), entity, MemoryLayout.HASH_ENTRY, MemoryLayout.HASH_ENTRY, byPrefix,
+                byDates);
+    }
+    
+    private Optional<Partition> partition(String ownerId) {
+        return Optional.ofNullable(partitions.get(partitionKey(ownerId)));
+    }
+    
+    static String partitionKey(String ownerId) {
+        return ownerId == null ? "" : ownerId;
+    }
+    
+    /**
+     * Parse an ISO-8601 course date
+     * @param text the stored date text
+     * @return the date, or null if the text is blank or not a valid date
+     */
+    static LocalDate parseDate(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        LocalDate plain = parsePlainDate(text);
+        if (plain != null) {
+            return plain;
+        }
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Parse the common "yyyy-MM-dd" form by hand, since the general ISO parser allocates
+     * several objects per call
+     * @return the date, or null if the text has another form and needs the general parser
+     */
+    private static LocalDate parsePlainDate(String text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+    
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    static String normalizePrefix(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * One owner's courses and the indexes over them
+     */
+    private static final class Partition {
+        /** Separates the indexed text from the course id in prefix index keys */
+        private static final char SEPARATOR = '\u0000';
+        
+        final Map<Long, Course> courses = new ConcurrentHashMap<>();
+        /** "text\0id" -> course id, so equal codes or names of different courses coexist */
+        final ConcurrentNavigableMap<String, Long> prefixIndex = new ConcurrentSkipListMap<>();
+        /** Keys last indexed per course, since courses may be edited in place before saving */
+        final Map<Long, List<String>> indexedKeys = new HashMap<>();
+        final CourseIntervalIndex intervals = new CourseIntervalIndex();
+        
+        /**
+         * @return the prefix index keys of the course
+         */
+        synchronized List<String> put(Course course) {
+            courses.put(course.getId(), course);
+            unindex(course.getId());
+            List<String> keys = new ArrayList<>(2);
+            addKey(keys, course.getCode(), course.getId());
+            addKey(keys, course.getName(), course.getId());
+            keys.forEach(k -> prefixIndex.put(k, course.getId()));
+            indexedKeys.put(course.getId(), keys);
+            intervals.put(course.getId(), parseDate(course.getStartDate()), parseDate(course.getEndDate()));
+            return keys;
+        }
+        
+        synchronized void remove(Long id) {
+            courses.remove(id);
+            unindex(id);
+            intervals.remove(id);
+        }
+        
+        /**
+         * Lock-free: walks the skip list range of keys starting with the prefix
+         */
+        List<Course> suggest(String prefix, int limit) {
+            Set<Long> seen = new HashSet<>();
+            List<Course> result = new ArrayList<>(Math.min(limit, 16));
+            // tailMap is unbounded; stop at the first key past the prefix
+            for (Map.Entry<String, Long> entry : prefixIndex.tailMap(prefix).entrySet()) {
+                if (!entry.getKey().startsWith(prefix) || result.size() >= limit) {
+                    break;
+                }
+                Course course = courses.get(entry.getValue());
+                if (course != null && seen.add(entry.getValue())) {
+                    result.add(course);
+                }
+            }
+            return result;
+        }
+        
+        private void unindex(Long id) {
+            List<String> keys = indexedKeys.remove(id);
+            if (keys != null) {
+                keys.forEach(prefixIndex::remove);
+            }
+        }
+        
+        private static void addKey(List<String> keys, String text, Long id) {
+            if (text != null && !text.trim().isEmpty()) {
+                String key = normalizePrefix(text) + SEPARATOR + id;
+                if (!keys.contains(key)) {
+                    keys.add(key);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,43 @@
+package com.arqon.study;
+
+/**
+ * Result of course update operation
+ */
+public class CourseUpdateResult implements OperationResult {
+    private final boolean success;
+    private final Course course;
+    private final String message;
+    private final String errorMessage;
+    
+    public CourseUpdateResult(boolean success, Course course, String message) {
+        this.success = success;
+        this.course = course;
+        this.message = message;
+        this.errorMessage = success ? null : message;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    public Course getCourse() {
+        return course;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    @Override
+    public String toString() {
+        return "CourseUpdateResult{" +
+                "success=" + success +
+                ", course=" + course +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -6,12 +6,26 @@ package com.arqon.study;
 public class Dashboard {
     private String userEmail;
     private String welcomeMessage;
+    private DashboardSummary summary;
     
     public Dashboard(String userEmail, String welcomeMessage) {
+        this(userEmail, welcomeMessage, DashboardSummary.empty());
+    }
+    
+    public Dashboard(String userEmail, String welcomeMessage, DashboardSummary summary) {
         this.userEmail = userEmail;
         this.welcomeMessage = welcomeMessage;
+        this.summary = summary;
+    }
+    
+    /**
+     * Copy of this dashboard carrying fresh assignment aggregates
+     */
+    public Dashboard withSummary(DashboardSummary summary) {
+        return new Dashboard(userEmail, welcomeMessage, summary);
     }
     
     public String getUserEmail() { return userEmail; }
     public String getWelcomeMessage() { return welcomeMessage; }
+    public DashboardSummary getSummary() { return summary; }
 }
@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of dashboard access operation
  */
-public class DashboardAccessResult {
+public class DashboardAccessResult implements OperationResult {
     private boolean success;
     private String errorMessage;
     private Dashboard dashboard;
@@ -0,0 +1,90 @@
+package com.arqon.study;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded per-user cache of built dashboards with LRU eviction.
+ *
+ * Entries are dropped explicitly whenever the user logs in or out, or the user record
+ * changes (the cache registers itself as a {@link UserRepository} listener), so a
+ * cached dashboard is never older than the data it was built from.
+ * 
+ * Every invalidation bumps a generation number, and a dashboard is only stored if the
+ * generation it was read under is still current. A dashboard built from a user record
+ * that changed while it was being built is therefore never written back. Generations are
+ * kept per stripe of user ids rather than per user, so they take fixed space; a
+ * collision only skips a store.
+ */
+public class DashboardCache implements RepositoryListener<User> {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final int GENERATION_STRIPES = 1024;
+    
+    private final Map<String, Dashboard> dashboards;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    
+    public DashboardCache() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public DashboardCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.dashboards = new LinkedHashMap<String, Dashboard>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Dashboard> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    
+    public synchronized Optional<Dashboard> get(String userId) {
+        return Optional.ofNullable(dashboards.get(userId));
+    }
+    
+    /**
+     * Read before loading the data a dashboard is built from, and pass to
+     * {@link #put(String, long, Dashboard)}
+     */
+    public synchronized long generation(String userId) {
+        return generations[stripe(userId)];
+    }
+    
+    /**
+     * Store a dashboard unless the user was invalidated since the generation was read
+     * @return true if the dashboard was stored
+     */
+    public synchronized boolean put(String userId, long generation, Dashboard dashboard) {
+        if (generations[stripe(userId)] != generation) {
+            return false;
+        }
+        dashboards.put(userId, dashboard);
+        return true;
+    }
+    
+    public synchronized void invalidate(String userId) {
+        generations[stripe(userId)]++;
+        dashboards.remove(userId);
+    }
+    
+    public synchronized int size() {
+        return dashboards.size();
+    }
+    
+    private static int stripe(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+    
+    @Override
+    public void onSave(User user) {
+        invalidate(user.getId());
+    }
+    
+    @Override
+    public void onDelete(User user) {
+        invalidate(user.getId());
+    }
+}
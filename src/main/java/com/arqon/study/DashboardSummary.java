@@ -0,0 +1,36 @@
+package com.arqon.study;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time assignment aggregates shown on the dashboard
+ */
+public class DashboardSummary {
+    private final Map<String, Integer> countsByStatus;
+    private final int totalCount;
+    private final int overdueCount;
+    private final List<Assignment> upcoming;
+    private final int hoursDueThisWeek;
+    
+    public DashboardSummary(Map<String, Integer> countsByStatus, int totalCount, int overdueCount,
+                            List<Assignment> upcoming, int hoursDueThisWeek) {
+        this.countsByStatus = Collections.unmodifiableMap(countsByStatus);
+        this.totalCount = totalCount;
+        this.overdueCount = overdueCount;
+        this.upcoming = Collections.unmodifiableList(upcoming);
+        this.hoursDueThisWeek = hoursDueThisWeek;
+    }
+    
+    public static DashboardSummary empty() {
+        return new DashboardSummary(Collections.emptyMap(), 0, 0, Collections.emptyList(), 0);
+    }
+    
+    public Map<String, Integer> getCountsByStatus() { return countsByStatus; }
+    public int getCount(String status) { return countsByStatus.getOrDefault(status, 0); }
+    public int getTotalCount() { return totalCount; }
+    public int getOverdueCount() { return overdueCount; }
+    public List<Assignment> getUpcoming() { return upcoming; }
+    public int getHoursDueThisWeek() { return hoursDueThisWeek; }
+}
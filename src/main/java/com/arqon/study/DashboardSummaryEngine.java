@@ -0,0 +1,229 @@
+package com.arqon.study;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps dashboard aggregates up to date from {@link AssignmentRepository} writes.
+ *
+ * Each owner has counts by status plus its open (not completed) assignments split by
+ * due date into three groups: overdue, due within the next seven days, and later.
+ * Items only move forward between groups as time passes, so reading a summary
+ * advances the groups from where they were last left instead of rescanning, and the
+ * overdue count and weekly hours are maintained counters.
+ *
+ * Register the engine with {@link AssignmentRepository#addListener(RepositoryListener)}
+ * before any assignments are saved.
+ */
+public class DashboardSummaryEngine implements RepositoryListener<Assignment> {
+    /** Key for assignments that are not owned by a particular user */
+    public static final String ALL_USERS = "";
+    public static final int DEFAULT_UPCOMING_LIMIT = 5;
+    public static final int WEEK_DAYS = 7;
+
+    private static final String COMPLETED = "completed";
+
+    private final Map<String, Aggregates> aggregatesByOwner = new ConcurrentHashMap<>();
+    private final TimeSource timeSource;
+    private final int upcomingLimit;
+
+    public DashboardSummaryEngine(TimeSource timeSource) {
+        this(timeSource, DEFAULT_UPCOMING_LIMIT);
+    }
+
+    /**
+     * @param upcomingLimit number of upcoming assignments included in each summary
+     */
+    public DashboardSummaryEngine(TimeSource timeSource, int upcomingLimit) {
+        this.timeSource = timeSource;
+        this.upcomingLimit = upcomingLimit;
+    }
+
+    /**
+     * Current aggregates for an owner
+     */
+    public DashboardSummary getSummary(String ownerId) {
+        try (Span span = Tracer.startSpan("DashboardSummaryEngine.getSummary")) {
+            Aggregates aggregates = aggregatesByOwner.get(ownerId);
+            if (aggregates == null) {
+                return DashboardSummary.empty();
+            }
+            return aggregates.summary(timeSource.now(), upcomingLimit);
+        }
+    }
+
+    /**
+     * Number of an owner's assignments currently in the given status
+     */
+    public int getCount(String ownerId, String status) {
+        Aggregates aggregates = aggregatesByOwner.get(ownerId);
+        return aggregates == null ? 0 : aggregates.count(status);
+    }
+
+    @Override
+    public void onSave(Assignment assignment) {
+        aggregatesByOwner.computeIfAbsent(ownerOf(assignment), owner -> new Aggregates())
+                .put(assignment, timeSource.now());
+    }
+
+    @Override
+    public void onDelete(Assignment assignment) {
+        Aggregates aggregates = aggregatesByOwner.get(ownerOf(assignment));
+        if (aggregates != null) {
+            aggregates.remove(assignment.getId());
+        }
+    }
+
+    static String ownerOf(Assignment assignment) {
+        return assignment.getOwnerId() == null ? ALL_USERS : assignment.getOwnerId();
+    }
+
+    private enum Group { NONE, OVERDUE, THIS_WEEK, LATER }
+
+    /**
+     * Snapshot of the fields an entry was aggregated with, so updates can be reversed
+     * even when the assignment object was mutated in place before being saved.
+     */
+    private static final class Entry {
+        final long id;
+        final Assignment assignment;
+        final String status;
+        final LocalDateTime dueDate;
+        final int hours;
+        Group group = Group.NONE;
+
+        Entry(Assignment assignment) {
+            this.id = assignment.getId();
+            this.assignment = assignment;
+            this.status = assignment.getStatus();
+            this.dueDate = assignment.getDueDate();
+            this.hours = assignment.getEstimatedHours() == null ? 0 : assignment.getEstimatedHours();
+        }
+    }
+
+    private static final Comparator<Entry> BY_DUE_DATE =
+            Comparator.comparing((Entry entry) -> entry.dueDate).thenComparingLong(entry -> entry.id);
+
+    private static final class Aggregates {
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final Map<String, Integer> countsByStatus = new HashMap<>();
+        private final TreeSet<Entry> thisWeek = new TreeSet<>(BY_DUE_DATE);
+        private final TreeSet<Entry> later = new TreeSet<>(BY_DUE_DATE);
+        private int overdueCount;
+        private int hoursThisWeek;
+        private LocalDateTime lastAdvance;
+
+        synchronized void put(Assignment assignment, LocalDateTime now) {
+            removeEntry(assignment.getId());
+            Entry entry = new Entry(assignment);
+            entries.put(entry.id, entry);
+            countsByStatus.merge(entry.status, 1, Integer::sum);
+            if (entry.dueDate != null && !COMPLETED.equals(entry.status)) {
+                advance(now);
+                place(entry, lastAdvance);
+            }
+        }
+
+        synchronized void remove(Long id) {
+            removeEntry(id);
+        }
+
+        synchronized int count(String status) {
+            return countsByStatus.getOrDefault(status, 0);
+        }
+
+        synchronized DashboardSummary summary(LocalDateTime now, int limit) {
+            advance(now);
+            List<Assignment> upcoming = new ArrayList<>(limit);
+            appendUpcoming(thisWeek, upcoming, limit);
+            appendUpcoming(later, upcoming, limit);
+            return new DashboardSummary(new HashMap<>(countsByStatus), entries.size(), overdueCount,
+                    upcoming, hoursThisWeek);
+        }
+
+        private void removeEntry(Long id) {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                return;
+            }
+            countsByStatus.computeIfPresent(entry.status, (status, count) -> count == 1 ? null : count - 1);
+            switch (entry.group) {
+                case OVERDUE:
+                    overdueCount--;
+                    break;
+                case THIS_WEEK:
+                    thisWeek.remove(entry);
+                    hoursThisWeek -= entry.hours;
+                    break;
+                case LATER:
+                    later.remove(entry);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void place(Entry entry, LocalDateTime now) {
+            if (entry.dueDate.isBefore(now)) {
+                entry.group = Group.OVERDUE;
+                overdueCount++;
+            } else if (entry.dueDate.isBefore(now.plusDays(WEEK_DAYS))) {
+                entry.group = Group.THIS_WEEK;
+                thisWeek.add(entry);
+                hoursThisWeek += entry.hours;
+            } else {
+                entry.group = Group.LATER;
+                later.add(entry);
+            }
+        }
+
+        /**
+         * Move entries whose group boundary has passed. Amortized O(1) per entry over its
+         * lifetime; only a clock that goes backwards forces a full regroup.
+         */
+        private void advance(LocalDateTime now) {
+            if (lastAdvance != null && now.isBefore(lastAdvance)) {
+                regroup(now);
+                return;
+            }
+            lastAdvance = now;
+            while (!thisWeek.isEmpty() && thisWeek.first().dueDate.isBefore(now)) {
+                Entry entry = thisWeek.pollFirst();
+                hoursThisWeek -= entry.hours;
+                entry.group = Group.OVERDUE;
+                overdueCount++;
+            }
+            LocalDateTime weekEnd = now.plusDays(WEEK_DAYS);
+            while (!later.isEmpty() && later.first().dueDate.isBefore(weekEnd)) {
+                place(later.pollFirst(), now);
+            }
+        }
+
+        private void regroup(LocalDateTime now) {
+            lastAdvance = now;
+            thisWeek.clear();
+            later.clear();
+            overdueCount = 0;
+            hoursThisWeek = 0;
+            for (Entry entry : entries.values()) {
+                if (entry.group != Group.NONE) {
+                    place(entry, now);
+                }
+            }
+        }
+
+        private static void appendUpcoming(TreeSet<Entry> group, List<Assignment> upcoming, int limit) {
+            Iterator<Entry> iterator = group.iterator();
+            while (upcoming.size() < limit && iterator.hasNext()) {
+                upcoming.add(iterator.next().assignment);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.arqon.study;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over normalized email addresses.
+ *
+ * A negative answer is definitive, which lets the registry answer the common
+ * "this email is new" question without touching its maps. Entries are never removed,
+ * so deleted emails only cost an occasional false positive.
+ */
+public class EmailBloomFilter {
+    private final AtomicLongArray bits;
+    private final int expectedEntries;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries number of emails the filter is sized for
+     * @param falsePositiveRate target false positive rate at that size
+     */
+    public EmailBloomFilter(int expectedEntries, double falsePositiveRate) {
+        this.expectedEntries = expectedEntries;
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 64, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * ln2));
+    }
+
+    /**
+     * @return number of emails the filter was sized for; past it false positives climb
+     */
+    public int getExpectedEntries() {
+        return expectedEntries;
+    }
+
+    /**
+     * @return estimated heap held by the filter
+     */
+    public long sizeInBytes() {
+        return MemoryLayout.object(MemoryLayout.REFERENCE + 4 + 4 + 4) + MemoryLayout.object(MemoryLayout.REFERENCE)
+                + MemoryLayout.HEADER + 4 + 8L * bits.length();
+    }
+
+    public void add(String email) {
+        long hash = hash64(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public boolean mightContain(String email) {
+        long hash = hash64(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0L);
+        }
+    }
+
+    // FNV-1a followed by a murmur finalizer so both halves are usable as independent hashes
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
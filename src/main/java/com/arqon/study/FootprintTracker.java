@@ -0,0 +1,92 @@
+package com.arqon.study;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running estimate of the heap retained by one store.
+ *
+ * The store reports every row it writes or removes along with the row's estimated size
+ * in the entity table and in each index. The tracker keeps the last sizes reported per
+ * key and adjusts the totals by the difference, so rows edited in place are corrected on
+ * their next save and a snapshot sums a few counters instead of walking the rows. The
+ * per-key sizes are themselves reported, as the "footprint" index.
+ *
+ * Thread safe; updates of different keys do not contend.
+ */
+final class FootprintTracker {
+    static final String SELF = "footprint";
+
+    private final String store;
+    private final String[] indexes;
+    /** Slot 0 is the entities, slot i the index i - 1 */
+    private final LongAdder[] totals;
+    private final Map<Object, int[]> sizesByKey = new ConcurrentHashMap<>();
+
+    FootprintTracker(String store, String... indexes) {
+        this.store = store;
+        this.indexes = indexes.clone();
+        this.totals = new LongAdder[indexes.length + 1];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record the current size of a row, replacing whatever was recorded for its key
+     * @param sizes entity bytes followed by the bytes of each index, in constructor order
+     */
+    void update(Object key, int... sizes) {
+        if (sizes.length != totals.length) {
+            throw new IllegalArgumentException("Expected " + totals.length + " sizes, got " + sizes.length);
+        }
+        int[] previous = sizesByKey.put(key, sizes);
+        for (int i = 0; i < totals.length; i++) {
+            totals[i].add(sizes[i] - (previous == null ? 0 : previous[i]));
+        }
+    }
+
+    void remove(Object key) {
+        int[] previous = sizesByKey.remove(key);
+        if (previous != null) {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i].add(-previous[i]);
+            }
+        }
+    }
+
+    /**
+     * Remove every row, keeping fixed index sizes
+     */
+    void clear() {
+        for (Object key : sizesByKey.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Account for index memory that does not depend on the rows, such as a preallocated
+     * filter
+     */
+    void addFixed(String index, long bytes) {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i].equals(index)) {
+                totals[i + 1].add(bytes);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown index: " + index);
+    }
+
+    MemoryFootprint snapshot() {
+        long count = sizesByKey.size();
+        Map<String, Long> indexBytes = new LinkedHashMap<>();
+        for (int i = 0; i < indexes.length; i++) {
+            indexBytes.put(indexes[i], totals[i + 1].sum());
+        }
+        indexBytes.put(SELF, count * (MemoryLayout.HASH_ENTRY + MemoryLayout.array(4, totals.length)));
+        return new MemoryFootprint(store, count, totals[0].sum(), indexBytes);
+    }
+}
@@ -0,0 +1,9 @@
+package com.arqon.study;
+
+/**
+ * JMX view of a single sampled value, such as a repository size
+ */
+public interface GaugeMBean {
+    
+    long getValue();
+}
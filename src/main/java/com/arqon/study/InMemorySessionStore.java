@@ -0,0 +1,46 @@
+package com.arqon.study;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session store kept on the heap; sessions are lost when the process exits
+ */
+public class InMemorySessionStore implements SessionStore {
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final FootprintTracker footprint = new FootprintTracker("InMemorySessionStore", "byId");
+    
+    @Override
+    public void put(Session session) {
+        sessions.put(session.getSessionId(), session);
+        footprint.update(session.getSessionId(), MemoryLayout.object(4 * MemoryLayout.REFERENCE + 1)
+                + MemoryLayout.string(session.getSessionId())
+                + MemoryLayout.string(session.getUserId())
+                + MemoryLayout.dateTime(session.getCreatedAt())
+                + MemoryLayout.dateTime(session.getExpiresAt()), MemoryLayout.HASH_ENTRY);
+    }
+    
+    @Override
+    public Optional<Session> get(String sessionId) {
+        return sessionId == null ? Optional.empty() : Optional.ofNullable(sessions.get(sessionId));
+    }
+    
+    @Override
+    public void remove(String sessionId) {
+        if (sessionId != null) {
+            sessions.remove(sessionId);
+            footprint.remove(sessionId);
+        }
+    }
+    
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+    
+    @Override
+    public MemoryFootprint getMemoryFootprint() {
+        return footprint.snapshot();
+    }
+}
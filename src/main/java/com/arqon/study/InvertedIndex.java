@@ -0,0 +1,360 @@
+package com.arqon.study;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index with compressed posting lists and BM25 ranking.
+ *
+ * Documents are identified by a caller-chosen {@code long} key. Each (re)indexed
+ * document gets a fresh internal number, larger than any before it, so postings are
+ * appended in increasing order and stored as variable-length encoded (doc delta, term
+ * frequency) pairs. Updating or removing a document only marks its old number deleted;
+ * once deleted numbers outweigh live ones, postings are rewritten and live documents
+ * renumbered densely. Each posting list also counts its live documents, which is the
+ * document frequency used for idf, so deleted postings never skew ranking.
+ *
+ * Queries merge the query terms' posting lists document at a time, scoring each match
+ * once all its postings are read and keeping only the best {@code limit} in a heap, so a
+ * query holds O(terms + limit) state however many documents match.
+ *
+ * Thread safe: updates take a write lock, queries a read lock.
+ */
+public class InvertedIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Long, Integer> docNumbersByKey = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] docKeys = new long[1024];
+    private int[] docLengths = new int[1024];
+    /** Posting lists each document appears in, to keep their live counts on removal */
+    private PostingList[][] docPostings = new PostingList[1024][];
+    private int nextDoc;
+    private int pendingDeletes;
+    private long totalLength;
+
+    /**
+     * Index or re-index a document
+     */
+    public void put(long key, String text) {
+        List<String> terms = TextTokenizer.tokenize(text);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            int doc = nextDoc++;
+            ensureCapacity(doc + 1);
+            docKeys[doc] = key;
+            docLengths[doc] = terms.size();
+            totalLength += terms.size();
+            docNumbersByKey.put(key, doc);
+            PostingList[] lists = new PostingList[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                PostingList list = postings.computeIfAbsent(entry.getKey(), t -> new PostingList());
+                list.append(doc, entry.getValue());
+                lists[i++] = list;
+            }
+            docPostings[doc] = lists;
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long key) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rank documents against a query.
+     * @return up to {@code limit} matches, best first
+     */
+    public List<Hit> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextTokenizer.tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            int liveDocs = docNumbersByKey.size();
+            if (liveDocs == 0) {
+                return Collections.emptyList();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / liveDocs);
+            List<Cursor> cursors = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list != null && list.live > 0) {
+                    Cursor cursor = new Cursor(list, Math.log(1 + (liveDocs - list.live + 0.5) / (list.live + 0.5)));
+                    cursor.next();
+                    cursors.add(cursor);
+                }
+            }
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(limit, liveDocs) + 1);
+            while (true) {
+                int doc = Cursor.EXHAUSTED;
+                for (Cursor cursor : cursors) {
+                    doc = Math.min(doc, cursor.doc);
+                }
+                if (doc == Cursor.EXHAUSTED) {
+                    break;
+                }
+                boolean live = !deleted.get(doc);
+                double score = 0;
+                double norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                for (Cursor cursor : cursors) {
+                    if (cursor.doc == doc) {
+                        if (live) {
+                            score += cursor.idf * cursor.frequency * (K1 + 1) / (cursor.frequency + norm);
+                        }
+                        cursor.next();
+                    }
+                }
+                if (!live) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(new Hit(docKeys[doc], score));
+                } else if (score > top.peek().getScore()
+                        || (score == top.peek().getScore() && docKeys[doc] < top.peek().getKey())) {
+                    top.poll();
+                    top.add(new Hit(docKeys[doc], score));
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(Collections.reverseOrder());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docNumbersByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes held by encoded posting lists
+     */
+    public long postingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                bytes += list.data.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(long key) {
+        Integer doc = docNumbersByKey.remove(key);
+        if (doc != null) {
+            for (PostingList list : docPostings[doc]) {
+                list.live--;
+            }
+            docPostings[doc] = null;
+            deleted.set(doc);
+            pendingDeletes++;
+            totalLength -= docLengths[doc];
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (pendingDeletes < 1024 || pendingDeletes < docNumbersByKey.size()) {
+            return;
+        }
+        int[] renumbered = new int[nextDoc];
+        int live = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (deleted.get(doc)) {
+                renumbered[doc] = -1;
+            } else {
+                renumbered[doc] = live;
+                docKeys[live] = docKeys[doc];
+                docLengths[live] = docLengths[doc];
+                docPostings[live] = docPostings[doc];
+                docNumbersByKey.put(docKeys[live], live);
+                live++;
+            }
+        }
+        postings.entrySet().removeIf(entry -> entry.getValue().compact(renumbered));
+        Arrays.fill(docPostings, live, nextDoc, null);
+        nextDoc = live;
+        deleted.clear();
+        pendingDeletes = 0;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > docKeys.length) {
+            int capacity = Math.max(size, docKeys.length * 2);
+            docKeys = Arrays.copyOf(docKeys, capacity);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            docPostings = Arrays.copyOf(docPostings, capacity);
+        }
+    }
+
+    /**
+     * A ranked match
+     */
+    public static final class Hit implements Comparable<Hit> {
+        private final long key;
+        private final double score;
+
+        Hit(long key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        public long getKey() { return key; }
+        public double getScore() { return score; }
+
+        @Override
+        public int compareTo(Hit other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(other.key, key);
+        }
+    }
+
+    private interface PostingConsumer {
+        void accept(int doc, int frequency);
+    }
+
+    /**
+     * Position in a posting list while decoding it, with the query term's idf
+     */
+    private static final class Cursor {
+        static final int EXHAUSTED = Integer.MAX_VALUE;
+
+        final PostingList list;
+        final double idf;
+        int pos;
+        int doc = -1;
+        int frequency;
+
+        Cursor(PostingList list, double idf) {
+            this.list = list;
+            this.idf = idf;
+        }
+
+        /**
+         * Move to the next posting, or set {@code doc} to {@link #EXHAUSTED} past the last
+         */
+        void next() {
+            if (pos >= list.length) {
+                doc = EXHAUSTED;
+                return;
+            }
+            doc += readVarint();
+            frequency = readVarint();
+        }
+
+        private int readVarint() {
+            byte[] data = list.data;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Delta and varint encoded (doc, frequency) pairs in increasing doc order
+     */
+    private static final class PostingList {
+        byte[] data = new byte[8];
+        int length;
+        int lastDoc = -1;
+        int count;
+        /** Postings of documents not deleted: the term's document frequency */
+        int live;
+
+        void append(int doc, int frequency) {
+            ensure(10);
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            count++;
+            live++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            Cursor cursor = new Cursor(this, 0);
+            for (cursor.next(); cursor.doc != Cursor.EXHAUSTED; cursor.next()) {
+                consumer.accept(cursor.doc, cursor.frequency);
+            }
+        }
+
+        /**
+         * Drop deleted documents and renumber the rest; renumbering preserves order
+         * @param renumbered new number per old number, or -1 if deleted
+         * @return true if the list is now empty
+         */
+        boolean compact(int[] renumbered) {
+            PostingList kept = new PostingList();
+            forEach((doc, frequency) -> {
+                if (renumbered[doc] >= 0) {
+                    kept.append(renumbered[doc], frequency);
+                }
+            });
+            data = Arrays.copyOf(kept.data, kept.length);
+            length = kept.length;
+            lastDoc = kept.lastDoc;
+            count = kept.count;
+            live = kept.live;
+            return count == 0;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                data[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + extra, data.length + (data.length >> 1)));
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.arqon.study;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes spans to a local file as JSON lines, one object per span, with the field names
+ * of the OpenTelemetry span model:
+ *
+ * <pre>
+ * {"traceId":"...","spanId":"...","parentSpanId":"...","name":"UserRepository.findById",
+ *  "startTimeUnixNano":...,"endTimeUnixNano":...,"thread":"main","attributes":{"rows":3}}
+ * </pre>
+ *
+ * Ended spans are queued and written in batches by a daemon thread, so request threads
+ * never wait for the disk. When the queue is full, spans are dropped and counted. A batch
+ * that fails to write is counted and the thread carries on with the next one, so one I/O
+ * error does not stop the export.
+ */
+public class JsonLinesSpanExporter implements SpanExporter, AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    
+    private final BlockingQueue<Span> queue;
+    private final BufferedWriter out;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private volatile boolean closed;
+    
+    public JsonLinesSpanExporter(Path file) throws IOException {
+        this(file, DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    public JsonLinesSpanExporter(Path file, int queueCapacity) throws IOException {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), queueCapacity);
+    }
+    
+    JsonLinesSpanExporter(Writer out, int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.out = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        this.writer = new Thread(this::drain, "span-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    @Override
+    public void export(Span span) {
+        if (closed || !queue.offer(span)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * @return spans not written because the queue was full or the exporter closed
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    /**
+     * @return batches of spans that failed to write with an I/O error; their spans are lost
+     */
+    public long getWriteErrorCount() {
+        return writeErrors.get();
+    }
+    
+    /**
+     * Write every queued span and close the file
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+            writeCounted(drainQueue());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    private void drain() {
+        try {
+            while (!closed) {
+                Span first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Span> batch = drainQueue();
+                batch.add(0, first);
+                writeCounted(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Write a batch, counting an I/O error instead of throwing it, as an escaping
+     * exception would end the writer thread and leave the queue to fill up
+     */
+    private void writeCounted(List<Span> batch) {
+        try {
+            write(batch);
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+        }
+    }
+    
+    private List<Span> drainQueue() {
+        List<Span> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        return batch;
+    }
+    
+    private synchronized void write(List<Span> spans) throws IOException {
+        for (Span span : spans) {
+            out.write(toJson(span));
+            out.newLine();
+        }
+        out.flush();
+    }
+    
+    static String toJson(Span span) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"traceId\":\"").append(span.getTraceId())
+                .append("\",\"spanId\":\"").append(span.getSpanId()).append('"');
+        if (span.getParentSpanId() != null) {
+            json.append(",\"parentSpanId\":\"").append(span.getParentSpanId()).append('"');
+        }
+        json.append(",\"name\":");
+        appendString(json, span.getName());
+        json.append(",\"startTimeUnixNano\":").append(span.getStartEpochNanos())
+                .append(",\"endTimeUnixNano\":").append(span.getStartEpochNanos() + span.getDurationNanos())
+                .append(",\"thread\":");
+        appendString(json, span.getThreadName());
+        json.append(",\"attributes\":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, attribute.getKey());
+            json.append(':');
+            Object value = attribute.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                appendString(json, String.valueOf(value));
+            }
+        }
+        return json.append("}}").toString();
+    }
+    
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
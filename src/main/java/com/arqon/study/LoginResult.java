@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of login operation
  */
-public class LoginResult {
+public class LoginResult implements OperationResult {
     private boolean success;
     private String errorMessage;
     private Session session;
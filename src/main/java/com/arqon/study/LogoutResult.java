@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of logout operation
  */
-public class LogoutResult {
+public class LogoutResult implements OperationResult {
     private boolean success;
     private String errorMessage;
     
@@ -0,0 +1,544 @@
+package com.arqon.study;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable session table backed by a fixed-slot, memory-mapped file.
+ *
+ * The file is an open-addressed hash table keyed by session id, so it survives restarts
+ * and is usable as soon as it is mapped: opening it reads the header and at most one slot,
+ * whatever the capacity. Lookups read the mapped slots directly without locking; each slot
+ * carries a sequence number that writers make odd while they update it, and readers retry
+ * if the sequence changed under them. Writers are serialized on the store, and before
+ * touching a slot each one records it in the header together with the session count
+ * without it. A slot left odd by a process that died mid-write is torn: opening the file
+ * drops that session and restores the count from the record. Any other torn slot is
+ * dropped when a probe first reaches it.
+ *
+ * Session ids must be UUIDs (as generated by {@link Session}); user ids may be up to
+ * {@value #MAX_USER_ID_BYTES} bytes of UTF-8. Times are stored with millisecond precision.
+ *
+ * Removed sessions leave a tombstone so probe chains stay intact. A run of tombstones
+ * directly followed by an empty slot ends no chain and is emptied again. Inserts do this
+ * lazily for the chain they probe, turning the expired sessions they pass into tombstones
+ * first, and removes do it for the slot they free, so lookups of unknown ids stay short
+ * under create/expire churn without any full pass on a request thread. The rest of the
+ * table is reclaimed by {@link #purgeExpired()}, which {@link #startPurging(long)} runs on
+ * a daemon thread a chunk of slots at a time.
+ */
+public class MappedSessionStore implements SessionStore, AutoCloseable {
+    public static final int MAX_USER_ID_BYTES = 64;
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int MAX_CAPACITY = 1 << 23;
+
+    private static final int MAGIC = 0x53455353; // "SESS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 128;
+
+    // Header layout
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_COUNT = 12;
+    /** Index + 1 of the slot being written, or 0; files written before it was added hold 0 */
+    private static final int HEADER_PENDING_SLOT = 16;
+    /** Session count not counting the pending slot */
+    private static final int HEADER_PENDING_COUNT = 20;
+
+    // Slot layout
+    private static final int SEQ = 0;
+    private static final int SESSION_MSB = 8;
+    private static final int SESSION_LSB = 16;
+    private static final int CREATED_AT = 24;
+    private static final int EXPIRES_AT = 32;
+    private static final int FLAGS = 40;
+    private static final int USER_ID_LENGTH = 44;
+    private static final int USER_ID = 48;
+
+    private static final int FLAG_USED = 1;
+    private static final int FLAG_ACTIVE = 2;
+    private static final int FLAG_DELETED = 4;
+
+    /** Spins a reader waits on an odd sequence before checking whether its writer died */
+    private static final int TORN_SPINS = 1 << 10;
+    /** Slots a purge scans per hold of the lock, so writers wait for one chunk at most */
+    private static final int PURGE_CHUNK = 1 << 12;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final TimeSource timeSource;
+    private ScheduledExecutorService purger;
+
+    /**
+     * Open or create a store with the default capacity
+     */
+    public static MappedSessionStore open(Path file, TimeSource timeSource) {
+        return open(file, DEFAULT_CAPACITY, timeSource);
+    }
+
+    /**
+     * Open an existing store, or create one with the given number of slots.
+     * An existing file keeps the capacity it was created with.
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public static MappedSessionStore open(Path file, int capacity, TimeSource timeSource) {
+        try {
+            return new MappedSessionStore(file, capacity, timeSource);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open session table " + file, e);
+        }
+    }
+
+    private MappedSessionStore(Path file, int requestedCapacity, TimeSource timeSource) throws IOException {
+        this.timeSource = timeSource;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean existing = channel.size() >= HEADER_SIZE;
+        int slots;
+        if (existing) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION) {
+                channel.close();
+                throw new IOException("Not a session table: " + file);
+            }
+            slots = header.getInt(HEADER_CAPACITY);
+        } else {
+            if (requestedCapacity < 1 || requestedCapacity > MAX_CAPACITY) {
+                channel.close();
+                throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+            }
+            slots = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        }
+        this.capacity = slots;
+        this.mask = slots - 1;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+        this.buffer.order(ByteOrder.nativeOrder());
+        if (!existing) {
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putInt(HEADER_CAPACITY, slots);
+            buffer.putInt(HEADER_COUNT, 0);
+            buffer.putInt(HEADER_PENDING_SLOT, 0);
+            buffer.putInt(HEADER_MAGIC, MAGIC);
+            buffer.force();
+        } else {
+            recover();
+        }
+    }
+
+    /**
+     * Finish the write a crash interrupted, if any: drop the session if its slot was torn
+     * and recount from the header record. Only that one slot can be torn by a writer of
+     * this store, so nothing else is scanned.
+     */
+    private synchronized void recover() {
+        int pending = buffer.getInt(HEADER_PENDING_SLOT) - 1;
+        if (pending < 0 || pending >= capacity) {
+            return;
+        }
+        int slot = slotOffset(pending);
+        if (((long) LONGS.getAcquire(buffer, slot + SEQ) & 1) != 0) {
+            buffer.putInt(slot + FLAGS, FLAG_USED | FLAG_DELETED);
+        }
+        endWrite(pending);
+    }
+
+    @Override
+    public synchronized void put(Session session) {
+        UUID id = UUID.fromString(session.getSessionId());
+        byte[] userId = session.getUserId().getBytes(StandardCharsets.UTF_8);
+        if (userId.length > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("User id too long for the session table");
+        }
+        long nowMillis = toMillis(timeSource.now());
+        int reusable = -1;
+        int target = -1;
+        int empty = -1;
+        int index = slotIndex(id);
+        for (int probes = 0; probes < capacity; probes++, index = (index + 1) & mask) {
+            int slot = slotOffset(index);
+            repairIfTorn(index);
+            int flags = buffer.getInt(slot + FLAGS);
+            if ((flags & FLAG_USED) == 0) {
+                empty = index;
+                target = reusable >= 0 ? reusable : index;
+                break;
+            }
+            if (matches(slot, id)) {
+                target = index;
+                break;
+            }
+            if (isLive(flags) && buffer.getLong(slot + EXPIRES_AT) < nowMillis) {
+                flags |= FLAG_DELETED;
+                setFlags(index, flags);
+            }
+            if (reusable < 0 && (flags & FLAG_DELETED) != 0) {
+                reusable = index;
+            }
+        }
+        if (target < 0) {
+            target = reusable;
+        }
+        if (target < 0) {
+            throw new IllegalStateException("Session table is full");
+        }
+
+        int slot = slotOffset(target);
+        beginWrite(target);
+        buffer.putLong(slot + SESSION_MSB, id.getMostSignificantBits());
+        buffer.putLong(slot + SESSION_LSB, id.getLeastSignificantBits());
+        buffer.putLong(slot + CREATED_AT, toMillis(session.getCreatedAt()));
+        buffer.putLong(slot + EXPIRES_AT, toMillis(session.getExpiresAt()));
+        buffer.putInt(slot + USER_ID_LENGTH, userId.length);
+        for (int i = 0; i < userId.length; i++) {
+            buffer.put(slot + USER_ID + i, userId[i]);
+        }
+        buffer.putInt(slot + FLAGS, FLAG_USED | (session.isActive() ? FLAG_ACTIVE : 0));
+        endWrite(target);
+        if (empty >= 0 && empty != target) {
+            clearTombstonesBefore(empty);
+        }
+    }
+
+    @Override
+    public Optional<Session> get(String sessionId) {
+        UUID id = parse(sessionId);
+        if (id == null) {
+            return Optional.empty();
+        }
+        int index = slotIndex(id);
+        for (int probes = 0; probes < capacity; probes++, index = (index + 1) & mask) {
+            int slot = slotOffset(index);
+            int spins = 0;
+            while (true) {
+                long seq = (long) LONGS.getAcquire(buffer, slot + SEQ);
+                if ((seq & 1) != 0) {
+                    if (++spins % TORN_SPINS == 0) {
+                        repairTorn(index);
+                    }
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int flags = buffer.getInt(slot + FLAGS);
+                // Emptied slots keep their old id, so only a used slot can match
+                boolean match = (flags & FLAG_USED) != 0 && matches(slot, id);
+                Session session = null;
+                if (match && (flags & FLAG_DELETED) == 0) {
+                    session = readSession(slot, sessionId, flags);
+                }
+                VarHandle.loadLoadFence();
+                if ((long) LONGS.getAcquire(buffer, slot + SEQ) != seq) {
+                    continue;
+                }
+                if ((flags & FLAG_USED) == 0 || match) {
+                    return Optional.ofNullable(session);
+                }
+                break;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized void remove(String sessionId) {
+        UUID id = parse(sessionId);
+        if (id == null) {
+            return;
+        }
+        int index = slotIndex(id);
+        for (int probes = 0; probes < capacity; probes++, index = (index + 1) & mask) {
+            int slot = slotOffset(index);
+            repairIfTorn(index);
+            int flags = buffer.getInt(slot + FLAGS);
+            if ((flags & FLAG_USED) == 0) {
+                return;
+            }
+            if (matches(slot, id)) {
+                if ((flags & FLAG_DELETED) == 0) {
+                    setFlags(index, flags | FLAG_DELETED);
+                    if ((buffer.getInt(slotOffset((index + 1) & mask) + FLAGS) & FLAG_USED) == 0) {
+                        clearTombstonesBefore((index + 1) & mask);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Turn expired sessions into tombstones and empty every run of tombstones that ends
+     * at an empty slot. The lock is taken for one chunk of slots at a time, so inserts and
+     * removes are not held up for a whole pass.
+     * @return the number of slots emptied
+     */
+    public int purgeExpired() {
+        long nowMillis = toMillis(timeSource.now());
+        int emptied = 0;
+        for (int from = 0; from < capacity; from += PURGE_CHUNK) {
+            emptied += purgeChunk(from, Math.min(capacity, from + PURGE_CHUNK), nowMillis);
+        }
+        // A run that wraps past the last slot was still expiring when the first empty slot was seen
+        synchronized (this) {
+            for (int index = 0; index < capacity; index++) {
+                if ((buffer.getInt(slotOffset(index) + FLAGS) & FLAG_USED) == 0) {
+                    emptied += clearTombstonesBefore(index);
+                    break;
+                }
+            }
+        }
+        return emptied;
+    }
+
+    private synchronized int purgeChunk(int from, int to, long nowMillis) {
+        int emptied = 0;
+        for (int index = from; index < to; index++) {
+            repairIfTorn(index);
+            int slot = slotOffset(index);
+            int flags = buffer.getInt(slot + FLAGS);
+            if ((flags & FLAG_USED) == 0) {
+                emptied += clearTombstonesBefore(index);
+            } else if (isLive(flags) && buffer.getLong(slot + EXPIRES_AT) < nowMillis) {
+                setFlags(index, flags | FLAG_DELETED);
+            }
+        }
+        return emptied;
+    }
+
+    /**
+     * Run {@link #purgeExpired()} every period on a daemon thread until the store is closed
+     */
+    public synchronized void startPurging(long periodMillis) {
+        if (purger != null) {
+            return;
+        }
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purgeExpired, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Empty the run of tombstones directly before an empty slot. No probe chain continues
+     * past the empty slot, so no lookup needs them; a reader that meets one of the emptied
+     * slots stops where it would have stopped at the empty slot anyway.
+     * @return the number of slots emptied
+     */
+    private int clearTombstonesBefore(int emptyIndex) {
+        int emptied = 0;
+        int index = (emptyIndex - 1) & mask;
+        while (emptied < capacity - 1) {
+            int slot = slotOffset(index);
+            int flags = buffer.getInt(slot + FLAGS);
+            if ((flags & FLAG_USED) == 0 || (flags & FLAG_DELETED) == 0) {
+                break;
+            }
+            setFlags(index, 0);
+            emptied++;
+            index = (index - 1) & mask;
+        }
+        return emptied;
+    }
+
+    /**
+     * Change a slot's flags under its sequence number, so readers never see a half update
+     */
+    private void setFlags(int index, int flags) {
+        beginWrite(index);
+        buffer.putInt(slotOffset(index) + FLAGS, flags);
+        endWrite(index);
+    }
+
+    /**
+     * Record the slot in the header with the session count without it, then make its
+     * sequence odd. Callers hold the lock.
+     */
+    private void beginWrite(int index) {
+        int slot = slotOffset(index);
+        recordPending(index);
+        long seq = (long) LONGS.getAcquire(buffer, slot + SEQ);
+        LONGS.setRelease(buffer, slot + SEQ, seq + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Make the slot's sequence even, count it if it now holds a live session and clear the
+     * header record. Also completes a write found pending after a restart.
+     */
+    private void endWrite(int index) {
+        int slot = slotOffset(index);
+        long seq = (long) LONGS.getAcquire(buffer, slot + SEQ);
+        LONGS.setRelease(buffer, slot + SEQ, (seq + 1) & ~1L);
+        int count = buffer.getInt(HEADER_PENDING_COUNT) + (isLive(buffer.getInt(slot + FLAGS)) ? 1 : 0);
+        buffer.putInt(HEADER_COUNT, count);
+        INTS.setRelease(buffer, HEADER_PENDING_SLOT, 0);
+    }
+
+    private void repairIfTorn(int index) {
+        if (((long) LONGS.getAcquire(buffer, slotOffset(index) + SEQ) & 1) != 0) {
+            repairTorn(index);
+        }
+    }
+
+    /**
+     * Drop the session in a slot whose sequence is odd while no writer holds the lock, so
+     * one that a dead process left half written and no header record covers
+     */
+    private synchronized void repairTorn(int index) {
+        int slot = slotOffset(index);
+        long seq = (long) LONGS.getAcquire(buffer, slot + SEQ);
+        if ((seq & 1) == 0) {
+            return;
+        }
+        recordPending(index);
+        buffer.putInt(slot + FLAGS, FLAG_USED | FLAG_DELETED);
+        endWrite(index);
+    }
+
+    private void recordPending(int index) {
+        int others = buffer.getInt(HEADER_COUNT) - (isLive(buffer.getInt(slotOffset(index) + FLAGS)) ? 1 : 0);
+        buffer.putInt(HEADER_PENDING_COUNT, others);
+        INTS.setRelease(buffer, HEADER_PENDING_SLOT, index + 1);
+    }
+
+    private static boolean isLive(int flags) {
+        return (flags & FLAG_USED) != 0 && (flags & FLAG_DELETED) == 0;
+    }
+
+    /**
+     * Number of stored sessions, including expired ones not yet overwritten
+     */
+    @Override
+    public int size() {
+        return buffer.getInt(HEADER_COUNT);
+    }
+
+    /**
+     * Sessions are counted from the header, so ones written before a restart are included.
+     * Each takes one slot of the mapped file; empty slots and tombstones are not counted,
+     * since their pages need not be resident.
+     */
+    @Override
+    public MemoryFootprint getMemoryFootprint() {
+        long count = size();
+        return new MemoryFootprint("MappedSessionStore", count, count * SLOT_SIZE, Collections.emptyMap());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Slots holding a session, live or expired, or a tombstone; the others end probe chains
+     */
+    synchronized int usedSlots() {
+        int used = 0;
+        for (int index = 0; index < capacity; index++) {
+            if ((buffer.getInt(slotOffset(index) + FLAGS) & FLAG_USED) != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Flush dirty pages to disk
+     */
+    public void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (purger != null) {
+                purger.shutdownNow();
+                purger = null;
+            }
+        }
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Session readSession(int slot, String sessionId, int flags) {
+        int length = Math.min(buffer.getInt(slot + USER_ID_LENGTH), MAX_USER_ID_BYTES);
+        byte[] userId = new byte[Math.max(0, length)];
+        for (int i = 0; i < userId.length; i++) {
+            userId[i] = buffer.get(slot + USER_ID + i);
+        }
+        Session session = new Session();
+        session.setSessionId(sessionId);
+        session.setUserId(new String(userId, StandardCharsets.UTF_8));
+        session.setCreatedAt(fromMillis(buffer.getLong(slot + CREATED_AT)));
+        session.setExpiresAt(fromMillis(buffer.getLong(slot + EXPIRES_AT)));
+        session.setActive((flags & FLAG_ACTIVE) != 0);
+        return session;
+    }
+
+    private boolean matches(int slot, UUID id) {
+        return buffer.getLong(slot + SESSION_MSB) == id.getMostSignificantBits()
+                && buffer.getLong(slot + SESSION_LSB) == id.getLeastSignificantBits();
+    }
+
+    private int slotIndex(UUID id) {
+        long hash = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    private static int slotOffset(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    private static UUID parse(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(sessionId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
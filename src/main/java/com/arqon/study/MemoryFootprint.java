@@ -0,0 +1,59 @@
+package com.arqon.study;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estimated heap retained by one store at a point in time, split into its entities and
+ * each of its indexes
+ */
+public class MemoryFootprint {
+    private final String store;
+    private final long entityCount;
+    private final long entityBytes;
+    private final Map<String, Long> indexBytes;
+
+    MemoryFootprint(String store, long entityCount, long entityBytes, Map<String, Long> indexBytes) {
+        this.store = store;
+        this.entityCount = entityCount;
+        this.entityBytes = entityBytes;
+        this.indexBytes = Collections.unmodifiableMap(new LinkedHashMap<>(indexBytes));
+    }
+
+    public String getStore() { return store; }
+    public long getEntityCount() { return entityCount; }
+    /** Bytes held by the entities themselves, including their strings, dates and arrays */
+    public long getEntityBytes() { return entityBytes; }
+    /** Bytes held by each index, by index name, in a stable order */
+    public Map<String, Long> getIndexBytes() { return indexBytes; }
+
+    public long getIndexBytes(String index) {
+        return indexBytes.getOrDefault(index, 0L);
+    }
+
+    public long getTotalIndexBytes() {
+        long total = 0;
+        for (long bytes : indexBytes.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public long getTotalBytes() {
+        return entityBytes + getTotalIndexBytes();
+    }
+
+    /**
+     * @return total bytes divided by the entity count, or 0 for an empty store
+     */
+    public long getBytesPerEntity() {
+        return entityCount == 0 ? 0 : getTotalBytes() / entityCount;
+    }
+
+    @Override
+    public String toString() {
+        return store + " entities=" + entityCount + " entityBytes=" + entityBytes + " indexBytes=" + indexBytes
+                + " totalBytes=" + getTotalBytes();
+    }
+}
@@ -0,0 +1,74 @@
+package com.arqon.study;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estimated heap sizes of the objects the repositories hold, for a 64-bit JVM with
+ * compressed references (12-byte headers, 4-byte references, 8-byte alignment).
+ *
+ * Map entry sizes include the node and an amortized share of the bucket table. Shared
+ * objects such as cached small boxed numbers are counted as if they were not shared, so
+ * the estimates err on the high side.
+ */
+final class MemoryLayout {
+    static final int HEADER = 12;
+    static final int REFERENCE = 4;
+    /** HashMap or ConcurrentHashMap node plus its share of the table */
+    static final int HASH_ENTRY = 40;
+    /** TreeMap or TreeSet entry */
+    static final int TREE_ENTRY = 40;
+    /** ConcurrentSkipListMap node plus its share of the index levels */
+    static final int SKIP_LIST_ENTRY = 32;
+    static final int BOXED_NUMBER = 16;
+    static final int LOCAL_DATE = 24;
+    /** LocalDateTime with its LocalDate and LocalTime */
+    static final int LOCAL_DATE_TIME = 72;
+
+    private MemoryLayout() {}
+
+    /**
+     * @param fieldBytes total size of the instance fields
+     * @return size of an object with those fields
+     */
+    static int object(int fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    static int array(int elementBytes, int length) {
+        return align(HEADER + 4 + elementBytes * length);
+    }
+
+    /**
+     * Size of a string and its backing array, which is one byte per character unless
+     * some character does not fit in Latin-1
+     */
+    static int string(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int bytesPerChar = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return object(REFERENCE + 4 + 2) + array(bytesPerChar, text.length());
+    }
+
+    static int bytes(byte[] data) {
+        return data == null ? 0 : array(1, data.length);
+    }
+
+    static int boxed(Number value) {
+        return value == null ? 0 : BOXED_NUMBER;
+    }
+
+    static int dateTime(LocalDateTime value) {
+        return value == null ? 0 : LOCAL_DATE_TIME;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,84 @@
+package com.arqon.study;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters of one service method
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    
+    MethodMetrics(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @param elapsedNanos how long the call took
+     * @param success whether the call succeeded
+     */
+    public void record(long elapsedNanos, boolean success) {
+        latency.record(elapsedNanos);
+        (success ? successes : failures).increment();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    
+    @Override
+    public long getCount() {
+        return successes.sum() + failures.sum();
+    }
+    
+    @Override
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+    
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+    
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000.0;
+    }
+    
+    @Override
+    public long getP50Micros() {
+        return micros(latency.getValueAtPercentile(50));
+    }
+    
+    @Override
+    public long getP90Micros() {
+        return micros(latency.getValueAtPercentile(90));
+    }
+    
+    @Override
+    public long getP99Micros() {
+        return micros(latency.getValueAtPercentile(99));
+    }
+    
+    @Override
+    public long getP999Micros() {
+        return micros(latency.getValueAtPercentile(99.9));
+    }
+    
+    @Override
+    public long getMaxMicros() {
+        return micros(latency.getMax());
+    }
+    
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
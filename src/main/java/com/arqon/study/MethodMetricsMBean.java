@@ -0,0 +1,25 @@
+package com.arqon.study;
+
+/**
+ * JMX view of one service method's {@link MethodMetrics}; latencies are in microseconds
+ */
+public interface MethodMetricsMBean {
+    
+    long getCount();
+    
+    long getSuccessCount();
+    
+    long getFailureCount();
+    
+    double getMeanMicros();
+    
+    long getP50Micros();
+    
+    long getP90Micros();
+    
+    long getP99Micros();
+    
+    long getP999Micros();
+    
+    long getMaxMicros();
+}
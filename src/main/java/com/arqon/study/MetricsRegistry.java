@@ -0,0 +1,227 @@
+package com.arqon.study;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Per-method latency histograms, success and failure counters and gauges for the services.
+ *
+ * Services time their public methods through {@link #timed}; a call fails when it throws
+ * or returns an {@link OperationResult} that is not a success. Metrics can be published
+ * as JMX MBeans under the {@value #DOMAIN} domain and dumped as text on a schedule.
+ *
+ * {@link #disabled()} returns a registry that records nothing, which is what services use
+ * when none is given.
+ */
+public class MetricsRegistry implements AutoCloseable {
+    public static final String DOMAIN = "com.arqon.study";
+    
+    private static final MetricsRegistry DISABLED = new MetricsRegistry(false);
+    
+    private final boolean enabled;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private MBeanServer server;
+    private ScheduledExecutorService dumper;
+    
+    public MetricsRegistry() {
+        this(true);
+    }
+    
+    private MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * A shared registry that records nothing
+     */
+    public static MetricsRegistry disabled() {
+        return DISABLED;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Run an operation, recording its latency and outcome under a method name
+     * @param name metric name, e.g. "CourseManagementService.createCourse"
+     * @return the operation's result
+     */
+    public <T> T timed(String name, Supplier<T> operation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        MethodMetrics metrics = method(name);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException | Error e) {
+            metrics.record(System.nanoTime() - start, false);
+            throw e;
+        }
+        boolean success = !(result instanceof OperationResult) || ((OperationResult) result).isSuccess();
+        metrics.record(System.nanoTime() - start, success);
+        return result;
+    }
+    
+    /**
+     * The metrics of one method, created on first use
+     */
+    public MethodMetrics method(String name) {
+        MethodMetrics metrics = methods.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        return methods.computeIfAbsent(name, n -> {
+            MethodMetrics created = new MethodMetrics(n);
+            register(objectName("Method", n), created, MethodMetricsMBean.class);
+            return created;
+        });
+    }
+    
+    /**
+     * Register a sampled value, replacing any gauge of the same name
+     * @param name gauge name, e.g. "CourseRepository.size"
+     */
+    public void gauge(String name, LongSupplier value) {
+        if (!enabled) {
+            return;
+        }
+        if (gauges.put(name, value) == null) {
+            register(objectName("Gauge", name), gaugeView(name), GaugeMBean.class);
+        }
+    }
+    
+    public Map<String, MethodMetrics> getMethods() {
+        return new TreeMap<>(methods);
+    }
+    
+    /**
+     * @return current value of every gauge, by name
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.getAsLong()));
+        return values;
+    }
+    
+    /**
+     * Publish every metric, including ones created later, on the platform MBean server
+     */
+    public void registerMBeans() {
+        registerMBeans(ManagementFactory.getPlatformMBeanServer());
+    }
+    
+    public synchronized void registerMBeans(MBeanServer mbeanServer) {
+        if (!enabled || server != null) {
+            return;
+        }
+        server = mbeanServer;
+        methods.forEach((name, metrics) -> register(objectName("Method", name), metrics, MethodMetricsMBean.class));
+        gauges.keySet().forEach(name ->
+                register(objectName("Gauge", name), gaugeView(name), GaugeMBean.class));
+    }
+    
+    public synchronized void unregisterMBeans() {
+        if (server == null) {
+            return;
+        }
+        for (String name : methods.keySet()) {
+            unregister(objectName("Method", name));
+        }
+        for (String name : gauges.keySet()) {
+            unregister(objectName("Gauge", name));
+        }
+        server = null;
+    }
+    
+    /**
+     * Render every method and gauge as text, one per line, latencies in microseconds
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        getMethods().forEach((name, m) -> text.append(String.format(
+                "%s count=%d success=%d failure=%d mean=%.1f p50=%d p90=%d p99=%d p999=%d max=%d%n",
+                name, m.getCount(), m.getSuccessCount(), m.getFailureCount(), m.getMeanMicros(),
+                m.getP50Micros(), m.getP90Micros(), m.getP99Micros(), m.getP999Micros(), m.getMaxMicros())));
+        getGauges().forEach((name, value) -> text.append(name).append(' ').append(value).append(System.lineSeparator()));
+        return text.toString();
+    }
+    
+    /**
+     * Hand {@link #dump()} to a consumer at a fixed period on a daemon thread
+     */
+    public synchronized void startTextDump(long periodMillis, Consumer<String> out) {
+        if (!enabled || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> out.accept(dump()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop the text dump and withdraw the MBeans
+     */
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        unregisterMBeans();
+    }
+    
+    private synchronized <T> void register(ObjectName objectName, T mbean, Class<T> type) {
+        if (server == null) {
+            return;
+        }
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(mbean, type), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + objectName, e);
+        }
+    }
+    
+    private void unregister(ObjectName objectName) {
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister " + objectName, e);
+        }
+    }
+    
+    private GaugeMBean gaugeView(String name) {
+        return () -> gauges.getOrDefault(name, () -> 0).getAsLong();
+    }
+    
+    private static ObjectName objectName(String type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid metric name " + name, e);
+        }
+    }
+}
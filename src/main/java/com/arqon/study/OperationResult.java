@@ -0,0 +1,8 @@
+package com.arqon.study;
+
+/**
+ * Outcome of a service operation that reports success instead of throwing
+ */
+public interface OperationResult {
+    boolean isSuccess();
+}
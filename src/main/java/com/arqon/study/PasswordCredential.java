@@ -0,0 +1,35 @@
+package com.arqon.study;
+
+/**
+ * A stored password hash with the salt and work factor it was made with.
+ *
+ * Immutable, so a user's credential is replaced as a whole and a reader holding one
+ * always sees a matching salt, work factor and hash.
+ */
+public final class PasswordCredential {
+    private final byte[] salt;
+    private final int iterations;
+    private final byte[] hash;
+
+    /**
+     * @param salt the salt, or null for a legacy unsalted digest
+     * @param iterations the work factor; {@link PasswordHasher#LEGACY_ITERATIONS} means unsalted SHA-256
+     * @param hash the raw digest
+     */
+    PasswordCredential(byte[] salt, int iterations, byte[] hash) {
+        this.salt = salt;
+        this.iterations = iterations;
+        this.hash = hash;
+    }
+
+    public byte[] getSalt() { return salt; }
+    public int getIterations() { return iterations; }
+    public byte[] getHash() { return hash; }
+
+    /**
+     * Encoded form, as produced by {@link PasswordHasher#hash(String)}
+     */
+    public String encode() {
+        return PasswordHasher.encode(salt, iterations, hash);
+    }
+}
@@ -0,0 +1,333 @@
+package com.arqon.study;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Salted, tunable password hashing (PBKDF2-HMAC-SHA256).
+ *
+ * Hashing is CPU heavy by design, so it runs on a dedicated executor sized to the
+ * available cores instead of on the caller's thread. The executor has a bounded
+ * queue: once it is full, further requests are rejected with {@link HasherBusyException}
+ * so a burst of logins cannot starve the rest of the request threads.
+ *
+ * Stored hashes carry their own parameters ({@code pbkdf2-sha256$iterations$salt$hash})
+ * so they can be verified after the work factor is raised and transparently rehashed.
+ * Legacy unsalted SHA-256 hex digests are still accepted and always need a rehash.
+ *
+ * Verification runs against the raw salt and digest bytes of the user's
+ * {@link PasswordCredential}, read once so a concurrent rehash cannot mix them, with a
+ * per-thread SHA-256 instance and scratch buffers, and compares in constant time.
+ *
+ * A request that times out is cancelled, and the derivation stops at its next
+ * interrupt check, so abandoned work does not keep holding a hashing thread.
+ */
+public class PasswordHasher {
+    public static final String ALGORITHM_ID = "pbkdf2-sha256";
+    public static final int DEFAULT_ITERATIONS = 120_000;
+    public static final int SALT_LENGTH = 16;
+    public static final int HASH_LENGTH = 32;
+
+    /** Work factor recorded for hashes created by the original unsalted SHA-256 scheme. */
+    public static final int LEGACY_ITERATIONS = 0;
+
+    private static final int BLOCK_SIZE = 64;
+    /** Rounds between checks for cancellation; a mask, so one less than a power of two */
+    private static final int INTERRUPT_CHECK_MASK = 1023;
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int iterations;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS, Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors() * 8, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param iterations PBKDF2 work factor for newly created hashes
+     * @param threads number of hashing threads
+     * @param queueCapacity number of hashing requests allowed to wait for a thread
+     * @param timeoutMillis how long a caller waits for its hash before giving up
+     */
+    public PasswordHasher(int iterations, int threads, int queueCapacity, long timeoutMillis) {
+        if (iterations < 1 || threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Iterations, threads and queue capacity must be positive");
+        }
+        this.iterations = iterations;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HasherThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Hash a password with a fresh salt and the current work factor.
+     * @return the encoded hash, see {@link User#setPassword(String)}
+     * @throws HasherBusyException if the hashing executor is saturated
+     */
+    public String hash(String password) {
+        try (Span span = Tracer.startSpan("PasswordHasher.hash")) {
+            return submit(() -> hashNow(password));
+        }
+    }
+
+    /**
+     * Verify a password against the hash stored on a user.
+     * @throws HasherBusyException if the hashing executor is saturated
+     */
+    public boolean verify(String password, User user) {
+        try (Span span = Tracer.startSpan("PasswordHasher.verify")) {
+            PasswordCredential credential = user.getCredential();
+            return submit(() -> verifyNow(password, credential));
+        }
+    }
+
+    /**
+     * Check whether a user's hash was produced with weaker parameters than the current ones.
+     */
+    public boolean needsRehash(User user) {
+        PasswordCredential credential = user.getCredential();
+        return credential == null || credential.getIterations() < iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    String hashNow(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        byte[] hash = new byte[HASH_LENGTH];
+        Scratch scratch = SCRATCH.get();
+        derive(scratch, password, salt, iterations);
+        System.arraycopy(scratch.result, 0, hash, 0, HASH_LENGTH);
+        return encode(salt, iterations, hash);
+    }
+
+    /**
+     * Verify on the calling thread against a credential read once from the user
+     */
+    static boolean verifyNow(String password, PasswordCredential credential) {
+        return credential != null
+                && verifyNow(password, credential.getSalt(), credential.getIterations(), credential.getHash());
+    }
+
+    /**
+     * Verify on the calling thread. Uses only the per-thread scratch state, so once
+     * warmed up a verification allocates nothing.
+     * @param iterations the stored work factor; {@link #LEGACY_ITERATIONS} means unsalted SHA-256
+     */
+    static boolean verifyNow(String password, byte[] salt, int iterations, byte[] expected) {
+        if (password == null || expected == null || expected.length != HASH_LENGTH) {
+            return false;
+        }
+        Scratch scratch = SCRATCH.get();
+        if (iterations == LEGACY_ITERATIONS) {
+            int length = scratch.encodeUtf8(password);
+            scratch.digest.update(scratch.passwordBytes, 0, length);
+            scratch.finish(scratch.result);
+        } else {
+            derive(scratch, password, salt, iterations);
+        }
+        return MessageDigest.isEqual(expected, scratch.result);
+    }
+
+    static String encode(byte[] salt, int iterations, byte[] hash) {
+        if (iterations == LEGACY_ITERATIONS) {
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+                hex[2 * i + 1] = Character.forDigit(hash[i] & 0xf, 16);
+            }
+            return new String(hex);
+        }
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return ALGORITHM_ID + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 for a single output block, written against a reused digest so
+     * no key specs, MAC instances or intermediate arrays are created per call.
+     * @throws CancellationException if the thread is interrupted part way through
+     */
+    private static void derive(Scratch scratch, String password, byte[] salt, int iterations) {
+        MessageDigest digest = scratch.digest;
+        int length = scratch.encodeUtf8(password);
+        byte[] key = scratch.passwordBytes;
+        if (length > BLOCK_SIZE) {
+            digest.update(key, 0, length);
+            scratch.finish(scratch.u);
+            key = scratch.u;
+            length = HASH_LENGTH;
+        }
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte k = i < length ? key[i] : 0;
+            scratch.ipad[i] = (byte) (k ^ 0x36);
+            scratch.opad[i] = (byte) (k ^ 0x5c);
+        }
+
+        // U1 = HMAC(P, salt || INT(1))
+        digest.update(scratch.ipad, 0, BLOCK_SIZE);
+        digest.update(salt, 0, salt.length);
+        digest.update((byte) 0);
+        digest.update((byte) 0);
+        digest.update((byte) 0);
+        digest.update((byte) 1);
+        scratch.finish(scratch.u);
+        digest.update(scratch.opad, 0, BLOCK_SIZE);
+        digest.update(scratch.u, 0, HASH_LENGTH);
+        scratch.finish(scratch.u);
+        System.arraycopy(scratch.u, 0, scratch.result, 0, HASH_LENGTH);
+
+        // Ui = HMAC(P, Ui-1), T = U1 ^ U2 ^ ... ^ Uc
+        for (int round = 1; round < iterations; round++) {
+            if ((round & INTERRUPT_CHECK_MASK) == 0 && Thread.interrupted()) {
+                throw new CancellationException("Password hashing cancelled");
+            }
+            digest.update(scratch.ipad, 0, BLOCK_SIZE);
+            digest.update(scratch.u, 0, HASH_LENGTH);
+            scratch.finish(scratch.u);
+            digest.update(scratch.opad, 0, BLOCK_SIZE);
+            digest.update(scratch.u, 0, HASH_LENGTH);
+            scratch.finish(scratch.u);
+            for (int i = 0; i < HASH_LENGTH; i++) {
+                scratch.result[i] ^= scratch.u[i];
+            }
+        }
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(Tracer.wrap(() -> {
+                try (Span span = Tracer.startSpan("PasswordHasher.derive")) {
+                    return task.call();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            throw new HasherBusyException("Password hashing queue is full", e);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new HasherBusyException("Password hashing timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new HasherBusyException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Thrown when the hashing executor cannot accept or finish a request in time.
+     */
+    public static class HasherBusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public HasherBusyException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Per-thread digest and buffers reused across hash computations.
+     */
+    private static class Scratch {
+        final MessageDigest digest;
+        final byte[] ipad = new byte[BLOCK_SIZE];
+        final byte[] opad = new byte[BLOCK_SIZE];
+        final byte[] u = new byte[HASH_LENGTH];
+        final byte[] result = new byte[HASH_LENGTH];
+        byte[] passwordBytes = new byte[BLOCK_SIZE * 2];
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Password hashing failed", e);
+            }
+        }
+
+        void finish(byte[] out) {
+            try {
+                digest.digest(out, 0, HASH_LENGTH);
+            } catch (DigestException e) {
+                throw new RuntimeException("Password hashing failed", e);
+            }
+        }
+
+        /**
+         * Encode the password as UTF-8 into {@link #passwordBytes}, growing it only for
+         * unusually long passwords.
+         * @return the number of bytes written
+         */
+        int encodeUtf8(String password) {
+            int maxLength = password.length() * 3;
+            if (passwordBytes.length < maxLength) {
+                passwordBytes = new byte[maxLength];
+            }
+            byte[] out = passwordBytes;
+            int pos = 0;
+            for (int i = 0; i < password.length(); i++) {
+                char c = password.charAt(i);
+                if (c < 0x80) {
+                    out[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[pos++] = (byte) (0xc0 | (c >> 6));
+                    out[pos++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < password.length()
+                        && Character.isLowSurrogate(password.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, password.charAt(++i));
+                    out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    out[pos++] = (byte) '?';
+                } else {
+                    out[pos++] = (byte) (0xe0 | (c >> 12));
+                    out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    out[pos++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return pos;
+        }
+    }
+
+    private static class HasherThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "password-hasher-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.arqon.study;
+
+import java.util.Locale;
+
+/**
+ * Assignment priority parsed from its free-form label, most urgent first.
+ * Labels that are missing or not recognised parse to {@link #UNSPECIFIED}, which
+ * orders after every known priority.
+ */
+public enum Priority {
+    HIGH, MEDIUM, LOW, UNSPECIFIED;
+    
+    public static Priority parse(String label) {
+        if (label == null) {
+            return UNSPECIFIED;
+        }
+        switch (label.trim().toLowerCase(Locale.ROOT)) {
+            case "high":
+                return HIGH;
+            case "medium":
+                return MEDIUM;
+            case "low":
+                return LOW;
+            default:
+                return UNSPECIFIED;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A fixed interval repeating a bounded number of times, e.g. weekly for a term.
+ * Occurrence {@code i} is due {@code i * intervalDays} days after the first one.
+ */
+public final class RecurrenceRule {
+    private final LocalDateTime firstDue;
+    private final int intervalDays;
+    private final int count;
+    
+    private RecurrenceRule(LocalDateTime firstDue, int intervalDays, int count) {
+        if (firstDue == null) {
+            throw new IllegalArgumentException("First due date is required");
+        }
+        if (intervalDays <= 0) {
+            throw new IllegalArgumentException("Interval must be at least one day");
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("A recurrence needs at least one occurrence");
+        }
+        this.firstDue = firstDue;
+        this.intervalDays = intervalDays;
+        this.count = count;
+    }
+    
+    /**
+     * Every {@code intervalDays} days, {@code count} times
+     */
+    public static RecurrenceRule every(int intervalDays, LocalDateTime firstDue, int count) {
+        return new RecurrenceRule(firstDue, intervalDays, count);
+    }
+    
+    public static RecurrenceRule weekly(LocalDateTime firstDue, int count) {
+        return every(7, firstDue, count);
+    }
+    
+    /**
+     * Every week up to and including the last day
+     * @throws IllegalArgumentException if the last day is before the first due date
+     */
+    public static RecurrenceRule weeklyUntil(LocalDateTime firstDue, LocalDate lastDay) {
+        if (firstDue == null || lastDay == null) {
+            throw new IllegalArgumentException("First due date and last day are required");
+        }
+        long days = ChronoUnit.DAYS.between(firstDue.toLocalDate(), lastDay);
+        if (days < 0) {
+            throw new IllegalArgumentException("Last day is before the first due date");
+        }
+        return every(7, firstDue, Math.toIntExact(Math.floorDiv(days, 7) + 1));
+    }
+    
+    public LocalDateTime getFirstDue() { return firstDue; }
+    public int getIntervalDays() { return intervalDays; }
+    public int getCount() { return count; }
+    
+    public LocalDateTime dueDate(int index) {
+        return firstDue.plusDays((long) index * intervalDays);
+    }
+    
+    /**
+     * Index of the first occurrence due at or after a time, or {@link #getCount()} if none
+     */
+    public int firstIndexAtOrAfter(LocalDateTime time) {
+        if (!time.isAfter(firstDue)) {
+            return 0;
+        }
+        long index = ChronoUnit.DAYS.between(firstDue, time) / intervalDays;
+        while (index < count && dueDate((int) index).isBefore(time)) {
+            index++;
+        }
+        return (int) Math.min(index, count);
+    }
+    
+    /**
+     * Index after the last occurrence due at or before a time
+     */
+    public int endIndexAtOrBefore(LocalDateTime time) {
+        if (time.isBefore(firstDue)) {
+            return 0;
+        }
+        long index = Math.min(ChronoUnit.DAYS.between(firstDue, time) / intervalDays + 1, count);
+        while (index > 0 && dueDate((int) index - 1).isAfter(time)) {
+            index--;
+        }
+        return (int) index;
+    }
+    
+    @Override
+    public String toString() {
+        return "RecurrenceRule{" +
+                "firstDue=" + firstDue +
+                ", intervalDays=" + intervalDays +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+package com.arqon.study;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Template for an assignment that repeats on a {@link RecurrenceRule}.
+ *
+ * Occurrences are not stored. They are generated when queried, and only an occurrence
+ * the user changes is saved as a regular {@link Assignment}; its index is then mapped
+ * here to that assignment's id so it is no longer generated. Deleting the saved
+ * assignment therefore removes just that one occurrence.
+ */
+public class RecurringAssignment {
+    private Long id;
+    private String ownerId;
+    private String title;
+    private String description;
+    private String course;
+    private Long courseId;
+    private String priority;
+    private Integer estimatedHours;
+    private RecurrenceRule rule;
+    private LocalDateTime createdAt;
+    /** Occurrence index -> id of the assignment stored in its place */
+    private final Map<Integer, Long> overriddenOccurrences = new ConcurrentHashMap<>();
+    
+    public RecurringAssignment(String title, String description, String course, RecurrenceRule rule,
+                               String priority, Integer estimatedHours) {
+        this.title = title;
+        this.description = description;
+        this.course = course;
+        this.rule = rule;
+        this.priority = priority;
+        this.estimatedHours = estimatedHours;
+    }
+    
+    /**
+     * The generated occurrence at an index, unsaved and with status todo
+     */
+    public Assignment occurrence(int index) {
+        Assignment occurrence = new Assignment(null, title, description, course, rule.dueDate(index),
+                "todo", priority, estimatedHours);
+        occurrence.setOwnerId(ownerId);
+        occurrence.setCourseId(courseId);
+        occurrence.setRecurrenceId(id);
+        occurrence.setOccurrenceIndex(index);
+        occurrence.setCreatedAt(createdAt);
+        occurrence.setUpdatedAt(createdAt);
+        return occurrence;
+    }
+    
+    public boolean isOverridden(int index) {
+        return overriddenOccurrences.containsKey(index);
+    }
+    
+    /**
+     * Id of the assignment stored in place of an occurrence, if it was overridden
+     */
+    public Optional<Long> getOverride(int index) {
+        return Optional.ofNullable(overriddenOccurrences.get(index));
+    }
+    
+    /**
+     * Stop generating an occurrence because a stored assignment replaces it
+     */
+    public void markOverridden(int index, Long assignmentId) {
+        overriddenOccurrences.put(index, assignmentId);
+    }
+    
+    public int getOverriddenCount() {
+        return overriddenOccurrences.size();
+    }
+    
+    public Long getId() { return id; }
+    public String getOwnerId() { return ownerId; }
+    public String getTitle() { return title; }
+    public String getDescription() { return description; }
+    public String getCourse() { return course; }
+    public Long getCourseId() { return courseId; }
+    public String getPriority() { return priority; }
+    public Integer getEstimatedHours() { return estimatedHours; }
+    public RecurrenceRule getRule() { return rule; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    
+    public void setId(Long id) { this.id = id; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+    public void setTitle(String title) { this.title = title; }
+    public void setDescription(String description) { this.description = description; }
+    public void setCourse(String course) { this.course = course; }
+    public void setCourseId(Long courseId) { this.courseId = courseId; }
+    public void setPriority(String priority) { this.priority = priority; }
+    public void setEstimatedHours(Integer estimatedHours) { this.estimatedHours = estimatedHours; }
+    public void setRule(RecurrenceRule rule) { this.rule = rule; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    @Override
+    public String toString() {
+        return "RecurringAssignment{" +
+                "id=" + id +
+                ", ownerId='" + ownerId + '\'' +
+                ", title='" + title + '\'' +
+                ", course='" + course + '\'' +
+                ", rule=" + rule +
+                ", overridden=" + overriddenOccurrences.size() +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package com.arqon.study;
+
+public class RecurringAssignmentCreationResult implements OperationResult {
+    private final boolean success;
+    private final String errorMessage;
+    private final RecurringAssignment recurringAssignment;
+
+    private RecurringAssignmentCreationResult(boolean success, String errorMessage,
+                                              RecurringAssignment recurringAssignment) {
+        this.success = success;
+        this.errorMessage = errorMessage;
+        this.recurringAssignment = recurringAssignment;
+    }
+
+    public static RecurringAssignmentCreationResult success(RecurringAssignment recurringAssignment) {
+        return new RecurringAssignmentCreationResult(true, null, recurringAssignment);
+    }
+
+    public static RecurringAssignmentCreationResult failure(String errorMessage) {
+        return new RecurringAssignmentCreationResult(false, errorMessage, null);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public RecurringAssignment getRecurringAssignment() {
+        return recurringAssignment;
+    }
+}
@@ -0,0 +1,79 @@
+package com.arqon.study;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory repository for recurring assignment templates, partitioned by owner like
+ * {@link AssignmentRepository}. Memory grows with templates and overridden occurrences,
+ * not with the number of occurrences a rule describes.
+ */
+public class RecurringAssignmentRepository {
+    private final Map<Long, RecurringAssignment> templatesById = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, RecurringAssignment>> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final TimeSource timeSource;
+    
+    public RecurringAssignmentRepository() {
+        this(TimeSource.coarse());
+    }
+    
+    public RecurringAssignmentRepository(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+    
+    public RecurringAssignment save(RecurringAssignment template) {
+        if (template.getId() == null) {
+            template.setId(nextId.getAndIncrement());
+        }
+        if (template.getCreatedAt() == null) {
+            template.setCreatedAt(timeSource.now());
+        }
+        RecurringAssignment previous = templatesById.put(template.getId(), template);
+        if (previous != null) {
+            partition(previous.getOwnerId()).remove(template.getId());
+        }
+        partition(template.getOwnerId()).put(template.getId(), template);
+        return template;
+    }
+    
+    public Optional<RecurringAssignment> findById(String ownerId, Long id) {
+        return Optional.ofNullable(partitions.get(AssignmentRepository.partitionKey(ownerId)))
+                .map(partition -> partition.get(id));
+    }
+    
+    public List<RecurringAssignment> findAll(String ownerId) {
+        Map<Long, RecurringAssignment> partition = partitions.get(AssignmentRepository.partitionKey(ownerId));
+        return partition == null ? new ArrayList<>() : new ArrayList<>(partition.values());
+    }
+    
+    /**
+     * Delete a template; occurrences already stored as assignments are kept
+     */
+    public boolean deleteById(Long id) {
+        RecurringAssignment removed = templatesById.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        partition(removed.getOwnerId()).remove(id);
+        return true;
+    }
+    
+    public long count() {
+        return templatesById.size();
+    }
+    
+    public void clear() {
+        templatesById.clear();
+        partitions.clear();
+        nextId.set(1);
+    }
+    
+    private Map<Long, RecurringAssignment> partition(String ownerId) {
+        return partitions.computeIfAbsent(AssignmentRepository.partitionKey(ownerId), k -> new ConcurrentHashMap<>());
+    }
+}
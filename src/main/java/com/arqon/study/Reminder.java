@@ -0,0 +1,49 @@
+package com.arqon.study;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * A due-soon notification for an assignment
+ */
+public class Reminder {
+    public enum Type {
+        DUE_IN_24_HOURS(Duration.ofHours(24)),
+        DUE_IN_1_HOUR(Duration.ofHours(1));
+        
+        private final Duration lead;
+        
+        Type(Duration lead) {
+            this.lead = lead;
+        }
+        
+        /** How long before the due date the reminder fires */
+        public Duration getLead() {
+            return lead;
+        }
+    }
+    
+    private final Type type;
+    private final Assignment assignment;
+    private final LocalDateTime dueDate;
+    
+    public Reminder(Type type, Assignment assignment, LocalDateTime dueDate) {
+        this.type = type;
+        this.assignment = assignment;
+        this.dueDate = dueDate;
+    }
+    
+    public Type getType() { return type; }
+    public Assignment getAssignment() { return assignment; }
+    /** Due date the reminder was armed for */
+    public LocalDateTime getDueDate() { return dueDate; }
+    
+    @Override
+    public String toString() {
+        return "Reminder{" +
+                "type=" + type +
+                ", assignment=" + assignment.getId() +
+                ", dueDate=" + dueDate +
+                '}';
+    }
+}
@@ -0,0 +1,311 @@
+package com.arqon.study;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arms "due in 24 hours" and "due in 1 hour" reminders for open assignments on a
+ * hierarchical hashed timer wheel, kept up to date from {@link AssignmentRepository}
+ * writes.
+ *
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots. Level 0 slots are one
+ * tick wide and each level above covers {@value #SLOTS} times the span of the one below.
+ * A timer goes into the lowest level whose span reaches its deadline and moves down a
+ * level each time the level below wraps around. Arming and cancelling unlink or link one
+ * list node, so both are O(1) whatever the number of timers.
+ *
+ * Saving an assignment re-arms its reminders when its due date changed and cancels them
+ * once it is completed; deleting it cancels them. Reminders whose time has already passed
+ * when armed fire on the next tick, except that only the most urgent one fires.
+ *
+ * Due reminders are handed to the {@link ReminderSink} in batches, outside any lock,
+ * either from {@link #start()}'s background thread or from explicit {@link #poll()} calls.
+ * A batch the sink throws on is dropped and counted in {@link #getFailedBatchCount()}; the
+ * remaining batches are still delivered and the wheel keeps ticking.
+ */
+public class ReminderScheduler implements RepositoryListener<Assignment>, AutoCloseable {
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    static final int LEVELS = 6;
+    static final int SLOTS = 64;
+    
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final String COMPLETED = "completed";
+    
+    private final TimeSource timeSource;
+    private final ReminderSink sink;
+    private final long tickMillis;
+    private final int batchSize;
+    private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private final Map<Long, Armed> armedByAssignment = new HashMap<>();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private long currentTick;
+    private int pending;
+    private ScheduledExecutorService ticker;
+    
+    public ReminderScheduler(TimeSource timeSource, ReminderSink sink) {
+        this(timeSource, sink, DEFAULT_TICK_MILLIS, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param batchSize maximum reminders per {@link ReminderSink#deliver} call
+     */
+    public ReminderScheduler(TimeSource timeSource, ReminderSink sink, long tickMillis, int batchSize) {
+        if (tickMillis <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Tick and batch size must be positive");
+        }
+        this.timeSource = timeSource;
+        this.sink = sink;
+        this.tickMillis = tickMillis;
+        this.batchSize = batchSize;
+        this.currentTick = tickOf(timeSource.now());
+    }
+    
+    /**
+     * Poll once per tick on a daemon thread
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "assignment-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::poll, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+    
+    /**
+     * Advance the wheel to the current time and deliver every reminder that came due
+     * @return number of reminders delivered, not counting batches the sink failed on
+     */
+    public int poll() {
+        List<Reminder> due = advance(tickOf(timeSource.now()));
+        int delivered = 0;
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Reminder> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+            try {
+                sink.deliver(batch);
+                delivered += batch.size();
+            } catch (RuntimeException e) {
+                // An exception escaping poll would cancel the periodic task and stop all later reminders
+                failedBatches.incrementAndGet();
+            }
+        }
+        return delivered;
+    }
+    
+    /**
+     * @return batches dropped because the sink threw while delivering them
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+    
+    /**
+     * @return number of armed reminders
+     */
+    public synchronized int pendingCount() {
+        return pending;
+    }
+    
+    @Override
+    public synchronized void onSave(Assignment assignment) {
+        Armed armed = armedByAssignment.get(assignment.getId());
+        if (COMPLETED.equals(assignment.getStatus()) || assignment.getDueDate() == null) {
+            cancel(assignment.getId());
+            return;
+        }
+        if (armed != null && armed.dueDate.equals(assignment.getDueDate())) {
+            return;
+        }
+        cancel(assignment.getId());
+        arm(assignment);
+    }
+    
+    @Override
+    public synchronized void onDelete(Assignment assignment) {
+        cancel(assignment.getId());
+    }
+    
+    private void arm(Assignment assignment) {
+        LocalDateTime dueDate = assignment.getDueDate();
+        long dueTick = tickOf(dueDate);
+        if (dueTick <= currentTick) {
+            return;
+        }
+        Reminder.Type[] types = Reminder.Type.values();
+        Armed armed = new Armed(dueDate, types.length);
+        for (int i = 0; i < types.length; i++) {
+            long deadline = tickOf(dueDate.minus(types[i].getLead()));
+            boolean moreUrgentAlsoPassed = i + 1 < types.length
+                    && tickOf(dueDate.minus(types[i + 1].getLead())) <= currentTick;
+            if (deadline <= currentTick && moreUrgentAlsoPassed) {
+                continue;
+            }
+            Timer timer = new Timer(new Reminder(types[i], assignment, dueDate), Math.max(deadline, currentTick + 1));
+            armed.timers[i] = timer;
+            insert(timer);
+            pending++;
+        }
+        armedByAssignment.put(assignment.getId(), armed);
+    }
+    
+    private void cancel(Long assignmentId) {
+        Armed armed = armedByAssignment.remove(assignmentId);
+        if (armed == null) {
+            return;
+        }
+        for (Timer timer : armed.timers) {
+            if (timer != null && timer.level >= 0) {
+                unlink(timer);
+                pending--;
+            }
+        }
+    }
+    
+    private synchronized List<Reminder> advance(long targetTick) {
+        List<Reminder> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            if (pending == 0) {
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            int index = (int) (currentTick & SLOT_MASK);
+            for (int level = 1; index == 0 && level < LEVELS; level++) {
+                index = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                cascade(level, index);
+            }
+            int slot = (int) (currentTick & SLOT_MASK);
+            Timer timer = wheel[0][slot];
+            wheel[0][slot] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer.level = -1;
+                if (timer.deadline > currentTick) {
+                    insert(timer);
+                } else {
+                    pending--;
+                    due.add(timer.reminder);
+                    fired(timer);
+                }
+                timer = next;
+            }
+        }
+        return due;
+    }
+    
+    /**
+     * Forget a fired timer; the assignment stays registered with its due date so saving it
+     * again unchanged does not re-arm reminders that already went out
+     */
+    private void fired(Timer timer) {
+        Armed armed = armedByAssignment.get(timer.reminder.getAssignment().getId());
+        if (armed != null) {
+            for (int i = 0; i < armed.timers.length; i++) {
+                if (armed.timers[i] == timer) {
+                    armed.timers[i] = null;
+                }
+            }
+        }
+    }
+    
+    private void cascade(int level, int index) {
+        Timer timer = wheel[level][index];
+        wheel[level][index] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.level = -1;
+            insert(timer);
+            timer = next;
+        }
+    }
+    
+    private void insert(Timer timer) {
+        long delta = Math.max(timer.deadline - currentTick, 0);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        // Deadlines beyond the top level's span are parked in its furthest slot and re-inserted from there
+        long tick = Math.min(timer.deadline, currentTick + (1L << (SLOT_BITS * LEVELS)) - 1);
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.level = level;
+        timer.slot = slot;
+        timer.next = wheel[level][slot];
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+        wheel[level][slot] = timer;
+    }
+    
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            wheel[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+    
+    private long tickOf(LocalDateTime time) {
+        long millis = time.toInstant(ZoneOffset.UTC).toEpochMilli();
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+    
+    /**
+     * The reminders armed for one due date of an assignment
+     */
+    private static final class Armed {
+        final LocalDateTime dueDate;
+        final Timer[] timers;
+        
+        Armed(LocalDateTime dueDate, int count) {
+            this.dueDate = dueDate;
+            this.timers = new Timer[count];
+        }
+    }
+    
+    private static final class Timer {
+        final Reminder reminder;
+        final long deadline;
+        Timer prev;
+        Timer next;
+        int level = -1;
+        int slot;
+        
+        Timer(Reminder reminder, long deadline) {
+            this.reminder = reminder;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.arqon.study;
+
+import java.util.List;
+
+/**
+ * Receives reminders as they come due, in batches
+ */
+public interface ReminderSink {
+    /**
+     * Called from the reminder thread; implementations should hand off slow work
+     * @param reminders reminders due since the previous batch, never empty
+     */
+    void deliver(List<Reminder> reminders);
+}
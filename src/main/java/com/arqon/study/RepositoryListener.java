@@ -0,0 +1,12 @@
+package com.arqon.study;
+
+/**
+ * Callback for derived state (caches, indexes, aggregates) that must follow repository writes.
+ * Listeners are invoked synchronously on the writing thread after the write is applied.
+ */
+public interface RepositoryListener<T> {
+    
+    default void onSave(T entity) {}
+    
+    default void onDelete(T entity) {}
+}
@@ -0,0 +1,65 @@
+package com.arqon.study;
+
+/**
+ * A ranked search match: either an assignment or a course
+ */
+public class SearchResult {
+    public enum Type { ASSIGNMENT, COURSE }
+
+    private final Type type;
+    private final Long id;
+    private final double score;
+    private final Assignment assignment;
+    private final Course course;
+
+    private SearchResult(Type type, Long id, double score, Assignment assignment, Course course) {
+        this.type = type;
+        this.id = id;
+        this.score = score;
+        this.assignment = assignment;
+        this.course = course;
+    }
+
+    public static SearchResult of(Assignment assignment, double score) {
+        return new SearchResult(Type.ASSIGNMENT, assignment.getId(), score, assignment, null);
+    }
+
+    public static SearchResult of(Course course, double score) {
+        return new SearchResult(Type.COURSE, course.getId(), score, null, course);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the matched assignment, or null for a course match
+     */
+    public Assignment getAssignment() {
+        return assignment;
+    }
+
+    /**
+     * @return the matched course, or null for an assignment match
+     */
+    public Course getCourse() {
+        return course;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{" +
+                "type=" + type +
+                ", id=" + id +
+                ", score=" + score +
+                '}';
+    }
+}
@@ -0,0 +1,135 @@
+package com.arqon.study;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Full-text search over assignments (title, description) and courses (name, code,
+ * instructor, description).
+ *
+ * Each owner has its own {@link InvertedIndex}, kept current from repository listeners,
+ * so a query only ranks that owner's documents. Assignments and courses share an index;
+ * the low bit of the document key tells them apart.
+ */
+public class SearchService {
+    public static final int DEFAULT_LIMIT = 20;
+
+    private final AssignmentRepository assignmentRepository;
+    private final CourseRepository courseRepository;
+    private final SessionManager sessionManager;
+    private final Map<String, InvertedIndex> indexesByOwner = new ConcurrentHashMap<>();
+    private final Map<Long, String> ownersByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Registers listeners on both repositories; create the service before saving data
+     */
+    public SearchService(AssignmentRepository assignmentRepository, CourseRepository courseRepository,
+                         SessionManager sessionManager) {
+        this.assignmentRepository = assignmentRepository;
+        this.courseRepository = courseRepository;
+        this.sessionManager = sessionManager;
+        assignmentRepository.addListener(new RepositoryListener<Assignment>() {
+            @Override
+            public void onSave(Assignment assignment) {
+                index(assignmentKey(assignment.getId()), assignment.getOwnerId(),
+                        assignment.getTitle(), assignment.getDescription());
+            }
+
+            @Override
+            public void onDelete(Assignment assignment) {
+                unindex(assignmentKey(assignment.getId()));
+            }
+        });
+        courseRepository.addListener(new RepositoryListener<Course>() {
+            @Override
+            public void onSave(Course course) {
+                index(courseKey(course.getId()), course.getOwnerId(), course.getName(), course.getCode(),
+                        course.getInstructor(), course.getDescription());
+            }
+
+            @Override
+            public void onDelete(Course course) {
+                unindex(courseKey(course.getId()));
+            }
+        });
+    }
+
+    /**
+     * Search the session user's assignments and courses
+     * @return up to {@code limit} results, best first; empty if the session is not valid
+     */
+    public List<SearchResult> search(Session session, String query, int limit) {
+        return SessionManager.ownerOf(sessionManager, session)
+                .map(ownerId -> searchOwner(ownerId, query, limit))
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Search unowned assignments and courses
+     */
+    public List<SearchResult> search(String query, int limit) {
+        return searchOwner(null, query, limit);
+    }
+
+    private List<SearchResult> searchOwner(String ownerId, String query, int limit) {
+        InvertedIndex index = indexesByOwner.get(partitionKey(ownerId));
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        List<InvertedIndex.Hit> hits = index.search(query, limit);
+        List<SearchResult> results = new ArrayList<>(hits.size());
+        for (InvertedIndex.Hit hit : hits) {
+            long id = hit.getKey() >>> 1;
+            if (isCourseKey(hit.getKey())) {
+                courseRepository.findById(ownerId, id)
+                        .ifPresent(course -> results.add(SearchResult.of(course, hit.getScore())));
+            } else {
+                assignmentRepository.findAssignmentById(ownerId, id)
+                        .ifPresent(assignment -> results.add(SearchResult.of(assignment, hit.getScore())));
+            }
+        }
+        return results;
+    }
+
+    private void index(long key, String ownerId, String... fields) {
+        String owner = partitionKey(ownerId);
+        String previousOwner = ownersByKey.put(key, owner);
+        if (previousOwner != null && !previousOwner.equals(owner)) {
+            Optional.ofNullable(indexesByOwner.get(previousOwner)).ifPresent(index -> index.remove(key));
+        }
+        StringBuilder text = new StringBuilder();
+        for (String field : fields) {
+            if (field != null) {
+                text.append(field).append(' ');
+            }
+        }
+        indexesByOwner.computeIfAbsent(owner, k -> new InvertedIndex()).put(key, text.toString());
+    }
+
+    private void unindex(long key) {
+        String owner = ownersByKey.remove(key);
+        if (owner != null) {
+            Optional.ofNullable(indexesByOwner.get(owner)).ifPresent(index -> index.remove(key));
+        }
+    }
+
+    private static long assignmentKey(Long id) {
+        return id << 1;
+    }
+
+    private static long courseKey(Long id) {
+        return (id << 1) | 1;
+    }
+
+    private static boolean isCourseKey(long key) {
+        return (key & 1) == 1;
+    }
+
+    private static String partitionKey(String ownerId) {
+        return ownerId == null ? "" : ownerId;
+    }
+}
@@ -15,11 +15,17 @@ public class Session {
     
     public Session() {}
     
-    public Session(String userId) {
+    public static final long SESSION_LIFETIME_HOURS = 24;
+    
+    public Session(String userId, TimeSource timeSource) {
+        this(userId, timeSource.now());
+    }
+    
+    public Session(String userId, LocalDateTime now) {
         this.sessionId = UUID.randomUUID().toString();
         this.userId = userId;
-        this.createdAt = LocalDateTime.now();
-        this.expiresAt = LocalDateTime.now().plusHours(24); // 24 hour session
+        this.createdAt = now;
+        this.expiresAt = now.plusHours(SESSION_LIFETIME_HOURS);
         this.active = true;
     }
     
@@ -39,7 +45,11 @@ public class Session {
     public boolean isActive() { return active; }
     public void setActive(boolean active) { this.active = active; }
     
-    public boolean isExpired() {
-        return LocalDateTime.now().isAfter(expiresAt);
+    public boolean isExpired(TimeSource timeSource) {
+        return isExpired(timeSource.now());
+    }
+    
+    public boolean isExpired(LocalDateTime now) {
+        return now.isAfter(expiresAt);
     }
 }
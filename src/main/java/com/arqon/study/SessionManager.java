@@ -1,31 +1,80 @@
 package com.arqon.study;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * Manages user sessions
+ * 
+ * The memory the sessions take is estimated by the store, read with {@link #getMemoryFootprint()}.
  */
 public class SessionManager {
-    private Map<String, Session> sessions = new HashMap<>();
+    private final SessionStore sessions;
+    private final TimeSource timeSource;
+    
+    public SessionManager() {
+        this(TimeSource.coarse());
+    }
+    
+    public SessionManager(TimeSource timeSource) {
+        this(new InMemorySessionStore(), timeSource);
+    }
+    
+    public SessionManager(SessionStore sessions, TimeSource timeSource) {
+        this.sessions = sessions;
+        this.timeSource = timeSource;
+    }
     
     public Session createSession(String userId) {
-        Session session = new Session(userId);
-        sessions.put(session.getSessionId(), session);
+        Session session = new Session(userId, timeSource.now());
+        sessions.put(session);
         return session;
     }
     
     public Optional<Session> getSession(String sessionId) {
-        return Optional.ofNullable(sessions.get(sessionId));
+        try (Span span = Tracer.startSpan("SessionManager.getSession")) {
+            return sessions.get(sessionId);
+        }
+    }
+    
+    /**
+     * Look up a session and return it only if it is active and not expired
+     */
+    public Optional<Session> getValidSession(String sessionId) {
+        return getSession(sessionId).filter(session -> session.isActive() && !session.isExpired(timeSource.now()));
+    }
+    
+    /**
+     * Resolve the user a caller's session belongs to, trusting only its id: the session
+     * must still be valid in the manager. Without a manager no session is trusted, since
+     * the caller could have put any user id in it.
+     * @param sessionManager the manager the session was issued by, or null if there is none
+     */
+    static Optional<String> ownerOf(SessionManager sessionManager, Session session) {
+        if (sessionManager == null || session == null) {
+            return Optional.empty();
+        }
+        return sessionManager.getValidSession(session.getSessionId()).map(Session::getUserId);
     }
     
     public boolean isValidSession(String sessionId) {
-        Optional<Session> session = getSession(sessionId);
-        return session.isPresent() && session.get().isActive() && !session.get().isExpired();
+        return getValidSession(sessionId).isPresent();
     }
     
     public void invalidateSession(String sessionId) {
         sessions.remove(sessionId);
     }
+    
+    /**
+     * @return number of stored sessions, including expired ones not yet removed
+     */
+    public int count() {
+        return sessions.size();
+    }
+    
+    /**
+     * @return estimated memory held by the stored sessions, as reported by the store
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        return sessions.getMemoryFootprint();
+    }
 }
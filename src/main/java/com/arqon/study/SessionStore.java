@@ -0,0 +1,22 @@
+package com.arqon.study;
+
+import java.util.Optional;
+
+/**
+ * Storage backend for {@link SessionManager}
+ */
+public interface SessionStore {
+    
+    void put(Session session);
+    
+    Optional<Session> get(String sessionId);
+    
+    void remove(String sessionId);
+    
+    int size();
+    
+    /**
+     * @return estimated memory the stored sessions take, including ones loaded from disk
+     */
+    MemoryFootprint getMemoryFootprint();
+}
@@ -0,0 +1,46 @@
+package com.arqon.study;
+
+import java.time.Instant;
+
+/**
+ * One query recorded by the {@link SlowQueryLog}
+ */
+public class SlowQuery {
+    private final long sequence;
+    private final Instant timestamp;
+    private final String query;
+    private final String parameters;
+    private final int rowsScanned;
+    private final int rowsReturned;
+    private final long elapsedNanos;
+    
+    SlowQuery(long sequence, Instant timestamp, String query, String parameters, int rowsScanned,
+              int rowsReturned, long elapsedNanos) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.query = query;
+        this.parameters = parameters;
+        this.rowsScanned = rowsScanned;
+        this.rowsReturned = rowsReturned;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /** Position in the log, increasing by one per recorded query */
+    public long getSequence() { return sequence; }
+    public Instant getTimestamp() { return timestamp; }
+    /** Repository method name */
+    public String getQuery() { return query; }
+    public String getParameters() { return parameters; }
+    public int getRowsScanned() { return rowsScanned; }
+    public int getRowsReturned() { return rowsReturned; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    
+    /**
+     * Single-line form used in log files
+     */
+    @Override
+    public String toString() {
+        return timestamp + " " + query + " elapsedMicros=" + elapsedNanos / 1000 + " scanned=" + rowsScanned
+                + " returned=" + rowsReturned + " " + parameters;
+    }
+}
@@ -0,0 +1,359 @@
+package com.arqon.study;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sampled log of slow repository queries.
+ *
+ * Queries taking at least the threshold are kept with probability equal to the sampling
+ * rate, with their parameters, rows scanned, rows returned and elapsed time. Entries go
+ * into a fixed-size ring buffer: a writer claims a sequence number with one atomic
+ * increment and stores into its slot, overwriting the oldest entry once the buffer is
+ * full, so recording never blocks a query.
+ *
+ * {@link #startFileFlush} appends new entries to a file from a background thread,
+ * rotating it to {@code name.1 .. name.N} when it grows past a size limit. Entries
+ * overwritten before the flusher reached them are counted in {@link #getDroppedCount()}.
+ * A flush that fails to write is counted in {@link #getFlushErrorCount()} and retried from
+ * the first entry not yet in the file on the next one, so an I/O error never stops the
+ * flusher and loses no entry still in the buffer.
+ */
+public class SlowQueryLog implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    private static final SlowQueryLog DISABLED = new SlowQueryLog();
+    
+    private final TimeSource timeSource;
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final double samplingRate;
+    private final AtomicReferenceArray<SlowQuery> slots;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushErrors = new AtomicLong();
+    private ScheduledExecutorService flusher;
+    private FileSink sink;
+    
+    private SlowQueryLog() {
+        this.timeSource = TimeSource.coarse();
+        this.enabled = false;
+        this.thresholdNanos = Long.MAX_VALUE;
+        this.samplingRate = 0;
+        this.slots = new AtomicReferenceArray<>(1);
+        this.mask = 0;
+    }
+    
+    public SlowQueryLog(long thresholdMillis, double samplingRate) {
+        this(thresholdMillis, samplingRate, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param thresholdMillis queries taking at least this long are candidates; 0 logs every query
+     * @param samplingRate fraction of slow queries kept, between 0 and 1
+     * @param capacity entries kept in memory, rounded up to a power of two
+     */
+    public SlowQueryLog(long thresholdMillis, double samplingRate, int capacity) {
+        this(TimeSource.coarse(), thresholdMillis, samplingRate, capacity);
+    }
+    
+    /**
+     * @param timeSource clock stamping recorded entries
+     */
+    public SlowQueryLog(TimeSource timeSource, long thresholdMillis, double samplingRate, int capacity) {
+        if (thresholdMillis < 0 || samplingRate < 0 || samplingRate > 1 || capacity <= 0) {
+            throw new IllegalArgumentException("Threshold and capacity must not be negative, rate between 0 and 1");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.timeSource = timeSource;
+        this.enabled = samplingRate > 0;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.samplingRate = samplingRate;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = slots.length() - 1;
+    }
+    
+    /**
+     * A shared log that records nothing
+     */
+    public static SlowQueryLog disabled() {
+        return DISABLED;
+    }
+    
+    /**
+     * @return false if no query can be recorded, so callers can skip timing entirely
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Decide whether a query that took this long is recorded; callers build the parameter
+     * text only when it is
+     */
+    public boolean shouldRecord(long elapsedNanos) {
+        return enabled && elapsedNanos >= thresholdNanos
+                && (samplingRate >= 1 || ThreadLocalRandom.current().nextDouble() < samplingRate);
+    }
+    
+    public void record(String query, String parameters, int rowsScanned, int rowsReturned, long elapsedNanos) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & mask), new SlowQuery(sequence,
+                Instant.ofEpochMilli(timeSource.currentTimeMillis()), query, parameters,
+                rowsScanned, rowsReturned, elapsedNanos));
+    }
+    
+    /**
+     * @return the entries still in the buffer, oldest first
+     */
+    public List<SlowQuery> getRecent() {
+        long end = nextSequence.get();
+        List<SlowQuery> recent = new ArrayList<>();
+        for (long sequence = Math.max(0, end - slots.length()); sequence < end; sequence++) {
+            SlowQuery entry = slots.get((int) (sequence & mask));
+            if (entry != null && entry.getSequence() == sequence) {
+                recent.add(entry);
+            }
+        }
+        return recent;
+    }
+    
+    /**
+     * @return number of queries recorded since the log was created
+     */
+    public long getRecordedCount() {
+        return nextSequence.get();
+    }
+    
+    /**
+     * @return entries overwritten before the file flusher wrote them
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    /**
+     * @return flushes that failed with an I/O error; their entries are retried on the next flush
+     */
+    public long getFlushErrorCount() {
+        return flushErrors.get();
+    }
+    
+    /**
+     * Append new entries to a file every period on a daemon thread, rotating it once it
+     * reaches {@code maxBytes}
+     * @param maxFiles rotated files kept besides the current one
+     */
+    public synchronized void startFileFlush(Path file, long maxBytes, int maxFiles, long periodMillis) {
+        if (!enabled || flusher != null) {
+            return;
+        }
+        sink = new FileSink(file, maxBytes, maxFiles, nextSequence.get(), dropped);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Write out every entry not yet in the file. Runs on the flusher thread, where an escaping
+     * exception would cancel all later flushes, so I/O errors are counted instead of thrown.
+     */
+    public synchronized void flush() {
+        if (sink == null) {
+            return;
+        }
+        try {
+            long end = nextSequence.get();
+            long next = sink.nextSequence;
+            if (end - next > slots.length()) {
+                next = end - slots.length();
+                sink.skipTo(next);
+            }
+            for (; next < end; next++) {
+                SlowQuery entry = slots.get((int) (next & mask));
+                if (entry == null || entry.getSequence() < next) {
+                    break; // claimed but not stored yet; pick it up on the next flush
+                }
+                if (entry.getSequence() == next) {
+                    sink.write(next, entry.toString());
+                } else {
+                    sink.skip(next);
+                }
+            }
+            sink.flush();
+        } catch (IOException e) {
+            flushErrors.incrementAndGet();
+            sink.discard();
+        }
+    }
+    
+    /**
+     * Flush what is buffered and stop the background flusher
+     */
+    @Override
+    public synchronized void close() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdownNow();
+        flusher = null;
+        flush();
+        try {
+            sink.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink = null;
+    }
+    
+    /**
+     * Size-rotated output file.
+     *
+     * Lines are buffered until a flush, or a rotation, has put them in the file; only then
+     * does {@link #nextSequence} move past them and are the entries skipped among them
+     * counted as dropped. A failed write discards the buffer, and the next flush starts
+     * again from {@link #nextSequence}. Lines a rotation already closed into the rotated
+     * file are not written twice.
+     */
+    private static final class FileSink {
+        final Path file;
+        final long maxBytes;
+        final int maxFiles;
+        final AtomicLong dropped;
+        /** First entry not yet in the file */
+        long nextSequence;
+        /** First entry not yet buffered or skipped */
+        long bufferedSequence;
+        /** Entries skipped since the last write reached the file */
+        long bufferedDrops;
+        BufferedWriter out;
+        long size;
+        
+        FileSink(Path file, long maxBytes, int maxFiles, long nextSequence, AtomicLong dropped) {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            this.maxFiles = maxFiles;
+            this.dropped = dropped;
+            this.nextSequence = nextSequence;
+            this.bufferedSequence = nextSequence;
+        }
+        
+        void write(long sequence, String line) throws IOException {
+            byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            if (out == null) {
+                open();
+            }
+            if (size > 0 && size + bytes.length > maxBytes) {
+                rotate();
+            }
+            out.write(line);
+            out.newLine();
+            size += bytes.length;
+            bufferedSequence = sequence + 1;
+        }
+        
+        /**
+         * Pass over an entry overwritten before it was written
+         */
+        void skip(long sequence) {
+            bufferedDrops++;
+            bufferedSequence = sequence + 1;
+        }
+        
+        /**
+         * Pass over every entry before a sequence, all of them overwritten; called with
+         * nothing buffered
+         */
+        void skipTo(long sequence) {
+            dropped.addAndGet(sequence - nextSequence);
+            nextSequence = sequence;
+            bufferedSequence = sequence;
+        }
+        
+        void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+            commit();
+        }
+        
+        /**
+         * Drop the writer and the lines buffered in it after a failed write, so the next
+         * flush reopens the file and writes them again
+         */
+        void discard() {
+            try {
+                close();
+            } catch (IOException e) {
+                // Already failing; the next write reports its own error
+            }
+            out = null;
+            bufferedSequence = nextSequence;
+            bufferedDrops = 0;
+        }
+        
+        private void commit() {
+            dropped.addAndGet(bufferedDrops);
+            bufferedDrops = 0;
+            nextSequence = bufferedSequence;
+        }
+        
+        void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+        
+        private void open() throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            size = Files.size(file);
+        }
+        
+        private void rotate() throws IOException {
+            close();
+            commit();
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) {
+                    Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (maxFiles > 0) {
+                Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(file);
+            }
+            open();
+        }
+        
+        private Path rotated(int index) {
+            return Paths.get(file.toString() + "." + index);
+        }
+    }
+}
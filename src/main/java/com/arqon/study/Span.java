@@ -0,0 +1,107 @@
+package com.arqon.study;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed unit of work within a trace. Closing a span ends it, makes its parent current
+ * again and hands it to the tracer's exporter.
+ *
+ * Spans of unsampled or absent traces are the shared {@link #NOOP} span, which records
+ * nothing, so instrumented code can always use try-with-resources.
+ */
+public class Span implements AutoCloseable {
+    /** Stands in for spans that are not recorded */
+    public static final Span NOOP = new Span(null, 0, 0, 0, 0, null, null);
+    
+    /** Offset turning {@link System#nanoTime()} readings into nanoseconds since the epoch */
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    
+    private final Tracer tracer;
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String name;
+    private final Span previous;
+    private final String threadName;
+    private final long startNanos;
+    private long endNanos;
+    private Map<String, Object> attributes;
+    
+    Span(Tracer tracer, long traceIdHigh, long traceIdLow, long spanId, long parentSpanId, String name,
+         Span previous) {
+        this.tracer = tracer;
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.previous = previous;
+        this.threadName = tracer == null ? null : Thread.currentThread().getName();
+        this.startNanos = tracer == null ? 0 : System.nanoTime();
+    }
+    
+    public boolean isRecording() {
+        return this != NOOP;
+    }
+    
+    /**
+     * Attach a key/value to the span; ignored on {@link #NOOP}
+     * @return this span
+     */
+    public Span setAttribute(String key, Object value) {
+        if (this != NOOP) {
+            if (attributes == null) {
+                attributes = new LinkedHashMap<>();
+            }
+            attributes.put(key, value);
+        }
+        return this;
+    }
+    
+    @Override
+    public void close() {
+        if (this == NOOP || endNanos != 0) {
+            return;
+        }
+        endNanos = System.nanoTime();
+        tracer.end(this);
+    }
+    
+    /** 32 lower-case hex digits */
+    public String getTraceId() {
+        return hex(traceIdHigh) + hex(traceIdLow);
+    }
+    
+    /** 16 lower-case hex digits */
+    public String getSpanId() {
+        return hex(spanId);
+    }
+    
+    /** @return the parent's span id, or null for a root span */
+    public String getParentSpanId() {
+        return parentSpanId == 0 ? null : hex(parentSpanId);
+    }
+    
+    public String getName() { return name; }
+    public String getThreadName() { return threadName; }
+    public long getStartEpochNanos() { return startNanos + EPOCH_OFFSET_NANOS; }
+    public long getDurationNanos() { return endNanos == 0 ? 0 : endNanos - startNanos; }
+    
+    public Map<String, Object> getAttributes() {
+        return attributes == null ? Collections.emptyMap() : Collections.unmodifiableMap(attributes);
+    }
+    
+    Tracer getTracer() { return tracer; }
+    long getTraceIdHigh() { return traceIdHigh; }
+    long getTraceIdLow() { return traceIdLow; }
+    long getId() { return spanId; }
+    Span getPrevious() { return previous; }
+    
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+}
@@ -0,0 +1,12 @@
+package com.arqon.study;
+
+/**
+ * Receives every span of a sampled trace once it ends
+ */
+public interface SpanExporter {
+    
+    /**
+     * Called on the thread that ended the span; must not block for long
+     */
+    void export(Span span);
+}
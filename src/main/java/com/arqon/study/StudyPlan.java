@@ -0,0 +1,56 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A user's study schedule: daily blocks of work plus the assignments that cannot be
+ * finished before they are due with the available hours
+ */
+public class StudyPlan {
+    private final LocalDate startDate;
+    private final int dailyHours;
+    private final List<Block> blocks;
+    private final List<Assignment> infeasible;
+    
+    public StudyPlan(LocalDate startDate, int dailyHours, List<Block> blocks, List<Assignment> infeasible) {
+        this.startDate = startDate;
+        this.dailyHours = dailyHours;
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.infeasible = Collections.unmodifiableList(infeasible);
+    }
+    
+    public LocalDate getStartDate() { return startDate; }
+    public int getDailyHours() { return dailyHours; }
+    public List<Block> getBlocks() { return blocks; }
+    public List<Assignment> getInfeasible() { return infeasible; }
+    
+    /**
+     * Hours of work on one assignment on one day
+     */
+    public static class Block {
+        private final LocalDate date;
+        private final Assignment assignment;
+        private final int hours;
+        
+        public Block(LocalDate date, Assignment assignment, int hours) {
+            this.date = date;
+            this.assignment = assignment;
+            this.hours = hours;
+        }
+        
+        public LocalDate getDate() { return date; }
+        public Assignment getAssignment() { return assignment; }
+        public int getHours() { return hours; }
+        
+        @Override
+        public String toString() {
+            return "Block{" +
+                    "date=" + date +
+                    ", assignment=" + assignment.getId() +
+                    ", hours=" + hours +
+                    '}';
+        }
+    }
+}
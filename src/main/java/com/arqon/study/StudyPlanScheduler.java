@@ -0,0 +1,268 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns open assignments into a day-by-day study plan, kept up to date from
+ * {@link AssignmentRepository} writes.
+ *
+ * Work is scheduled earliest deadline first, where higher priorities are treated as due
+ * earlier so they get a buffer. Each day offers the owner's daily study hours, and work
+ * on an assignment must finish the day before it is due. Assignments that cannot, or
+ * are already past due, are flagged as infeasible and not scheduled, so they take no
+ * time from the work after them.
+ *
+ * Every assignment's place in the plan depends only on the assignments ordered before
+ * it, so a change only invalidates the plan from the changed assignment onwards. The
+ * kept prefix, with its blocks, is reused and the rest is recomputed on the next read;
+ * reads with no change in between return the same plan.
+ *
+ * Register the scheduler with {@link AssignmentRepository#addListener(RepositoryListener)}
+ * before any assignments are saved.
+ */
+public class StudyPlanScheduler implements RepositoryListener<Assignment> {
+    public static final int DEFAULT_DAILY_HOURS = 4;
+    
+    private static final String COMPLETED = "completed";
+    
+    private final Map<String, Schedule> schedulesByOwner = new ConcurrentHashMap<>();
+    private final Map<String, Integer> dailyHoursByOwner = new ConcurrentHashMap<>();
+    private final TimeSource timeSource;
+    private final int defaultDailyHours;
+    
+    public StudyPlanScheduler(TimeSource timeSource) {
+        this(timeSource, DEFAULT_DAILY_HOURS);
+    }
+    
+    /**
+     * @param defaultDailyHours study hours per day for owners without their own setting
+     */
+    public StudyPlanScheduler(TimeSource timeSource, int defaultDailyHours) {
+        if (defaultDailyHours <= 0) {
+            throw new IllegalArgumentException("Daily hours must be positive");
+        }
+        this.timeSource = timeSource;
+        this.defaultDailyHours = defaultDailyHours;
+    }
+    
+    /**
+     * Set how many hours per day an owner can study
+     */
+    public void setDailyHours(String ownerId, int hours) {
+        if (hours <= 0) {
+            throw new IllegalArgumentException("Daily hours must be positive");
+        }
+        dailyHoursByOwner.put(AssignmentRepository.partitionKey(ownerId), hours);
+    }
+    
+    /**
+     * Current plan for an owner, starting today
+     */
+    public StudyPlan getPlan(String ownerId) {
+        String owner = AssignmentRepository.partitionKey(ownerId);
+        int dailyHours = dailyHoursByOwner.getOrDefault(owner, defaultDailyHours);
+        LocalDate today = timeSource.now().toLocalDate();
+        Schedule schedule = schedulesByOwner.get(owner);
+        if (schedule == null) {
+            return new StudyPlan(today, dailyHours, new ArrayList<>(), new ArrayList<>());
+        }
+        return schedule.plan(today, dailyHours);
+    }
+    
+    @Override
+    public void onSave(Assignment assignment) {
+        schedulesByOwner.computeIfAbsent(AssignmentRepository.partitionKey(assignment.getOwnerId()),
+                owner -> new Schedule())
+                .put(assignment);
+    }
+    
+    @Override
+    public void onDelete(Assignment assignment) {
+        Schedule schedule = schedulesByOwner.get(AssignmentRepository.partitionKey(assignment.getOwnerId()));
+        if (schedule != null) {
+            schedule.remove(assignment.getId());
+        }
+    }
+    
+    /**
+     * Hours of buffer a priority gets ahead of its deadline when ordering work
+     */
+    static int leadHours(String priority) {
+        switch (Priority.parse(priority)) {
+            case HIGH:
+                return 48;
+            case MEDIUM:
+                return 24;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * Snapshot of the fields an assignment was scheduled with
+     */
+    private static final class Entry {
+        final long id;
+        final Assignment assignment;
+        final LocalDateTime orderKey;
+        final int lead;
+        final LocalDate lastStudyDay;
+        final int hours;
+        
+        Entry(Assignment assignment) {
+            this.id = assignment.getId();
+            this.assignment = assignment;
+            this.lead = leadHours(assignment.getPriority());
+            this.orderKey = assignment.getDueDate().minusHours(lead);
+            this.lastStudyDay = assignment.getDueDate().toLocalDate().minusDays(1);
+            this.hours = assignment.getEstimatedHours() == null ? 0 : Math.max(0, assignment.getEstimatedHours());
+        }
+    }
+    
+    private static final Comparator<Entry> EDF = Comparator.comparing((Entry entry) -> entry.orderKey)
+            .thenComparing(entry -> -entry.lead)
+            .thenComparingLong(entry -> entry.id);
+    
+    /**
+     * Where an entry landed: hours [start, end) counted from the plan's first day
+     */
+    private static final class Placement {
+        final Entry entry;
+        final long end;
+        /** Number of blocks and infeasible assignments of the placements before this one */
+        final int blocksBefore;
+        final int infeasibleBefore;
+        
+        Placement(Entry entry, long end, int blocksBefore, int infeasibleBefore) {
+            this.entry = entry;
+            this.end = end;
+            this.blocksBefore = blocksBefore;
+            this.infeasibleBefore = infeasibleBefore;
+        }
+    }
+    
+    private static final class Schedule {
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final TreeSet<Entry> open = new TreeSet<>(EDF);
+        private final List<Placement> placements = new ArrayList<>();
+        private final List<StudyPlan.Block> blocks = new ArrayList<>();
+        private final List<Assignment> infeasible = new ArrayList<>();
+        /** Smallest entry changed since the placements were computed, or null if none */
+        private Entry dirtyFrom;
+        private LocalDate planDay;
+        private int planDailyHours;
+        /** Plan built from the current placements, or null once they changed */
+        private StudyPlan plan;
+        
+        synchronized void put(Assignment assignment) {
+            removeEntry(assignment.getId());
+            if (assignment.getDueDate() == null || COMPLETED.equals(assignment.getStatus())) {
+                return;
+            }
+            Entry entry = new Entry(assignment);
+            entries.put(entry.id, entry);
+            open.add(entry);
+            markDirty(entry);
+        }
+        
+        synchronized void remove(Long id) {
+            removeEntry(id);
+        }
+        
+        synchronized StudyPlan plan(LocalDate today, int dailyHours) {
+            if (!today.equals(planDay) || dailyHours != planDailyHours) {
+                truncate(0);
+                planDay = today;
+                planDailyHours = dailyHours;
+            } else if (dirtyFrom != null) {
+                truncate(firstPlacementAtOrAfter(dirtyFrom));
+            } else if (plan != null) {
+                return plan;
+            }
+            dirtyFrom = null;
+            extend(today, dailyHours);
+            plan = new StudyPlan(today, dailyHours, new ArrayList<>(blocks), new ArrayList<>(infeasible));
+            return plan;
+        }
+        
+        /**
+         * Drop the placements from an index on, with their blocks
+         */
+        private void truncate(int from) {
+            if (from < placements.size()) {
+                Placement first = placements.get(from);
+                blocks.subList(first.blocksBefore, blocks.size()).clear();
+                infeasible.subList(first.infeasibleBefore, infeasible.size()).clear();
+                placements.subList(from, placements.size()).clear();
+            }
+        }
+        
+        /**
+         * Place every open entry after the last kept placement. An entry that cannot finish
+         * in time is reported and gets no hours, so the cursor does not move.
+         */
+        private void extend(LocalDate today, int dailyHours) {
+            NavigableSet<Entry> remaining = placements.isEmpty()
+                    ? open
+                    : open.tailSet(placements.get(placements.size() - 1).entry, false);
+            long cursor = placements.isEmpty() ? 0 : placements.get(placements.size() - 1).end;
+            for (Entry entry : remaining) {
+                int blocksBefore = blocks.size();
+                int infeasibleBefore = infeasible.size();
+                long studyDays = ChronoUnit.DAYS.between(today, entry.lastStudyDay) + 1;
+                long end = cursor + entry.hours;
+                if (studyDays <= 0 || end > studyDays * dailyHours) {
+                    infeasible.add(entry.assignment);
+                    end = cursor;
+                }
+                for (long hour = cursor; hour < end; ) {
+                    long day = hour / dailyHours;
+                    long dayEnd = Math.min(end, (day + 1) * dailyHours);
+                    blocks.add(new StudyPlan.Block(today.plusDays(day), entry.assignment, (int) (dayEnd - hour)));
+                    hour = dayEnd;
+                }
+                placements.add(new Placement(entry, end, blocksBefore, infeasibleBefore));
+                cursor = end;
+            }
+        }
+        
+        private int firstPlacementAtOrAfter(Entry entry) {
+            int low = 0;
+            int high = placements.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (EDF.compare(placements.get(mid).entry, entry) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private void removeEntry(Long id) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                open.remove(entry);
+                markDirty(entry);
+            }
+        }
+        
+        private void markDirty(Entry entry) {
+            plan = null;
+            if (dirtyFrom == null || EDF.compare(entry, dirtyFrom) < 0) {
+                dirtyFrom = entry;
+            }
+        }
+    }
+}
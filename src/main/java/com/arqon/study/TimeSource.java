@@ -0,0 +1,52 @@
+package com.arqon.study;
+
+import java.time.LocalDateTime;
+
+/**
+ * Source of the current time for services, repositories and entities.
+ *
+ * Injected instead of calling {@link LocalDateTime#now()} directly so hot paths can
+ * read a cached value and time-based logic can be driven deterministically in tests.
+ */
+public interface TimeSource {
+    
+    /**
+     * @return the current local date-time
+     */
+    LocalDateTime now();
+    
+    /**
+     * @return the current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+    
+    /**
+     * Exact time read from the system clock on every call
+     */
+    static TimeSource system() {
+        return SystemTimeSource.INSTANCE;
+    }
+    
+    /**
+     * Process-wide coarse time source, see {@link CoarseTimeSource}
+     */
+    static TimeSource coarse() {
+        return CoarseTimeSource.shared();
+    }
+    
+    final class SystemTimeSource implements TimeSource {
+        static final SystemTimeSource INSTANCE = new SystemTimeSource();
+        
+        private SystemTimeSource() {}
+        
+        @Override
+        public LocalDateTime now() {
+            return LocalDateTime.now();
+        }
+        
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    }
+}
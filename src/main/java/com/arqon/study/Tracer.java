@@ -0,0 +1,204 @@
+package com.arqon.study;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-scoped tracing with head-based sampling.
+ *
+ * Services open a trace per request with {@link #startTrace}; whether the trace is
+ * recorded is decided there, once, by the sampling rate. The current span is kept in a
+ * thread local, so code further down (sessions, repositories, the password hasher) opens
+ * child spans with the static {@link #startSpan} without holding a tracer. When no
+ * sampled trace is active, both return {@link Span#NOOP} and cost one thread local read.
+ *
+ * Work handed to other threads, including virtual threads, stays in the trace when the
+ * task or executor is wrapped with {@link #wrap}.
+ */
+public class Tracer {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final Tracer DISABLED = new Tracer(0, span -> { });
+    
+    private final double samplingRate;
+    private final SpanExporter exporter;
+    
+    /**
+     * @param samplingRate fraction of traces recorded, between 0 and 1
+     * @param exporter receiver of the spans of recorded traces
+     */
+    public Tracer(double samplingRate, SpanExporter exporter) {
+        if (samplingRate < 0 || samplingRate > 1) {
+            throw new IllegalArgumentException("Sampling rate must be between 0 and 1");
+        }
+        this.samplingRate = samplingRate;
+        this.exporter = exporter;
+    }
+    
+    /**
+     * A shared tracer that never records
+     */
+    public static Tracer disabled() {
+        return DISABLED;
+    }
+    
+    /**
+     * Start a trace for a request and make its root span current; inside an active trace
+     * this starts a child span instead
+     */
+    public Span startTrace(String name) {
+        Span current = CURRENT.get();
+        if (current != null) {
+            return child(current, name);
+        }
+        if (samplingRate == 0 || (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate)) {
+            return Span.NOOP;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Span root = new Span(this, random.nextLong(), random.nextLong(), spanId(random), 0, name, null);
+        CURRENT.set(root);
+        return root;
+    }
+    
+    /**
+     * Start a child of the current span and make it current
+     * @return the child, or {@link Span#NOOP} outside a recorded trace
+     */
+    public static Span startSpan(String name) {
+        Span current = CURRENT.get();
+        return current == null ? Span.NOOP : child(current, name);
+    }
+    
+    /**
+     * @return the current span, or {@link Span#NOOP} outside a recorded trace
+     */
+    public static Span currentSpan() {
+        Span current = CURRENT.get();
+        return current == null ? Span.NOOP : current;
+    }
+    
+    /**
+     * Run a task under the span current at wrapping time
+     */
+    public static Runnable wrap(Runnable task) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = attach(captured);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+    
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = attach(captured);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+    
+    /**
+     * An executor running every task under the span current when it was submitted
+     */
+    public static Executor wrap(Executor executor) {
+        return command -> executor.execute(wrap(command));
+    }
+    
+    public static ExecutorService wrap(ExecutorService executor) {
+        return new ContextExecutorService(executor);
+    }
+    
+    void end(Span span) {
+        if (CURRENT.get() == span) {
+            restore(span.getPrevious());
+        }
+        exporter.export(span);
+    }
+    
+    private static Span child(Span parent, String name) {
+        Span span = new Span(parent.getTracer(), parent.getTraceIdHigh(), parent.getTraceIdLow(),
+                spanId(ThreadLocalRandom.current()), parent.getId(), name, CURRENT.get());
+        CURRENT.set(span);
+        return span;
+    }
+    
+    private static long spanId(ThreadLocalRandom random) {
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+        return id;
+    }
+    
+    private static Span attach(Span span) {
+        Span previous = CURRENT.get();
+        CURRENT.set(span);
+        return previous;
+    }
+    
+    private static void restore(Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+    
+    /**
+     * Wraps tasks at submission, which happens on the submitting thread
+     */
+    private static final class ContextExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        
+        ContextExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(wrap(command));
+        }
+        
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+        
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+        
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+        
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+        
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.arqon.study;
 
 import java.time.LocalDateTime;
+import java.util.Base64;
 
 /**
  * User entity representing a registered user
+ * 
+ * The password is held as one {@link PasswordCredential} in a volatile field, so a
+ * rehash on one thread replaces it in a single write and a login verifying on another
+ * sees either the old credential or the new one, never a mix.
  */
 public class User {
     private String id;
     private String email;
-    private String password; // Hashed password
+    private volatile PasswordCredential credential;
     private LocalDateTime createdAt;
     private LocalDateTime lastLoginAt;
     
@@ -17,8 +22,7 @@ public class User {
     public User(String id, String email, String password) {
         this.id = id;
         this.email = email;
-        this.password = password;
-        this.createdAt = LocalDateTime.now();
+        setPassword(password);
     }
     
     // Getters and Setters
@@ -28,8 +32,71 @@ public class User {
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
     
-    public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
+    /**
+     * Encoded form of the stored hash, including its parameters
+     */
+    public String getPassword() {
+        PasswordCredential current = credential;
+        return current == null ? null : current.encode();
+    }
+    
+    /**
+     * Store an encoded hash as produced by {@link PasswordHasher#hash(String)}.
+     * A bare hex string is read as a legacy unsalted SHA-256 digest. A hash that cannot
+     * be parsed is stored as no hash, which no password verifies against.
+     */
+    public void setPassword(String password) {
+        credential = parse(password);
+    }
+    
+    private static PasswordCredential parse(String password) {
+        if (password == null) {
+            return null;
+        }
+        try {
+            String[] parts = password.split("\\$");
+            if (parts.length == 4 && PasswordHasher.ALGORITHM_ID.equals(parts[0])) {
+                int iterations = Integer.parseInt(parts[1]);
+                if (iterations > 0) {
+                    Base64.Decoder decoder = Base64.getDecoder();
+                    return new PasswordCredential(decoder.decode(parts[2]), iterations, decoder.decode(parts[3]));
+                }
+            } else if (parts.length == 1 && password.length() == PasswordHasher.HASH_LENGTH * 2) {
+                byte[] digest = new byte[PasswordHasher.HASH_LENGTH];
+                for (int i = 0; i < digest.length; i++) {
+                    digest[i] = (byte) Integer.parseInt(password.substring(i * 2, i * 2 + 2), 16);
+                }
+                return new PasswordCredential(null, PasswordHasher.LEGACY_ITERATIONS, digest);
+            }
+        } catch (IllegalArgumentException e) {
+            // Malformed number or Base64; leave the user without a usable hash
+        }
+        return null;
+    }
+    
+    /**
+     * The stored credential, read once so its parts match; null if the user has no usable hash
+     */
+    public PasswordCredential getCredential() { return credential; }
+    
+    public byte[] getPasswordHash() {
+        PasswordCredential current = credential;
+        return current == null ? null : current.getHash();
+    }
+    
+    public byte[] getPasswordSalt() {
+        PasswordCredential current = credential;
+        return current == null ? null : current.getSalt();
+    }
+    
+    public int getPasswordIterations() {
+        PasswordCredential current = credential;
+        return current == null ? PasswordHasher.LEGACY_ITERATIONS : current.getIterations();
+    }
+    
+    public void setPasswordHash(byte[] salt, int iterations, byte[] hash) {
+        this.credential = hash == null ? null : new PasswordCredential(salt, iterations, hash);
+    }
     
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
@@ -1,23 +1,64 @@
 package com.arqon.study;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
- * Service for handling user authentication
+ * Service for handling user authentication.
+ *
+ * The service keeps its dashboard cache current by listening to the user repository;
+ * {@link #close()} stops that once the service is no longer used.
  */
-public class UserAuthenticationService {
-    private UserRepository userRepository;
-    private SessionManager sessionManager;
+public class UserAuthenticationService implements AutoCloseable {
+    private static final String SERVER_BUSY = "Too many requests, please try again later";
+    
+    private final UserRepository userRepository;
+    private final SessionManager sessionManager;
+    private final PasswordHasher passwordHasher;
+    private final DashboardCache dashboardCache;
+    private final TimeSource timeSource;
+    private final DashboardSummaryEngine summaryEngine;
+    private final MetricsRegistry metrics;
+    private final Tracer tracer;
+    /** Whether this service registered the dashboard cache, so closing it should remove it */
+    private final boolean registeredCache;
     
     public UserAuthenticationService(UserRepository userRepository, SessionManager sessionManager) {
-        this.userRepository = userRepository;
-        this.sessionManager = sessionManager;
+        this(builder(userRepository, sessionManager));
+    }
+    
+    private UserAuthenticationService(Builder builder) {
+        this.tracer = builder.tracer;
+        this.metrics = builder.metrics;
+        this.summaryEngine = builder.summaryEngine;
+        this.timeSource = builder.timeSource;
+        this.userRepository = builder.userRepository;
+        this.sessionManager = builder.sessionManager;
+        this.passwordHasher = builder.passwordHasher != null ? builder.passwordHasher : new PasswordHasher();
+        this.dashboardCache = builder.dashboardCache != null ? builder.dashboardCache : new DashboardCache();
+        this.registeredCache = userRepository.addListener(dashboardCache);
+        metrics.gauge("UserRepository.size", userRepository::count);
+        metrics.gauge("SessionManager.size", sessionManager::count);
+        metrics.gauge("UserRepository.bytes", () -> userRepository.getMemoryFootprint().getTotalBytes());
+        metrics.gauge("SessionManager.bytes", () -> sessionManager.getMemoryFootprint().getTotalBytes());
+    }
+    
+    /**
+     * Start configuring a service; every other collaborator is optional
+     */
+    public static Builder builder(UserRepository userRepository, SessionManager sessionManager) {
+        return new Builder(userRepository, sessionManager);
     }
     
     public UserRegistrationResult registerUser(String email, String password) {
+        return observe("UserAuthenticationService.registerUser", () -> register(email, password));
+    }
+    
+    private UserRegistrationResult register(String email, String password) {
+        if (email == null || email.trim().isEmpty()) {
+            return new UserRegistrationResult(false, "Email is required", null);
+        }
+        
         // Check if user already exists
         if (userRepository.existsByEmail(email)) {
             return new UserRegistrationResult(false, "Email already exists", null);
@@ -25,72 +66,180 @@ public class UserAuthenticationService {
         
         // Create new user
         String userId = UUID.randomUUID().toString();
-        String hashedPassword = hashPassword(password);
-        User user = new User(userId, email, hashedPassword);
+        String hashedPassword;
+        try {
+            hashedPassword = passwordHasher.hash(password);
+        } catch (PasswordHasher.HasherBusyException e) {
+            return new UserRegistrationResult(false, SERVER_BUSY, null);
+        }
+        User user = new User(userId, email.trim(), hashedPassword);
+        user.setCreatedAt(timeSource.now());
         
-        // Save user
-        userRepository.save(user);
+        // Save user; a concurrent registration may have claimed the email while we were hashing
+        if (!userRepository.insertIfAbsent(user)) {
+            return new UserRegistrationResult(false, "Email already exists", null);
+        }
         
         return new UserRegistrationResult(true, null, user);
     }
     
     public LoginResult loginUser(String email, String password) {
+        return observe("UserAuthenticationService.loginUser", () -> login(email, password));
+    }
+    
+    private LoginResult login(String email, String password) {
         // Find user by email
         User user = userRepository.findByEmail(email).orElse(null);
         if (user == null) {
             return new LoginResult(false, "Invalid credentials", null);
         }
         
-        // Verify password
-        String hashedPassword = hashPassword(password);
-        if (!user.getPassword().equals(hashedPassword)) {
-            return new LoginResult(false, "Invalid credentials", null);
+        // Verify password off the request thread, upgrading weak hashes while we have the plaintext
+        try {
+            if (!passwordHasher.verify(password, user)) {
+                return new LoginResult(false, "Invalid credentials", null);
+            }
+            if (passwordHasher.needsRehash(user)) {
+                user.setPassword(passwordHasher.hash(password));
+            }
+        } catch (PasswordHasher.HasherBusyException e) {
+            return new LoginResult(false, SERVER_BUSY, null);
         }
         
         // Create session
         Session session = sessionManager.createSession(user.getId());
-        user.setLastLoginAt(LocalDateTime.now());
+        user.setLastLoginAt(timeSource.now());
         userRepository.save(user);
         
         return new LoginResult(true, null, session);
     }
     
     public LogoutResult logoutUser(String sessionId) {
-        if (!sessionManager.isValidSession(sessionId)) {
+        return observe("UserAuthenticationService.logoutUser", () -> logout(sessionId));
+    }
+    
+    private LogoutResult logout(String sessionId) {
+        Session session = sessionManager.getValidSession(sessionId).orElse(null);
+        if (session == null) {
             return new LogoutResult(false, "Invalid session");
         }
         
         sessionManager.invalidateSession(sessionId);
+        dashboardCache.invalidate(session.getUserId());
         return new LogoutResult(true, null);
     }
     
     public DashboardAccessResult accessDashboard(String sessionId) {
-        if (!sessionManager.isValidSession(sessionId)) {
+        return observe("UserAuthenticationService.accessDashboard", () -> dashboard(sessionId));
+    }
+    
+    private DashboardAccessResult dashboard(String sessionId) {
+        Session session = sessionManager.getValidSession(sessionId).orElse(null);
+        if (session == null) {
             return new DashboardAccessResult(false, "Invalid session", null);
         }
         
-        Session session = sessionManager.getSession(sessionId).get();
-        User user = userRepository.findById(session.getUserId()).get();
-        
-        Dashboard dashboard = new Dashboard(user.getEmail(), "Welcome to ARQON Study Dashboard");
+        Dashboard dashboard = dashboardCache.get(session.getUserId()).orElse(null);
+        if (dashboard == null) {
+            // Read the generation first, so a save racing with the build keeps it out of the cache
+            long generation = dashboardCache.generation(session.getUserId());
+            User user = userRepository.findById(session.getUserId()).orElse(null);
+            if (user == null) {
+                return new DashboardAccessResult(false, "Invalid session", null);
+            }
+            dashboard = new Dashboard(user.getEmail(), "Welcome to ARQON Study Dashboard");
+            dashboardCache.put(user.getId(), generation, dashboard);
+        }
+        if (summaryEngine != null) {
+            dashboard = dashboard.withSummary(summaryEngine.getSummary(session.getUserId()));
+        }
         return new DashboardAccessResult(true, null, dashboard);
     }
     
-    private String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(password.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Password hashing failed", e);
+    /**
+     * Stop keeping the dashboard cache current, unless another service registered it
+     */
+    @Override
+    public void close() {
+        if (registeredCache) {
+            userRepository.removeListener(dashboardCache);
+        }
+    }
+    
+    /**
+     * Time an operation and trace it as a request
+     */
+    private <T> T observe(String name, Supplier<T> operation) {
+        try (Span span = tracer.startTrace(name)) {
+            return metrics.timed(name, operation);
+        }
+    }
+    
+    /**
+     * Optional collaborators of a {@link UserAuthenticationService}
+     */
+    public static final class Builder {
+        private final UserRepository userRepository;
+        private final SessionManager sessionManager;
+        private PasswordHasher passwordHasher;
+        private DashboardCache dashboardCache;
+        private TimeSource timeSource = TimeSource.coarse();
+        private DashboardSummaryEngine summaryEngine;
+        private MetricsRegistry metrics = MetricsRegistry.disabled();
+        private Tracer tracer = Tracer.disabled();
+        
+        private Builder(UserRepository userRepository, SessionManager sessionManager) {
+            this.userRepository = userRepository;
+            this.sessionManager = sessionManager;
+        }
+        
+        /**
+         * @param passwordHasher hasher for new and stored passwords; a default one is created if unset
+         */
+        public Builder passwordHasher(PasswordHasher passwordHasher) {
+            this.passwordHasher = passwordHasher;
+            return this;
+        }
+        
+        /**
+         * @param dashboardCache cache of built dashboards; a default one is created if unset
+         */
+        public Builder dashboardCache(DashboardCache dashboardCache) {
+            this.dashboardCache = dashboardCache;
+            return this;
+        }
+        
+        public Builder timeSource(TimeSource timeSource) {
+            this.timeSource = timeSource;
+            return this;
+        }
+        
+        /**
+         * @param summaryEngine source of assignment aggregates for the dashboard
+         */
+        public Builder summaryEngine(DashboardSummaryEngine summaryEngine) {
+            this.summaryEngine = summaryEngine;
+            return this;
+        }
+        
+        /**
+         * @param metrics registry recording latency and outcome of every public method
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+        
+        /**
+         * @param tracer tracer starting a trace for every public method call
+         */
+        public Builder tracer(Tracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+        
+        public UserAuthenticationService build() {
+            return new UserAuthenticationService(this);
         }
     }
 }
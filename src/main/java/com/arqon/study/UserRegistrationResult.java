@@ -3,7 +3,7 @@ package com.arqon.study;
 /**
  * Result of user registration operation
  */
-public class UserRegistrationResult {
+public class UserRegistrationResult implements OperationResult {
     private boolean success;
     private String errorMessage;
     private User user;
@@ -1,30 +1,222 @@
 package com.arqon.study;
 
-import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Repository for managing user data
+ *
+ * Thread safe. Emails are indexed by their canonical form (trimmed, lower case), so
+ * addresses differing only in case or surrounding whitespace belong to the same user.
+ * An email slot is only ever claimed atomically, so two users can never share one.
+ * 
+ * A Bloom filter answers most lookups of unknown emails without touching the maps. It
+ * is rebuilt at twice the size whenever the users outgrow it, so its false positive
+ * rate stays near the target however many users register.
+ * 
+ * The estimated heap held by the users and each index is kept up to date on every write
+ * and read with {@link #getMemoryFootprint()}.
  */
 public class UserRepository {
-    private Map<String, User> usersByEmail = new HashMap<>();
-    private Map<String, User> usersById = new HashMap<>();
+    private static final int DEFAULT_EXPECTED_USERS = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
     
-    public void save(User user) {
-        usersByEmail.put(user.getEmail(), user);
-        usersById.put(user.getId(), user);
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final Map<String, User> usersById = new ConcurrentHashMap<>();
+    /** Email key each user is indexed under, since users may be edited in place before saving */
+    private final Map<String, String> indexedEmails = new ConcurrentHashMap<>();
+    private volatile EmailBloomFilter knownEmails;
+    /**
+     * Held shared while an email is added to the filter and claimed in the map, and
+     * exclusively while the filter is rebuilt, so a rebuild sees every added email
+     */
+    private final ReentrantReadWriteLock filterLock = new ReentrantReadWriteLock();
+    private final CopyOnWriteArrayList<RepositoryListener<User>> listeners = new CopyOnWriteArrayList<>();
+    private final FootprintTracker footprint = new FootprintTracker("UserRepository",
+            "byId", "byEmail", "emailFilter");
+    
+    public UserRepository() {
+        this(DEFAULT_EXPECTED_USERS);
+    }
+    
+    /**
+     * @param expectedUsers number of users the email Bloom filter is first sized for
+     */
+    public UserRepository(int expectedUsers) {
+        this.knownEmails = new EmailBloomFilter(Math.max(1, expectedUsers), FALSE_POSITIVE_RATE);
+        footprint.addFixed("emailFilter", knownEmails.sizeInBytes());
+    }
+    
+    /**
+     * Canonical form used for email lookups
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Register a new user unless the email is already taken.
+     * Both indexes are updated while the email slot is held, so concurrent sign-ups
+     * with the same email cannot both succeed.
+     * @return true if the user was inserted
+     */
+    public boolean insertIfAbsent(User user) {
+        try (Span span = Tracer.startSpan("UserRepository.insertIfAbsent")) {
+            String key = normalizeEmail(user.getEmail());
+            boolean[] inserted = new boolean[1];
+            Lock lock = filterLock.readLock();
+            lock.lock();
+            try {
+                usersByEmail.computeIfAbsent(key, k -> {
+                    usersById.put(user.getId(), user);
+                    indexedEmails.put(user.getId(), k);
+                    knownEmails.add(k);
+                    inserted[0] = true;
+                    return user;
+                });
+            } finally {
+                lock.unlock();
+            }
+            if (inserted[0]) {
+                trackFootprint(user, key);
+                growFilterIfFull();
+                listeners.forEach(listener -> listener.onSave(user));
+            }
+            return inserted[0];
+        }
+    }
+    
+    /**
+     * Insert or update a user. An email change claims the new email slot before
+     * releasing the old one, and is refused if another user holds the new email.
+     * @return true if the user was saved, false if the email belongs to another user
+     */
+    public boolean save(User user) {
+        try (Span span = Tracer.startSpan("UserRepository.save")) {
+            String key = normalizeEmail(user.getEmail());
+            String previousKey = indexedEmails.get(user.getId());
+            if (!key.equals(previousKey) && !claimEmail(user, key)) {
+                return false;
+            }
+            usersById.put(user.getId(), user);
+            usersByEmail.put(key, user);
+            indexedEmails.put(user.getId(), key);
+            if (previousKey != null && !previousKey.equals(key)) {
+                usersByEmail.computeIfPresent(previousKey,
+                        (k, owner) -> owner.getId().equals(user.getId()) ? null : owner);
+            }
+            trackFootprint(user, key);
+            growFilterIfFull();
+            listeners.forEach(listener -> listener.onSave(user));
+            return true;
+        }
+    }
+    
+    /**
+     * Take an email slot for a user unless another user holds it
+     */
+    private boolean claimEmail(User user, String key) {
+        Lock lock = filterLock.readLock();
+        lock.lock();
+        try {
+            // Set the filter bits first so the slot is never visible without them
+            knownEmails.add(key);
+            User owner = usersByEmail.compute(key,
+                    (k, current) -> current == null || current.getId().equals(user.getId()) ? user : current);
+            return owner == user;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Replace the Bloom filter with one twice the size once there are more users than
+     * it was sized for
+     */
+    private void growFilterIfFull() {
+        EmailBloomFilter filter = knownEmails;
+        if (usersByEmail.size() <= filter.getExpectedEntries()) {
+            return;
+        }
+        Lock lock = filterLock.writeLock();
+        lock.lock();
+        try {
+            if (knownEmails != filter) {
+                return;
+            }
+            EmailBloomFilter grown = new EmailBloomFilter(
+                    (int) Math.min(Integer.MAX_VALUE / 2, 2L * Math.max(filter.getExpectedEntries(),
+                            usersByEmail.size())), FALSE_POSITIVE_RATE);
+            usersByEmail.keySet().forEach(grown::add);
+            knownEmails = grown;
+            footprint.addFixed("emailFilter", grown.sizeInBytes() - filter.sizeInBytes());
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Notify a listener of every save; a listener already registered is not added again
+     * @return true if the listener was not registered before
+     */
+    public boolean addListener(RepositoryListener<User> listener) {
+        return listeners.addIfAbsent(listener);
+    }
+    
+    public void removeListener(RepositoryListener<User> listener) {
+        listeners.remove(listener);
     }
     
     public Optional<User> findByEmail(String email) {
-        return Optional.ofNullable(usersByEmail.get(email));
+        try (Span span = Tracer.startSpan("UserRepository.findByEmail")) {
+            String key = normalizeEmail(email);
+            if (key == null || !knownEmails.mightContain(key)) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(usersByEmail.get(key));
+        }
     }
     
     public Optional<User> findById(String id) {
-        return Optional.ofNullable(usersById.get(id));
+        try (Span span = Tracer.startSpan("UserRepository.findById")) {
+            return Optional.ofNullable(usersById.get(id));
+        }
     }
     
     public boolean existsByEmail(String email) {
-        return usersByEmail.containsKey(email);
+        String key = normalizeEmail(email);
+        return key != null && knownEmails.mightContain(key) && usersByEmail.containsKey(key);
+    }
+    
+    public int count() {
+        return usersById.size();
+    }
+    
+    /**
+     * Estimated heap held by the users and by each index, maintained as users are saved
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        return footprint.snapshot();
+    }
+    
+    private void trackFootprint(User user, String emailKey) {
+        PasswordCredential credential = user.getCredential();
+        int entity = MemoryLayout.object(5 * MemoryLayout.REFERENCE)
+                + MemoryLayout.string(user.getId())
+                + MemoryLayout.string(user.getEmail())
+                + (credential == null ? 0 : MemoryLayout.object(2 * MemoryLayout.REFERENCE + 4)
+                        + MemoryLayout.bytes(credential.getHash())
+                        + MemoryLayout.bytes(credential.getSalt()))
+                + MemoryLayout.dateTime(user.getCreatedAt())
+                + MemoryLayout.dateTime(user.getLastLoginAt());
+        // The slot and the key kept per id; the canonical email is only a separate string
+        // when normalizing changed it
+        int byEmail = 2 * MemoryLayout.HASH_ENTRY + (emailKey == user.getEmail() ? 0 : MemoryLayout.string(emailKey));
+        footprint.update(user.getId(), entity, MemoryLayout.HASH_ENTRY, byEmail, 0);
     }
 }
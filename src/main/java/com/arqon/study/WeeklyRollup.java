@@ -0,0 +1,44 @@
+package com.arqon.study;
+
+import java.time.LocalDate;
+
+/**
+ * Assignment activity for one ISO week, for one course or all of them
+ */
+public class WeeklyRollup {
+    private final LocalDate weekStart;
+    private final int created;
+    private final int completed;
+    private final int overdue;
+    private final int estimatedHours;
+    
+    public WeeklyRollup(LocalDate weekStart, int created, int completed, int overdue, int estimatedHours) {
+        this.weekStart = weekStart;
+        this.created = created;
+        this.completed = completed;
+        this.overdue = overdue;
+        this.estimatedHours = estimatedHours;
+    }
+    
+    /** Monday of the ISO week */
+    public LocalDate getWeekStart() { return weekStart; }
+    /** Assignments created during the week */
+    public int getCreated() { return created; }
+    /** Assignments marked completed during the week */
+    public int getCompleted() { return completed; }
+    /** Assignments due during the week and not completed by their due date; 0 until the week is over */
+    public int getOverdue() { return overdue; }
+    /** Estimated hours of the assignments due during the week */
+    public int getEstimatedHours() { return estimatedHours; }
+    
+    @Override
+    public String toString() {
+        return "WeeklyRollup{" +
+                "weekStart=" + weekStart +
+                ", created=" + created +
+                ", completed=" + completed +
+                ", overdue=" + overdue +
+                ", estimatedHours=" + estimatedHours +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.arqon.study;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Declares bytes-allocated-per-call budgets for service methods and checks them with the
+ * JVM's per-thread allocation counter.
+ *
+ * Each operation is warmed up first so the JIT has compiled it, then run repeatedly on the
+ * calling thread; the reported figure is the average over those runs. Work an operation
+ * hands to other threads, such as password hashing on the hasher's pool, is counted when
+ * those threads are named with {@link #countingThreads(Predicate)}. Every budget is
+ * checked before failing, so one run lists every operation that went over.
+ */
+final class AllocationBudget {
+    private static final int WARMUP = 20_000;
+    private static final int OPERATIONS = 5_000;
+    
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<String, Budget> budgets = new LinkedHashMap<>();
+    private Predicate<Thread> otherThreads = thread -> false;
+    
+    /**
+     * Also count what matching threads allocate while an operation runs
+     */
+    AllocationBudget countingThreads(Predicate<Thread> threads) {
+        this.otherThreads = threads;
+        return this;
+    }
+    
+    /**
+     * @param name operation name used in failure messages
+     * @param maxBytesPerCall the most an average call may allocate
+     */
+    AllocationBudget declare(String name, long maxBytesPerCall, Runnable operation) {
+        budgets.put(name, new Budget(maxBytesPerCall, operation));
+        return this;
+    }
+    
+    /**
+     * Average bytes one call of an operation allocates on the calling thread and on the
+     * counted threads alive once it is warmed up
+     */
+    long bytesPerCall(Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long[] threadIds = countedThreadIds();
+        long[] before = threads.getThreadAllocatedBytes(threadIds);
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+        long[] after = threads.getThreadAllocatedBytes(threadIds);
+        long total = 0;
+        for (int i = 0; i < threadIds.length; i++) {
+            // A thread that died meanwhile reports -1; what it allocated is lost with it
+            if (before[i] >= 0 && after[i] >= 0) {
+                total += after[i] - before[i];
+            }
+        }
+        return total / OPERATIONS;
+    }
+    
+    private long[] countedThreadIds() {
+        List<Long> ids = new ArrayList<>();
+        ids.add(Thread.currentThread().getId());
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread != Thread.currentThread() && otherThreads.test(thread)) {
+                ids.add(thread.getId());
+            }
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    /**
+     * Measure every declared operation and fail if any is over its budget
+     */
+    void assertWithinBudgets() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "Per-thread allocation counters are not available");
+        List<String> overBudget = new ArrayList<>();
+        for (Map.Entry<String, Budget> entry : budgets.entrySet()) {
+            Budget budget = entry.getValue();
+            long bytes = bytesPerCall(budget.operation);
+            if (bytes > budget.maxBytesPerCall) {
+                overBudget.add(entry.getKey() + " allocated " + bytes + " bytes per call, budget "
+                        + budget.maxBytesPerCall);
+            }
+        }
+        if (!overBudget.isEmpty()) {
+            fail(String.join("\n", overBudget));
+        }
+    }
+    
+    private static final class Budget {
+        final long maxBytesPerCall;
+        final Runnable operation;
+        
+        Budget(long maxBytesPerCall, Runnable operation) {
+            this.maxBytesPerCall = maxBytesPerCall;
+            this.operation = operation;
+        }
+    }
+}
@@ -3,11 +3,25 @@ package com.arqon.study;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
-
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class AssignmentManagementTest {
 
@@ -311,4 +325,632 @@ public class AssignmentManagementTest {
         assertEquals(1, assignmentManagementService.getAssignmentsCountByStatus("completed"));
         assertEquals(0, assignmentManagementService.getAssignmentsCountByStatus("in-progress"));
     }
+
+    @Test
+    @DisplayName("Dashboard summary should track status counts, overdue items and weekly hours")
+    void testDashboardSummaryAggregates() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        DashboardSummaryEngine engine = new DashboardSummaryEngine(clock, 2);
+        repository.addListener(engine);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        Long essay = service.createAssignment("Essay", "Draft", "ENG101", now.plusDays(1), "high", 4)
+                .getAssignment().getId();
+        service.createAssignment("Lab", "Report", "CHEM101", now.plusDays(3), "medium", 2);
+        service.createAssignment("Project", "Final", "CS101", now.plusDays(10), "low", 20);
+        service.updateAssignmentStatus(essay, "completed");
+
+        // When
+        DashboardSummary summary = engine.getSummary(DashboardSummaryEngine.ALL_USERS);
+        clock.advance(Duration.ofDays(5));
+        DashboardSummary later = engine.getSummary(DashboardSummaryEngine.ALL_USERS);
+
+        // Then
+        assertEquals(3, summary.getTotalCount());
+        assertEquals(1, summary.getCount("completed"));
+        assertEquals(2, summary.getCount("todo"));
+        assertEquals(0, summary.getOverdueCount());
+        assertEquals(2, summary.getHoursDueThisWeek());
+        assertEquals("Lab", summary.getUpcoming().get(0).getTitle());
+        assertEquals(2, summary.getUpcoming().size());
+        assertEquals(1, later.getOverdueCount());
+        assertEquals(20, later.getHoursDueThisWeek());
+    }
+
+    @Test
+    @DisplayName("Users should only see and update their own assignments")
+    void testAssignmentsArePartitionedByUser() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentManagementService service = new AssignmentManagementService(assignmentRepository, sessionManager);
+        Session alice = sessionManager.createSession("alice");
+        Session bob = sessionManager.createSession("bob");
+        LocalDateTime now = LocalDateTime.now();
+        Long aliceEssay = service.createAssignment(alice, "Essay", "Draft", "ENG101", now.plusDays(1), "high", 4)
+                .getAssignment().getId();
+        service.createAssignment(bob, "Lab", "Report", "CHEM101", now.plusDays(2), "low", 2);
+
+        // When
+        AssignmentStatusUpdateResult bobUpdate = service.updateAssignmentStatus(bob, aliceEssay, "completed");
+        sessionManager.invalidateSession(bob.getSessionId());
+
+        // Then
+        assertEquals(1, service.getAllAssignments(alice).size());
+        assertEquals("Essay", service.getAllAssignments(alice).get(0).getTitle());
+        assertFalse(bobUpdate.isSuccess());
+        assertEquals("todo", service.getAssignmentById(alice, aliceEssay).get().getStatus());
+        assertTrue(service.getAllAssignments(bob).isEmpty());
+        assertEquals(1, assignmentRepository.count("bob"));
+        assertTrue(service.getAllAssignments().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Methods without a session should not reach a user's assignments by id")
+    void testSessionlessMethodsSeeOnlyUnownedAssignments() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentManagementService service = new AssignmentManagementService(assignmentRepository, sessionManager);
+        Session alice = sessionManager.createSession("alice");
+        Long aliceEssay = service.createAssignment(alice, "Essay", "Draft", "ENG101",
+                LocalDateTime.now().plusDays(1), "high", 4).getAssignment().getId();
+        Long shared = service.createAssignment("Lab", "Report", "CHEM101",
+                LocalDateTime.now().plusDays(2), "low", 2).getAssignment().getId();
+
+        // When
+        Optional<Assignment> guessed = service.getAssignmentById(aliceEssay);
+
+        // Then
+        assertTrue(guessed.isEmpty());
+        assertEquals("Lab", service.getAssignmentById(shared).get().getTitle());
+        assertEquals(1, service.getTotalAssignmentsCount());
+        assertEquals(1, service.getTotalAssignmentsCount(alice));
+        assertFalse(service.updateAssignmentStatus(aliceEssay, "completed").isSuccess());
+    }
+
+    @Test
+    @DisplayName("Study plan should schedule by deadline and priority and flag work that cannot fit")
+    void testStudyPlanScheduling() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        StudyPlanScheduler scheduler = new StudyPlanScheduler(clock, 4);
+        repository.addListener(scheduler);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        Long lab = service.createAssignment("Lab", "Report", "CHEM101", now.plusDays(2), "medium", 3)
+                .getAssignment().getId();
+        service.createAssignment("Essay", "Draft", "ENG101", now.plusDays(4), "high", 6);
+        Assignment project = service.createAssignment("Project", "Final", "CS101", now.plusDays(3), "low", 20)
+                .getAssignment();
+
+        // When
+        StudyPlan plan = scheduler.getPlan(null);
+
+        // Then
+        assertEquals("Lab", plan.getBlocks().get(0).getAssignment().getTitle());
+        assertEquals(3, plan.getBlocks().get(0).getHours());
+        assertEquals("Essay", plan.getBlocks().get(1).getAssignment().getTitle());
+        assertEquals(1, plan.getBlocks().get(1).getHours());
+        assertEquals(now.toLocalDate().plusDays(1), plan.getBlocks().get(2).getDate());
+        assertEquals(1, plan.getInfeasible().size());
+        assertEquals("Project", plan.getInfeasible().get(0).getTitle());
+
+        service.updateAssignmentStatus(lab, "completed");
+        project.setEstimatedHours(2);
+        repository.updateAssignment(project);
+        StudyPlan replanned = scheduler.getPlan(null);
+        assertTrue(replanned.getInfeasible().isEmpty());
+        assertEquals(8, replanned.getBlocks().stream().mapToInt(StudyPlan.Block::getHours).sum());
+        assertEquals("Essay", replanned.getBlocks().get(0).getAssignment().getTitle());
+    }
+
+    @Test
+    @DisplayName("Study plan should give infeasible work no hours and reuse the plan until something changes")
+    void testStudyPlanSkipsInfeasibleWorkAndIsCached() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        StudyPlanScheduler scheduler = new StudyPlanScheduler(clock, 4);
+        repository.addListener(scheduler);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        service.createAssignment("Lab", null, "CHEM101", now.plusDays(2), "medium", 3);
+        service.createAssignment("Project", null, "CS101", now.plusDays(3), "low", 20);
+        service.createAssignment("Reading", null, "ENG101", now.plusDays(5), "low", 4);
+
+        // When
+        StudyPlan plan = scheduler.getPlan(null);
+
+        // Then
+        assertEquals("Project", plan.getInfeasible().get(0).getTitle());
+        assertTrue(plan.getBlocks().stream().noneMatch(b -> b.getAssignment().getTitle().equals("Project")));
+        assertEquals("Reading", plan.getBlocks().get(1).getAssignment().getTitle());
+        assertEquals(now.toLocalDate(), plan.getBlocks().get(1).getDate());
+        assertEquals(1, plan.getBlocks().get(1).getHours());
+        assertEquals(3, plan.getBlocks().get(2).getHours());
+        assertSame(plan, scheduler.getPlan(null));
+
+        service.createAssignment("Quiz", null, "MATH101", now.plusDays(6), "low", 2);
+        StudyPlan replanned = scheduler.getPlan(null);
+        assertNotSame(plan, replanned);
+        assertEquals(3, plan.getBlocks().size());
+        assertEquals("Quiz", replanned.getBlocks().get(3).getAssignment().getTitle());
+        clock.advance(Duration.ofDays(1));
+        assertEquals(now.toLocalDate().plusDays(1), scheduler.getPlan(null).getStartDate());
+    }
+
+    @Test
+    @DisplayName("Every public query should be timed when the service is built with metrics")
+    void testBuilderWiresMetricsIntoEveryQuery() {
+        // Given
+        try (MetricsRegistry metrics = new MetricsRegistry()) {
+            AssignmentManagementService service = AssignmentManagementService.builder(assignmentRepository)
+                    .metrics(metrics)
+                    .build();
+            service.createAssignment("Essay", null, "ENG101", LocalDateTime.of(2030, 3, 1, 23, 59), "high", 3);
+
+            // When
+            service.getAllAssignmentsByPriority();
+            service.getMostUrgentAssignments(5);
+            service.getMonthCalendar(YearMonth.of(2030, 3));
+            service.getWeekCalendar(LocalDate.of(2030, 3, 1));
+            service.getTotalAssignmentsCount();
+
+            // Then
+            for (String method : List.of("getAllAssignmentsByPriority", "getMostUrgentAssignments",
+                    "getMonthCalendar", "getWeekCalendar", "getTotalAssignmentsCount")) {
+                assertEquals(1, metrics.getMethods().get("AssignmentManagementService." + method).getCount(), method);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Calendar views should return every day of the range with its assignments")
+    void testCalendarDayBuckets() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentManagementService service = new AssignmentManagementService(assignmentRepository, sessionManager);
+        Session session = sessionManager.createSession("alice");
+        LocalDateTime march5 = LocalDateTime.of(2024, 3, 5, 17, 0);
+        Assignment essay = service.createAssignment(session, "Essay", null, "ENG101", march5, "high", 4)
+                .getAssignment();
+        service.createAssignment(session, "Quiz", null, "MATH101", march5.withHour(9), "low", 1);
+        service.createAssignment(session, "Lab", null, "CHEM101", LocalDateTime.of(2024, 4, 2, 12, 0), "low", 2);
+        service.createAssignment("Unowned", null, "CS101", march5, "low", 1);
+
+        // When
+        List<CalendarDay> march = service.getMonthCalendar(session, YearMonth.of(2024, 3));
+        List<CalendarDay> week = service.getWeekCalendar(session, LocalDate.of(2024, 3, 7));
+
+        // Then
+        assertEquals(31, march.size());
+        assertEquals(2, march.get(4).getAssignments().size());
+        assertEquals("Quiz", march.get(4).getAssignments().get(0).getTitle());
+        assertEquals(2, march.stream().mapToInt(day -> day.getAssignments().size()).sum());
+        assertEquals(7, week.size());
+        assertEquals(DayOfWeek.MONDAY, week.get(0).getDate().getDayOfWeek());
+        assertEquals(2, week.get(1).getAssignments().size());
+
+        essay.setDueDate(march5.plusDays(1));
+        assignmentRepository.updateAssignment(essay);
+        List<CalendarDay> moved = service.getWeekCalendar(session, LocalDate.of(2024, 3, 7));
+        assertEquals(1, moved.get(1).getAssignments().size());
+        assertEquals("Essay", moved.get(2).getAssignments().get(0).getTitle());
+    }
+
+    @Test
+    @DisplayName("Analytics should roll up created, completed, overdue and hours by course and week")
+    void testWeeklyAnalyticsRollups() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        AnalyticsEngine analytics = new AnalyticsEngine(clock);
+        repository.addListener(analytics);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        Long essay = service.createAssignment("Essay", null, "ENG101", now.plusDays(2), "high", 4)
+                .getAssignment().getId();
+        service.createAssignment("Lab", null, "CHEM101", now.plusDays(3), "medium", 2);
+        service.createAssignment("Project", null, "CHEM101", now.plusDays(8), "low", 10);
+        service.updateAssignmentStatus(essay, "completed");
+
+        // When
+        clock.advance(Duration.ofDays(14));
+        List<WeeklyRollup> all = analytics.getWeeklyRollups(null, AnalyticsEngine.ALL_COURSES,
+                now.toLocalDate(), now.toLocalDate().plusDays(7));
+        List<WeeklyRollup> chemistry = analytics.getWeeklyRollups(null, "CHEM101",
+                now.toLocalDate(), now.toLocalDate().plusDays(7));
+
+        // Then
+        assertEquals(2, all.size());
+        assertEquals(LocalDate.of(2024, 3, 4), all.get(0).getWeekStart());
+        assertEquals(3, all.get(0).getCreated());
+        assertEquals(1, all.get(0).getCompleted());
+        assertEquals(1, all.get(0).getOverdue());
+        assertEquals(6, all.get(0).getEstimatedHours());
+        assertEquals(1, all.get(1).getOverdue());
+        assertEquals(10, chemistry.get(1).getEstimatedHours());
+        assertEquals(0, chemistry.get(0).getCompleted());
+        assertEquals(Set.of("CHEM101", "ENG101"), analytics.getCourses(null));
+
+        service.updateAssignmentStatus(essay, "todo");
+        assertEquals(0, analytics.getWeeklyRollups(null, "ENG101", now.toLocalDate(), now.toLocalDate())
+                .get(0).getCompleted());
+    }
+
+    @Test
+    @DisplayName("Recurring assignments should expand on demand and store only changed occurrences")
+    void testRecurringAssignmentsExpandLazily() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 20, 12, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        RecurringAssignmentRepository recurring = new RecurringAssignmentRepository(clock);
+        AssignmentManagementService service = AssignmentManagementService.builder(repository)
+                .recurringRepository(recurring)
+                .build();
+        RecurrenceRule weekly = RecurrenceRule.weekly(LocalDateTime.of(2024, 3, 1, 23, 59), 15);
+        Long problemSets = service.createRecurringAssignment("Problem set", null, "MATH201", weekly, "medium", 3)
+                .getRecurringAssignment().getId();
+
+        // When
+        AssignmentStatusUpdateResult update = service.updateOccurrenceStatus(problemSets, 1, "completed");
+        List<Assignment> overdue = service.getOverdueAssignments();
+        List<CalendarDay> march = service.getMonthCalendar(YearMonth.of(2024, 3));
+        List<Assignment> april = service.getAssignmentsWithFilters(null, null,
+                LocalDateTime.of(2024, 4, 1, 0, 0), LocalDateTime.of(2024, 4, 30, 23, 59));
+
+        // Then
+        assertTrue(update.isSuccess());
+        assertEquals(1, repository.count());
+        assertEquals(2, overdue.size());
+        assertEquals(LocalDate.of(2024, 3, 1), overdue.get(0).getDueDate().toLocalDate());
+        assertEquals(5, march.stream().mapToInt(day -> day.getAssignments().size()).sum());
+        assertEquals("completed", march.get(7).getAssignments().get(0).getStatus());
+        assertEquals(4, april.size());
+        assertNull(april.get(0).getId());
+        assertEquals(14, service.getAssignmentsWithFilters(null, "todo", null,
+                LocalDateTime.of(2024, 12, 31, 0, 0)).size());
+        assertTrue(service.getAssignmentsWithFilters(null, "todo", null, null).isEmpty());
+        assertEquals(1, service.getAllAssignments().size());
+        assertEquals(1, service.getTotalAssignmentsCount());
+
+        service.updateOccurrenceStatus(problemSets, 1, "in-progress");
+        assertEquals(1, repository.count());
+        assertEquals(1, service.getAssignmentsWithFilters(null, "in-progress", null, null).size());
+    }
+
+    @Test
+    @DisplayName("A weekly rule until a last day should stop on or before that day and reject an empty range")
+    void testWeeklyUntilLastDay() {
+        // Given
+        LocalDateTime firstDue = LocalDateTime.of(2024, 3, 1, 23, 59);
+
+        // When
+        RecurrenceRule sameDay = RecurrenceRule.weeklyUntil(firstDue, LocalDate.of(2024, 3, 1));
+        RecurrenceRule term = RecurrenceRule.weeklyUntil(firstDue, LocalDate.of(2024, 3, 28));
+
+        // Then
+        assertEquals(1, sameDay.getCount());
+        assertEquals(4, term.getCount());
+        assertEquals(LocalDate.of(2024, 3, 22), term.dueDate(term.getCount() - 1).toLocalDate());
+        assertThrows(IllegalArgumentException.class,
+                () -> RecurrenceRule.weeklyUntil(firstDue, LocalDate.of(2024, 2, 27)));
+        assertThrows(IllegalArgumentException.class,
+                () -> RecurrenceRule.weeklyUntil(firstDue, LocalDate.of(2024, 2, 20)));
+    }
+
+    @Test
+    @DisplayName("An occurrence stored but not yet marked overridden should not be listed twice")
+    void testStoredOccurrenceHidesGeneratedCopy() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 20, 12, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        RecurringAssignmentRepository recurring = new RecurringAssignmentRepository(clock);
+        AssignmentManagementService service = AssignmentManagementService.builder(repository)
+                .recurringRepository(recurring)
+                .build();
+        RecurrenceRule weekly = RecurrenceRule.weekly(LocalDateTime.of(2024, 3, 1, 23, 59), 15);
+        RecurringAssignment template = service.createRecurringAssignment("Problem set", null, "MATH201", weekly,
+                "medium", 3).getRecurringAssignment();
+
+        // When - stored while still generated, as when it is changed during a read
+        Assignment stored = template.occurrence(1);
+        stored.setStatus("completed");
+        repository.save(stored);
+        List<CalendarDay> march = service.getMonthCalendar(YearMonth.of(2024, 3));
+
+        // Then
+        assertEquals(5, march.stream().mapToInt(day -> day.getAssignments().size()).sum());
+        assertEquals(List.of(stored), march.get(7).getAssignments());
+        assertEquals(15, service.getAssignmentsWithFilters(null, null, null,
+                LocalDateTime.of(2024, 12, 31, 0, 0)).size());
+    }
+
+    @Test
+    @DisplayName("Reminders should fire 24 hours and 1 hour before due and follow edits")
+    void testDueSoonReminders() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        List<Reminder> delivered = new ArrayList<>();
+        ReminderScheduler reminders = new ReminderScheduler(clock, delivered::addAll, 1000, 2);
+        repository.addListener(reminders);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        Assignment essay = service.createAssignment("Essay", null, "ENG101", now.plusDays(2), "high", 4)
+                .getAssignment();
+        Long lab = service.createAssignment("Lab", null, "CHEM101", now.plusDays(2), "low", 2)
+                .getAssignment().getId();
+        Long quiz = service.createAssignment("Quiz", null, "MATH101", now.plusDays(2), "low", 1)
+                .getAssignment().getId();
+        service.createAssignment("Soon", null, "CS101", now.plusMinutes(30), "low", 1);
+
+        // When
+        essay.setDueDate(now.plusDays(3));
+        repository.updateAssignment(essay);
+        service.updateAssignmentStatus(lab, "completed");
+        repository.deleteAssignment(quiz);
+        clock.advance(Duration.ofSeconds(1));
+        reminders.poll();
+        clock.advance(Duration.ofDays(2));
+
+        // Then
+        assertEquals(1, delivered.size());
+        assertEquals("Soon", delivered.get(0).getAssignment().getTitle());
+        assertEquals(Reminder.Type.DUE_IN_1_HOUR, delivered.get(0).getType());
+        assertEquals(1, reminders.poll());
+        assertEquals(Reminder.Type.DUE_IN_24_HOURS, delivered.get(1).getType());
+        assertEquals("Essay", delivered.get(1).getAssignment().getTitle());
+        clock.advance(Duration.ofHours(23).minusMinutes(1));
+        assertEquals(0, reminders.poll());
+        clock.advance(Duration.ofMinutes(1));
+        assertEquals(1, reminders.poll());
+        assertEquals(Reminder.Type.DUE_IN_1_HOUR, delivered.get(2).getType());
+        assertEquals(0, reminders.pendingCount());
+    }
+
+    @Test
+    @DisplayName("A reminder sink that throws should lose only its own batch")
+    void testFailingReminderSinkKeepsTicking() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        AssignmentRepository repository = new AssignmentRepository(clock);
+        List<Reminder> delivered = new ArrayList<>();
+        int[] calls = {0};
+        ReminderScheduler reminders = new ReminderScheduler(clock, batch -> {
+            if (calls[0]++ == 0) {
+                throw new IllegalStateException("mail server down");
+            }
+            delivered.addAll(batch);
+        }, 1000, 1);
+        repository.addListener(reminders);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime now = clock.now();
+        service.createAssignment("Essay", null, "ENG101", now.plusMinutes(30), "high", 4);
+        service.createAssignment("Lab", null, "CHEM101", now.plusMinutes(40), "low", 2);
+        service.createAssignment("Quiz", null, "MATH101", now.plusHours(25), "low", 1);
+
+        // When
+        clock.advance(Duration.ofSeconds(1));
+        int first = reminders.poll();
+        clock.advance(Duration.ofHours(1));
+        int second = reminders.poll();
+
+        // Then
+        assertEquals(1, first);
+        assertEquals(1, reminders.getFailedBatchCount());
+        assertEquals(1, second);
+        assertEquals("Quiz", delivered.get(1).getAssignment().getTitle());
+        assertEquals(1, reminders.pendingCount());
+    }
+
+    @Test
+    @DisplayName("Assignments should be listed by priority, then due date, with the most urgent open ones first")
+    void testPriorityThenDeadlineOrdering() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        Assignment lowSoon = assignmentManagementService.createAssignment("Reading", null, "ENG101",
+                now.plusDays(1), "low", 1).getAssignment();
+        Long highLater = assignmentManagementService.createAssignment("Project", null, "CS101",
+                now.plusDays(9), "High", 10).getAssignment().getId();
+        Long highSoon = assignmentManagementService.createAssignment("Exam prep", null, "MATH101",
+                now.plusDays(2), "high", 6).getAssignment().getId();
+        assignmentManagementService.createAssignment("Misc", null, "ART101", now, "someday", 1);
+        Long medium = assignmentManagementService.createAssignment("Lab", null, "CHEM101",
+                now.plusDays(3), "medium", 2).getAssignment().getId();
+
+        // When
+        List<Assignment> byPriority = assignmentManagementService.getAllAssignmentsByPriority();
+        assignmentManagementService.updateAssignmentStatus(highSoon, "completed");
+        List<Assignment> urgent = assignmentManagementService.getMostUrgentAssignments(2);
+
+        // Then
+        assertEquals(Arrays.asList("Exam prep", "Project", "Lab", "Reading", "Misc"),
+                byPriority.stream().map(Assignment::getTitle).collect(Collectors.toList()));
+        assertEquals(2, urgent.size());
+        assertEquals(highLater, urgent.get(0).getId());
+        assertEquals(medium, urgent.get(1).getId());
+
+        lowSoon.setPriority("high");
+        assignmentRepository.updateAssignment(lowSoon);
+        assertEquals("Reading", assignmentManagementService.getMostUrgentAssignments(1).get(0).getTitle());
+    }
+
+    @Test
+    @DisplayName("Budget: core assignment queries and updates should stay within their allocation budgets")
+    void testAssignmentOperationsStayWithinAllocationBudgets() {
+        // Given
+        SessionManager sessions = new SessionManager();
+        AssignmentManagementService service = new AssignmentManagementService(assignmentRepository, sessions);
+        Session session = sessions.createSession("user-id");
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 9, 0);
+        for (int i = 0; i < 200; i++) {
+            service.createAssignment(session, "Assignment " + i, null, i % 2 == 0 ? "CS101" : "MATH201",
+                    start.plusHours(i * 7), i % 3 == 0 ? "high" : "low", 2);
+        }
+        Long id = service.getAllAssignments(session).get(100).getId();
+        String[] statuses = {"todo", "in-progress"};
+        int[] flips = {0};
+        // Created and deleted in a partition of their own, so the other operations see 200 rows
+        Session churn = sessions.createSession("churn-user");
+        ArrayDeque<Long> created = new ArrayDeque<>();
+        
+        // When
+        AllocationBudget budget = new AllocationBudget()
+                .declare("getAssignmentsCountByStatus", 256, () -> service.getAssignmentsCountByStatus(session, "todo"))
+                .declare("getAssignmentById", 256, () -> service.getAssignmentById(session, id))
+                .declare("getMostUrgentAssignments", 384, () -> service.getMostUrgentAssignments(session, 10))
+                .declare("getAllAssignments", 2560, () -> service.getAllAssignments(session))
+                .declare("getAssignmentsWithFilters", 2560,
+                        () -> service.getAssignmentsWithFilters(session, "CS101", "todo", null, null))
+                .declare("updateAssignmentStatus", 640,
+                        () -> service.updateAssignmentStatus(session, id, statuses[flips[0]++ & 1]))
+                .declare("createAssignment", 1536, () -> created.add(service.createAssignment(churn, "Lab", null,
+                        "CS101", start, "low", 1).getAssignment().getId()))
+                .declare("AssignmentRepository.deleteAssignment", 128,
+                        () -> assignmentRepository.deleteAssignment(created.poll()));
+        
+        // Then
+        budget.assertWithinBudgets();
+    }
+
+    @Test
+    @DisplayName("Slow query log should keep the latest sampled queries and flush them to rotating files")
+    void testSlowQueryLogRecordsAndRotates(@TempDir Path dir) throws Exception {
+        // Given
+        SlowQueryLog log = new SlowQueryLog(0, 1.0, 4);
+        AssignmentRepository repository = new AssignmentRepository(TimeSource.system(), log);
+        AssignmentManagementService service = new AssignmentManagementService(repository);
+        LocalDateTime due = LocalDateTime.of(2030, 3, 1, 23, 59);
+        service.createAssignment("Essay", null, "ENG101", due, "high", 3);
+        service.createAssignment("Lab", null, "CS101", due.plusDays(1), "low", 2);
+        service.createAssignment("Quiz", null, "CS101", due.plusDays(2), "medium", 1);
+        Path file = dir.resolve("slow-queries.log");
+        log.startFileFlush(file, 200, 2, 60_000);
+        
+        // When
+        for (int i = 0; i < 5; i++) {
+            service.getAllAssignments();
+        }
+        service.getAssignmentsWithFilters("CS101", "todo", null, null);
+        log.close();
+        
+        // Then
+        List<SlowQuery> recent = log.getRecent();
+        assertEquals(4, recent.size());
+        assertEquals(6, log.getRecordedCount());
+        assertEquals(2, log.getDroppedCount());
+        SlowQuery last = recent.get(3);
+        assertEquals("findAssignmentsWithFilters", last.getQuery());
+        assertEquals(3, last.getRowsScanned());
+        assertEquals(2, last.getRowsReturned());
+        assertTrue(last.getParameters().contains("course=CS101 status=todo"));
+        assertEquals("findAllAssignmentsSortedByDueDate", recent.get(0).getQuery());
+        assertTrue(Files.readString(file).contains("findAssignmentsWithFilters"));
+        assertTrue(Files.exists(dir.resolve("slow-queries.log.1")));
+        assertFalse(Files.exists(dir.resolve("slow-queries.log.3")));
+    }
+    
+    @Test
+    @DisplayName("Slow query log should stamp entries from its clock and survive failed flushes")
+    void testSlowQueryLogSurvivesFlushErrors(@TempDir Path dir) throws Exception {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 3, 4, 9, 0));
+        SlowQueryLog log = new SlowQueryLog(clock, 0, 1.0, 16);
+        Path file = dir.resolve("slow-queries.log");
+        Files.createDirectory(file);
+        log.startFileFlush(file, 1 << 20, 1, 60_000);
+        log.record("findAllAssignmentsSortedByDueDate", "", 3, 3, 1_000);
+        
+        // When
+        log.flush();
+        Files.delete(file);
+        log.record("findAssignmentsWithFilters", "course=CS101", 3, 1, 1_000);
+        log.flush();
+        
+        // Then
+        assertEquals(1, log.getFlushErrorCount());
+        assertEquals(0, log.getDroppedCount());
+        assertEquals(clock.currentTimeMillis(), log.getRecent().get(0).getTimestamp().toEpochMilli());
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("findAllAssignmentsSortedByDueDate"));
+        log.close();
+    }
+    
+    @Test
+    @DisplayName("Slow query log entries buffered when a flush fails should be written by the next flush")
+    void testSlowQueryLogRetriesEntriesOfFailedFlush(@TempDir Path dir) throws Exception {
+        // Given - a log file that points at a device whose writes always fail
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.isWritable(full), "Needs /dev/full");
+        SlowQueryLog log = new SlowQueryLog(0, 1.0, 16);
+        Path file = dir.resolve("slow-queries.log");
+        Files.createSymbolicLink(file, full);
+        log.startFileFlush(file, 1 << 20, 1, 60_000);
+        log.record("findAllAssignmentsSortedByDueDate", "", 3, 3, 1_000);
+        
+        // When
+        log.flush();
+        Files.delete(file);
+        log.record("findAssignmentsWithFilters", "course=CS101", 3, 1, 1_000);
+        log.flush();
+        
+        // Then
+        assertEquals(1, log.getFlushErrorCount());
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("findAllAssignmentsSortedByDueDate"));
+        log.close();
+    }
+    
+    @Test
+    @DisplayName("Slow query log should skip queries under the threshold")
+    void testSlowQueryLogThreshold() {
+        // Given
+        SlowQueryLog log = new SlowQueryLog(60_000, 1.0);
+        AssignmentManagementService service = new AssignmentManagementService(
+                new AssignmentRepository(TimeSource.system(), log));
+        service.createAssignment("Essay", null, "ENG101", LocalDateTime.of(2030, 3, 1, 23, 59), "high", 3);
+        
+        // When
+        service.getAllAssignments();
+        
+        // Then
+        assertTrue(log.getRecent().isEmpty());
+        assertFalse(SlowQueryLog.disabled().shouldRecord(Long.MAX_VALUE));
+    }
+    
+    @Test
+    @DisplayName("Memory footprint should follow saves, in-place edits, deletes and clears")
+    void testMemoryFootprintTracksRowsAndIndexes() {
+        // Given
+        Assignment essay = assignmentManagementService.createAssignment(
+                "Essay", null, "ENG101", LocalDateTime.of(2030, 3, 1, 23, 59), "high", 3).getAssignment();
+        assignmentManagementService.createAssignment(
+                "Reading", "Chapter 4", "ENG101", LocalDateTime.of(2030, 3, 2, 9, 0), "low", 1);
+        MemoryFootprint before = assignmentRepository.getMemoryFootprint();
+        
+        // When
+        essay.setDescription("A much longer description written after the assignment was created");
+        assignmentRepository.updateAssignment(essay);
+        MemoryFootprint edited = assignmentRepository.getMemoryFootprint();
+        assignmentRepository.deleteAssignment(essay.getId());
+        MemoryFootprint deleted = assignmentRepository.getMemoryFootprint();
+        
+        // Then
+        assertEquals(2, before.getEntityCount());
+        assertTrue(before.getIndexBytes("byUrgency") > 0);
+        assertEquals(before.getEntityBytes() + before.getTotalIndexBytes(), before.getTotalBytes());
+        assertTrue(edited.getEntityBytes() > before.getEntityBytes());
+        assertEquals(before.getIndexBytes("byId"), edited.getIndexBytes("byId"));
+        assertEquals(1, deleted.getEntityCount());
+        assertEquals(before.getIndexBytes("byDueDay") / 2, deleted.getIndexBytes("byDueDay"));
+        assertEquals(before.getIndexBytes("byId") / 2, deleted.getIndexBytes("byId"));
+        
+        assignmentRepository.clear();
+        assertEquals(0, assignmentRepository.getMemoryFootprint().getTotalBytes());
+    }
 }
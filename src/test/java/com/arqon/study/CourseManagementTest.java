@@ -4,8 +4,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * TDD Test Suite for Course Management Features
@@ -222,4 +234,449 @@ public class CourseManagementTest {
         assertNotNull(result.getCourse().getId());
         assertNotNull(result.getCourse().getCreatedAt());
     }
+    
+    @Test
+    @DisplayName("Users should only see and delete their own courses")
+    void testCoursesArePartitionedByUser() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        CourseManagementService service = new CourseManagementService(courseRepository, sessionManager);
+        Session alice = sessionManager.createSession("alice");
+        Session bob = sessionManager.createSession("bob");
+        Long aliceCourse = service.createCourse(alice, "Data Structures", "CS201", "Dr. Lee", null, null, null)
+                .getCourse().getId();
+        service.createCourse(bob, "Organic Chemistry", "CHEM201", "Dr. Wu", null, null, null);
+        
+        // When
+        CourseDeletionResult bobDeletion = service.deleteCourse(bob, aliceCourse);
+        
+        // Then
+        assertFalse(bobDeletion.isSuccess());
+        assertEquals("Course not found", bobDeletion.getMessage());
+        assertEquals(1, service.getAllCourses(alice).size());
+        assertEquals("Organic Chemistry", service.getAllCourses(bob).get(0).getName());
+        assertTrue(service.getAllCourses().isEmpty());
+        assertTrue(service.getCourseById(aliceCourse).isEmpty());
+        assertTrue(service.deleteCourse(alice, aliceCourse).isSuccess());
+    }
+    
+    @Test
+    @DisplayName("A session forged by the caller should not reach another user's courses")
+    void testForgedSessionIsRejected() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        CourseManagementService service = new CourseManagementService(courseRepository, sessionManager);
+        Session alice = sessionManager.createSession("alice");
+        service.createCourse(alice, "Data Structures", "CS201", "Dr. Lee", null, null, null);
+        Session forged = new Session("alice", TimeSource.system().now());
+        
+        // When
+        List<Course> withManager = service.getAllCourses(forged);
+        List<Course> withoutManager = courseService.getAllCourses(alice);
+        CourseCreationResult created = courseService.createCourse(alice, "Algorithms", "CS301", "Dr. Lee",
+                null, null, null);
+        
+        // Then
+        assertTrue(withManager.isEmpty());
+        assertTrue(withoutManager.isEmpty());
+        assertFalse(created.isSuccess());
+        assertEquals(1, courseRepository.count("alice"));
+    }
+    
+    @Test
+    @DisplayName("Renaming or deleting a course should cascade to its assignments")
+    void testCourseChangesCascadeToAssignments() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentRepository assignmentRepository = new AssignmentRepository();
+        CourseManagementService service = CourseManagementService.builder(courseRepository)
+                .assignmentRepository(assignmentRepository)
+                .sessionManager(sessionManager)
+                .build();
+        AssignmentManagementService assignments = AssignmentManagementService.builder(assignmentRepository)
+                .courseRepository(courseRepository)
+                .sessionManager(sessionManager)
+                .build();
+        Session session = sessionManager.createSession("alice");
+        Long courseId = service.createCourse(session, "Data Structures", "CS201", "Dr. Lee", null, null, null)
+                .getCourse().getId();
+        Long otherCourseId = service.createCourse(session, "Algorithms", "CS301", "Dr. Lee", null, null, null)
+                .getCourse().getId();
+        LocalDateTime due = LocalDateTime.now().plusDays(3);
+        assignments.createAssignmentForCourse(session, "Linked lists", null, courseId, due, "high", 3);
+        assignments.createAssignmentForCourse(session, "Trees", null, courseId, due, "medium", 5);
+        assignments.createAssignmentForCourse(session, "Graphs", null, otherCourseId, due, "low", 8);
+        
+        // When
+        CourseUpdateResult update = service.updateCourse(session, courseId, "Data Structures", "CS210",
+                "Dr. Lee", null, null, null);
+        
+        // Then
+        assertTrue(update.isSuccess());
+        assertTrue(assignments.getAssignmentsForCourse(session, courseId).stream()
+                .allMatch(a -> a.getCourse().equals("CS210")));
+        assertTrue(service.deleteCourse(session, courseId).isSuccess());
+        assertTrue(assignmentRepository.findAssignmentsByCourseId(courseId).isEmpty());
+        assertEquals(1, assignmentRepository.count("alice"));
+        assertEquals("Graphs", assignments.getAllAssignments(session).get(0).getTitle());
+    }
+    
+    @Test
+    @DisplayName("A course deleted while assignments are added to it should leave none behind")
+    void testCourseDeleteRacesAssignmentCreate() throws Exception {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentRepository assignmentRepository = new AssignmentRepository();
+        CourseManagementService service = CourseManagementService.builder(courseRepository)
+                .assignmentRepository(assignmentRepository)
+                .sessionManager(sessionManager)
+                .build();
+        AssignmentManagementService assignments = AssignmentManagementService.builder(assignmentRepository)
+                .courseRepository(courseRepository)
+                .sessionManager(sessionManager)
+                .build();
+        Session session = sessionManager.createSession("alice");
+        LocalDateTime due = LocalDateTime.now().plusDays(3);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 50; round++) {
+                Long courseId = service.createCourse(session, "Data Structures", "CS201", "Dr. Lee", null, null, null)
+                        .getCourse().getId();
+                Course stored = courseRepository.findById(courseId).orElseThrow();
+                CountDownLatch start = new CountDownLatch(1);
+                
+                // When
+                Future<?> creates = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20; i++) {
+                        assignments.createAssignmentForCourse(session, "Lab " + i, null, courseId, due, "high", 1);
+                    }
+                    return null;
+                });
+                Future<CourseUpdateResult> update = executor.submit(() -> {
+                    start.await();
+                    return service.updateCourse(session, courseId, "Algorithms", "CS301", "Dr. Lee", null, null, null);
+                });
+                start.countDown();
+                update.get();
+                assertTrue(service.deleteCourse(session, courseId).isSuccess());
+                creates.get();
+                
+                // Then
+                assertTrue(assignmentRepository.findAssignmentsByCourseId(courseId).isEmpty());
+                assertEquals("Data Structures", stored.getName());
+                assertEquals("CS201", stored.getCode());
+            }
+            assertEquals(0, assignmentRepository.count("alice"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    @DisplayName("A course update racing its delete should never bring the deleted course back")
+    void testCourseUpdateRacesCourseDelete() throws Exception {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentRepository assignmentRepository = new AssignmentRepository();
+        CourseManagementService service = CourseManagementService.builder(courseRepository)
+                .assignmentRepository(assignmentRepository)
+                .sessionManager(sessionManager)
+                .build();
+        AssignmentManagementService assignments = AssignmentManagementService.builder(assignmentRepository)
+                .courseRepository(courseRepository)
+                .sessionManager(sessionManager)
+                .build();
+        Session session = sessionManager.createSession("alice");
+        LocalDateTime due = LocalDateTime.now().plusDays(3);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 200; round++) {
+                Long courseId = service.createCourse(session, "Data Structures", "CS201", "Dr. Lee", null, null, null)
+                        .getCourse().getId();
+                assignments.createAssignmentForCourse(session, "Lab", null, courseId, due, "high", 1);
+                CountDownLatch start = new CountDownLatch(1);
+                
+                // When
+                Future<CourseUpdateResult> update = executor.submit(() -> {
+                    start.await();
+                    return service.updateCourse(session, courseId, "Algorithms", "CS301", "Dr. Lee", null, null, null);
+                });
+                Future<CourseDeletionResult> delete = executor.submit(() -> {
+                    start.await();
+                    return service.deleteCourse(session, courseId);
+                });
+                start.countDown();
+                CourseUpdateResult updated = update.get();
+                
+                // Then
+                assertTrue(delete.get().isSuccess());
+                assertTrue(service.getCourseById(session, courseId).isEmpty());
+                assertTrue(assignmentRepository.findAssignmentsByCourseId(courseId).isEmpty());
+                if (!updated.isSuccess()) {
+                    assertEquals("Course not found", updated.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    @DisplayName("Search should rank the user's matching courses and assignments and follow deletes")
+    void testFullTextSearchOverCoursesAndAssignments() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        AssignmentRepository assignmentRepository = new AssignmentRepository();
+        SearchService search = new SearchService(assignmentRepository, courseRepository, sessionManager);
+        CourseManagementService service = CourseManagementService.builder(courseRepository)
+                .assignmentRepository(assignmentRepository)
+                .sessionManager(sessionManager)
+                .build();
+        AssignmentManagementService assignments = AssignmentManagementService.builder(assignmentRepository)
+                .courseRepository(courseRepository)
+                .sessionManager(sessionManager)
+                .build();
+        Session alice = sessionManager.createSession("alice");
+        Session bob = sessionManager.createSession("bob");
+        Long courseId = service.createCourse(alice, "Data Structures", "CS201", "Dr. Lee",
+                "Trees, heaps and hash tables", null, null).getCourse().getId();
+        LocalDateTime due = LocalDateTime.now().plusDays(3);
+        Long treesId = assignments.createAssignmentForCourse(alice, "Binary search trees",
+                "Implement tree insertion and tree rotations", courseId, due, "high", 3).getAssignment().getId();
+        assignments.createAssignmentForCourse(alice, "Hash maps", "Open addressing", courseId, due, "low", 2);
+        assignments.createAssignment(bob, "Tree planting essay", null, "BIO100", due, "low", 1);
+        
+        // When
+        List<SearchResult> results = search.search(alice, "tree", 10);
+        
+        // Then
+        assertEquals(2, results.size());
+        assertEquals(SearchResult.Type.ASSIGNMENT, results.get(0).getType());
+        assertEquals(treesId, results.get(0).getId());
+        assertEquals(SearchResult.Type.COURSE, results.get(1).getType());
+        assertEquals(1, search.search(bob, "trees", 10).size());
+        assertEquals("CS201", search.search(alice, "cs201", 10).get(0).getCourse().getCode());
+        assertTrue(search.search("tree", 10).isEmpty());
+        
+        service.deleteCourse(alice, courseId);
+        assertTrue(search.search(alice, "tree hash", 10).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Search without a session manager should find nothing for a session instead of failing")
+    void testSearchWithoutSessionManager() {
+        // Given
+        SearchService search = new SearchService(new AssignmentRepository(), courseRepository, null);
+        CourseManagementService service = CourseManagementService.builder(courseRepository).build();
+        service.createCourse("Data Structures", "CS201", "Dr. Lee", "Trees and heaps", null, null);
+        Session session = new SessionManager().createSession("alice");
+        
+        // When
+        List<SearchResult> results = search.search(session, "trees", 10);
+        
+        // Then
+        assertTrue(results.isEmpty());
+        assertEquals(1, search.search("trees", 10).size());
+    }
+    
+    @Test
+    @DisplayName("Search ranking should ignore removed documents and keep only the best matches")
+    void testSearchRankingIgnoresRemovedDocuments() {
+        // Given
+        InvertedIndex fresh = new InvertedIndex();
+        fresh.put(1, "graph algorithms");
+        fresh.put(2, "graph theory notes");
+        InvertedIndex edited = new InvertedIndex();
+        edited.put(1, "graph algorithms");
+        for (long key = 100; key < 200; key++) {
+            edited.put(key, "graph exercises");
+        }
+        edited.put(2, "graph theory notes");
+        
+        // When
+        for (long key = 100; key < 200; key++) {
+            edited.remove(key);
+        }
+        List<InvertedIndex.Hit> expected = fresh.search("graph algorithms", 10);
+        List<InvertedIndex.Hit> actual = edited.search("graph algorithms", 10);
+        
+        // Then
+        assertEquals(2, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getKey(), actual.get(i).getKey());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+        }
+        for (long key = 10; key < 20; key++) {
+            edited.put(key, "graph algorithms");
+        }
+        List<InvertedIndex.Hit> top = edited.search("graph algorithms", 3);
+        assertEquals(List.of(1L, 10L, 11L), top.stream().map(InvertedIndex.Hit::getKey).collect(Collectors.toList()));
+    }
+    
+    @Test
+    @DisplayName("Course suggestions should match code or name prefixes and follow edits")
+    void testCourseSuggestionsByPrefix() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        CourseManagementService service = new CourseManagementService(courseRepository, sessionManager);
+        Session alice = sessionManager.createSession("alice");
+        Session bob = sessionManager.createSession("bob");
+        Long structures = service.createCourse(alice, "Data Structures", "CS201", "Dr. Lee", null, null, null)
+                .getCourse().getId();
+        service.createCourse(alice, "Databases", "CS340", "Dr. Kim", null, null, null);
+        service.createCourse(alice, "Calculus", "MATH101", "Dr. Ng", null, null, null);
+        service.createCourse(bob, "Data Mining", "CS450", "Dr. Wu", null, null, null);
+        
+        // When
+        List<Course> suggestions = service.suggestCourses(alice, "da", 10);
+        
+        // Then
+        assertEquals(2, suggestions.size());
+        assertEquals("Data Structures", suggestions.get(0).getName());
+        assertEquals(2, service.suggestCourses(alice, "CS", 10).size());
+        assertEquals(1, service.suggestCourses(alice, "cs", 1).size());
+        assertEquals(1, service.suggestCourses(bob, "data", 10).size());
+        assertTrue(service.suggestCourses("da", 10).isEmpty());
+        
+        service.updateCourse(alice, structures, "Algorithms", "CS202", "Dr. Lee", null, null, null);
+        assertEquals("Databases", service.suggestCourses(alice, "da", 10).get(0).getName());
+        assertEquals("Algorithms", service.suggestCourses(alice, "alg", 10).get(0).getName());
+        service.deleteCourse(alice, structures);
+        assertTrue(service.suggestCourses(alice, "cs20", 10).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Active course queries should use the parsed course dates")
+    void testActiveCoursesByDate() {
+        // Given
+        SessionManager sessionManager = new SessionManager();
+        CourseManagementService service = new CourseManagementService(courseRepository, sessionManager);
+        Session session = sessionManager.createSession("alice");
+        service.createCourse(session, "Spring Algebra", "MATH101", null, null, "2024-01-15", "2024-05-15");
+        Long summer = service.createCourse(session, "Summer Lab", "CHEM110", null, null, "2024-06-01", "2024-07-31")
+                .getCourse().getId();
+        service.createCourse(session, "Thesis", "RES900", null, null, "2024-03-01", null);
+        service.createCourse(session, "Reading Group", "LIT100", null, null, null, null);
+        
+        // When
+        List<Course> inMarch = service.getActiveCourses(session, LocalDate.of(2024, 3, 10));
+        List<Course> endOfMay = service.getCoursesActiveBetween(session,
+                LocalDate.of(2024, 5, 27), LocalDate.of(2024, 6, 2));
+        
+        // Then
+        assertEquals(2, inMarch.size());
+        assertEquals("Spring Algebra", inMarch.get(0).getName());
+        assertEquals(2, endOfMay.size());
+        assertEquals("Summer Lab", endOfMay.get(1).getName());
+        assertTrue(service.getActiveCourses(LocalDate.of(2024, 3, 10)).isEmpty());
+        assertEquals("Invalid start date", service.createCourse(session, "Bad", "X1", null, null,
+                "next monday", null).getMessage());
+        assertEquals("End date must not be before start date", service.createCourse(session, "Bad", "X1",
+                null, null, "2024-02-01", "2024-01-01").getMessage());
+        
+        service.updateCourse(session, summer, "Summer Lab", "CHEM110", null, null, "2024-05-01", "2024-07-31");
+        assertEquals(3, service.getActiveCourses(session, LocalDate.of(2024, 5, 10)).size());
+        service.deleteCourse(session, summer);
+        assertEquals(1, service.getCoursesActiveBetween(session,
+                LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 30)).size());
+    }
+    
+    @Test
+    @DisplayName("Course date index should answer like a full scan across many edits and folds")
+    void testCourseIntervalIndexMatchesScanAcrossEdits() {
+        // Given
+        CourseIntervalIndex index = new CourseIntervalIndex();
+        Map<Long, LocalDate[]> expected = new HashMap<>();
+        Random random = new Random(42);
+        LocalDate base = LocalDate.of(2024, 1, 1);
+        
+        for (int step = 0; step < 3000; step++) {
+            // When
+            long id = random.nextInt(400);
+            if (random.nextInt(5) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                LocalDate start = random.nextInt(10) == 0 ? null : base.plusDays(random.nextInt(365));
+                LocalDate end = random.nextInt(10) == 0 ? null : base.plusDays(random.nextInt(365) + 30);
+                index.put(id, start, end);
+                if (start == null && end == null) {
+                    expected.remove(id);
+                } else {
+                    expected.put(id, new LocalDate[] {start, end});
+                }
+            }
+            
+            // Then
+            if (step % 50 == 0) {
+                LocalDate from = base.plusDays(random.nextInt(400));
+                LocalDate to = from.plusDays(random.nextInt(20));
+                List<Long> scanned = expected.entrySet().stream()
+                        .filter(e -> (e.getValue()[0] == null || !e.getValue()[0].isAfter(to))
+                                && (e.getValue()[1] == null || !e.getValue()[1].isBefore(from)))
+                        .sorted(Comparator.comparing((Map.Entry<Long, LocalDate[]> e) ->
+                                        e.getValue()[0] == null ? LocalDate.MIN : e.getValue()[0])
+                                .thenComparing(Map.Entry::getKey))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList());
+                assertEquals(scanned, index.overlapping(from, to));
+                assertEquals(expected.size(), index.size());
+            }
+        }
+    }
+    
+    @Test
+    @DisplayName("Slow query log should record course listings, suggestions and date queries")
+    void testSlowCourseQueriesAreLogged() {
+        // Given
+        SlowQueryLog log = new SlowQueryLog(0, 1.0, 8);
+        CourseManagementService service = new CourseManagementService(new CourseRepository(TimeSource.system(), log));
+        service.createCourse("Data Structures", "CS201", "Dr. Lee", null, "2024-01-15", "2024-05-15");
+        service.createCourse("Algorithms", "CS301", "Dr. Lee", null, "2024-06-01", "2024-08-15");
+        
+        // When
+        service.getAllCourses();
+        service.suggestCourses("cs", 5);
+        service.getActiveCourses(LocalDate.of(2024, 3, 10));
+        
+        // Then
+        List<SlowQuery> recent = log.getRecent();
+        assertEquals(List.of("findAllCourses", "suggestCourses", "findCoursesActiveBetween"),
+                recent.stream().map(SlowQuery::getQuery).collect(Collectors.toList()));
+        assertEquals(2, recent.get(0).getRowsReturned());
+        assertTrue(recent.get(1).getParameters().contains("prefix=cs"));
+        assertEquals(1, recent.get(2).getRowsReturned());
+    }
+    
+    @Test
+    @DisplayName("Budget: core course queries and updates should stay within their allocation budgets")
+    void testCourseOperationsStayWithinAllocationBudgets() {
+        // Given
+        SessionManager sessions = new SessionManager();
+        CourseManagementService service = new CourseManagementService(courseRepository, sessions);
+        Session session = sessions.createSession("user-id");
+        for (int i = 0; i < 100; i++) {
+            service.createCourse(session, "Course " + i, "CS" + (100 + i), "Dr. Smith", null,
+                    "2024-01-15", "2024-05-15");
+        }
+        Long id = service.getAllCourses(session).get(50).getId();
+        // Created and deleted in a partition of their own, so the other operations see 100 rows
+        Session churn = sessions.createSession("churn-user");
+        ArrayDeque<Long> created = new ArrayDeque<>();
+        
+        // When
+        AllocationBudget budget = new AllocationBudget()
+                .declare("getCourseById", 256, () -> service.getCourseById(session, id))
+                .declare("suggestCourses", 1280, () -> service.suggestCourses(session, "cs1", 5))
+                .declare("getAllCourses", 1024, () -> service.getAllCourses(session))
+                .declare("updateCourse", 1536, () -> service.updateCourse(session, id, "Course 50", "CS150",
+                        "Dr. Smith", null, "2024-01-15", "2024-05-15"))
+                .declare("createCourse", 16384, () -> created.add(service.createCourse(churn, "Compilers", "CS401",
+                        "Dr. Smith", null, "2024-01-15", "2024-05-15").getCourse().getId()))
+                .declare("deleteCourse", 6144, () -> service.deleteCourse(churn, created.poll()));
+        
+        // Then
+        budget.assertWithinBudgets();
+    }
 }
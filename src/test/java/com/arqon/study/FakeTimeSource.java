@@ -0,0 +1,41 @@
+package com.arqon.study;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Manually controlled time source for tests.
+ * Time only moves when {@link #set(LocalDateTime)} or {@link #advance(Duration)} is called.
+ */
+public class FakeTimeSource implements TimeSource {
+    private final ZoneId zone;
+    private volatile LocalDateTime now;
+    
+    public FakeTimeSource(LocalDateTime start) {
+        this(start, ZoneId.systemDefault());
+    }
+    
+    public FakeTimeSource(LocalDateTime start, ZoneId zone) {
+        this.now = start;
+        this.zone = zone;
+    }
+    
+    @Override
+    public LocalDateTime now() {
+        return now;
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        return now.atZone(zone).toInstant().toEpochMilli();
+    }
+    
+    public synchronized void set(LocalDateTime now) {
+        this.now = now;
+    }
+    
+    public synchronized void advance(Duration duration) {
+        this.now = now.plus(duration);
+    }
+}
@@ -3,7 +3,40 @@ package com.arqon.study;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 
 /**
  * TDD Test Suite for User Authentication Features
@@ -182,4 +215,745 @@ public class UserAuthenticationTest {
         assertFalse(result.isSuccess());
         assertEquals("Invalid session", result.getErrorMessage());
     }
+    
+    @Test
+    @DisplayName("Legacy unsalted hashes should be upgraded on the next successful login")
+    void testLegacyHashIsRehashedOnLogin() {
+        // Given - SHA-256 hex of "securePassword123" as stored by the original implementation
+        User legacyUser = new User("legacy-id", "legacy@example.com", sha256Hex("securePassword123"));
+        userRepository.save(legacyUser);
+        
+        // When
+        LoginResult result = authService.loginUser("legacy@example.com", "securePassword123");
+        
+        // Then
+        assertTrue(result.isSuccess());
+        assertTrue(userRepository.findById("legacy-id").get().getPassword().startsWith(PasswordHasher.ALGORITHM_ID + "$"));
+        assertTrue(authService.loginUser("legacy@example.com", "securePassword123").isSuccess());
+    }
+    
+    @Test
+    @DisplayName("A login racing a rehash of the same user should never see a partly written hash")
+    void testVerifyDuringRehashSeesWholeCredential() throws Exception {
+        // Given
+        PasswordHasher hasher = new PasswordHasher(10, 2, 64, 10_000);
+        String legacy = sha256Hex("securePassword123");
+        String upgraded = hasher.hash("securePassword123");
+        User user = new User("user-id", "user@example.com", legacy);
+        ExecutorService rehasher = Executors.newSingleThreadExecutor();
+        CountDownLatch done = new CountDownLatch(1);
+        
+        // When - one thread keeps swapping the stored hash while this one verifies
+        Future<?> swaps = rehasher.submit(() -> {
+            for (int i = 0; done.getCount() > 0; i++) {
+                user.setPassword(i % 2 == 0 ? upgraded : legacy);
+            }
+        });
+        int failures = 0;
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                if (!hasher.verify("securePassword123", user)) {
+                    failures++;
+                }
+            }
+        } finally {
+            done.countDown();
+            swaps.get();
+            rehasher.shutdown();
+            hasher.shutdown();
+        }
+        
+        // Then
+        assertEquals(0, failures);
+    }
+    
+    @Test
+    @DisplayName("Stored hashes should match the standard PBKDF2-HMAC-SHA256 derivation")
+    void testHashMatchesStandardPbkdf2() throws Exception {
+        // Given
+        User user = new User("id", "user@example.com", new PasswordHasher(1000, 1, 1, 10_000).hash("pässwörd-😀"));
+        
+        // When
+        PBEKeySpec spec = new PBEKeySpec(
+                "pässwörd-😀".toCharArray(), user.getPasswordSalt(), 1000, 256);
+        byte[] expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(spec).getEncoded();
+        
+        // Then
+        assertArrayEquals(expected, user.getPasswordHash());
+        assertEquals(1000, user.getPasswordIterations());
+    }
+    
+    @Test
+    @DisplayName("A hash that times out should be cancelled and free its hashing thread")
+    void testTimedOutHashReleasesThread() {
+        // Given - one thread and a work factor that would take minutes to finish
+        PasswordHasher hasher = new PasswordHasher(Integer.MAX_VALUE, 1, 1, 50);
+        User legacyUser = new User("legacy-id", "legacy@example.com", sha256Hex("securePassword123"));
+        
+        // When
+        assertThrows(PasswordHasher.HasherBusyException.class, () -> hasher.hash("securePassword123"));
+        boolean verified = false;
+        for (int attempt = 0; attempt < 40 && !verified; attempt++) {
+            try {
+                verified = hasher.verify("securePassword123", legacyUser);
+            } catch (PasswordHasher.HasherBusyException e) {
+                // Thread still busy with the cancelled hash; try again
+            }
+        }
+        
+        // Then
+        assertTrue(verified);
+        hasher.shutdown();
+    }
+    
+    @Test
+    @DisplayName("Login against a malformed stored hash should fail instead of throwing")
+    void testMalformedStoredHashFailsLogin() {
+        // Given
+        User user = new User("id", "user@example.com", PasswordHasher.ALGORITHM_ID + "$many$c2FsdA$aGFzaA");
+        userRepository.save(user);
+        
+        // When
+        LoginResult result = authService.loginUser("user@example.com", "securePassword123");
+        
+        // Then
+        assertFalse(result.isSuccess());
+        assertEquals("Invalid credentials", result.getErrorMessage());
+        assertNull(user.getPasswordHash());
+    }
+    
+    @Test
+    @DisplayName("Registration should treat emails differing only in case as the same user")
+    void testRegistrationNormalizesEmail() {
+        // Given
+        authService.registerUser("User@Example.com", "securePassword123");
+        
+        // When
+        UserRegistrationResult result = authService.registerUser("  user@example.COM ", "anotherPassword");
+        
+        // Then
+        assertFalse(result.isSuccess());
+        assertEquals("Email already exists", result.getErrorMessage());
+        assertTrue(authService.loginUser("USER@example.com", "securePassword123").isSuccess());
+    }
+    
+    @Test
+    @DisplayName("Concurrent registrations with the same email should create exactly one user")
+    void testConcurrentRegistrationCreatesSingleUser() throws Exception {
+        // Given
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserRegistrationResult>> results = new ArrayList<>();
+        
+        // When
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return authService.registerUser("race@example.com", "securePassword123");
+            }));
+        }
+        start.countDown();
+        int successes = 0;
+        for (Future<UserRegistrationResult> result : results) {
+            if (result.get().isSuccess()) {
+                successes++;
+            }
+        }
+        executor.shutdown();
+        
+        // Then
+        assertEquals(1, successes);
+        assertEquals(1, userRepository.count());
+    }
+    
+    @Test
+    @DisplayName("Changing a user's email to one another user holds should be refused")
+    void testEmailChangeCannotTakeAnotherUsersEmail() {
+        // Given
+        authService.registerUser("first@example.com", "securePassword123");
+        User second = authService.registerUser("second@example.com", "securePassword123").getUser();
+        
+        // When
+        second.setEmail("First@Example.com");
+        boolean saved = userRepository.save(second);
+        second.setEmail("renamed@example.com");
+        boolean renamed = userRepository.save(second);
+        
+        // Then
+        assertFalse(saved);
+        assertTrue(renamed);
+        assertNotEquals(second.getId(), userRepository.findByEmail("first@example.com").get().getId());
+        assertEquals(second.getId(), userRepository.findByEmail("renamed@example.com").get().getId());
+        assertFalse(userRepository.existsByEmail("second@example.com"));
+    }
+    
+    @Test
+    @DisplayName("The email filter should grow past the number of users it was sized for")
+    void testEmailFilterGrowsWithUsers() {
+        // Given
+        UserRepository users = new UserRepository(16);
+        long initialFilterBytes = users.getMemoryFootprint().getIndexBytes("emailFilter");
+        
+        // When
+        for (int i = 0; i < 1_000; i++) {
+            User user = new User();
+            user.setId("user-" + i);
+            user.setEmail("user" + i + "@example.com");
+            assertTrue(users.insertIfAbsent(user));
+        }
+        
+        // Then
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(users.findByEmail("user" + i + "@example.com").isPresent());
+        }
+        assertTrue(users.getMemoryFootprint().getIndexBytes("emailFilter")
+                >= new EmailBloomFilter(1_000, 0.01).sizeInBytes());
+        assertTrue(initialFilterBytes < new EmailBloomFilter(1_000, 0.01).sizeInBytes());
+    }
+    
+    @Test
+    @DisplayName("Dashboard should be cached per user and dropped on logout")
+    void testDashboardCacheInvalidatedOnLogout() {
+        // Given
+        DashboardCache cache = new DashboardCache(2);
+        UserAuthenticationService service = UserAuthenticationService.builder(userRepository, sessionManager)
+                .dashboardCache(cache)
+                .timeSource(TimeSource.system())
+                .build();
+        service.registerUser("user@example.com", "securePassword123");
+        String sessionId = service.loginUser("user@example.com", "securePassword123").getSession().getSessionId();
+        
+        // When
+        Dashboard first = service.accessDashboard(sessionId).getDashboard();
+        Dashboard second = service.accessDashboard(sessionId).getDashboard();
+        
+        // Then
+        assertSame(first, second);
+        assertEquals(1, cache.size());
+        service.logoutUser(sessionId);
+        assertEquals(0, cache.size());
+        assertFalse(service.accessDashboard(sessionId).isSuccess());
+    }
+    
+    @Test
+    @DisplayName("A dashboard cache shared by services should be registered once and removed on close")
+    void testDashboardCacheListenerRegisteredOnce() {
+        // Given
+        AtomicInteger saves = new AtomicInteger();
+        DashboardCache cache = new DashboardCache() {
+            @Override
+            public void onSave(User user) {
+                saves.incrementAndGet();
+                super.onSave(user);
+            }
+        };
+        UserAuthenticationService first = UserAuthenticationService.builder(userRepository, sessionManager)
+                .dashboardCache(cache)
+                .build();
+        UserAuthenticationService second = UserAuthenticationService.builder(userRepository, sessionManager)
+                .dashboardCache(cache)
+                .build();
+        
+        // When
+        first.registerUser("first@example.com", "securePassword123");
+        second.close();
+        second.registerUser("second@example.com", "securePassword123");
+        int savesWhileRegistered = saves.get();
+        first.close();
+        first.registerUser("third@example.com", "securePassword123");
+        
+        // Then
+        assertEquals(2, savesWhileRegistered);
+        assertEquals(2, saves.get());
+    }
+    
+    @Test
+    @DisplayName("A dashboard built while its user was saved should not be written back")
+    void testStaleDashboardIsNotCached() {
+        // Given
+        DashboardCache cache = new DashboardCache();
+        long generation = cache.generation("user-1");
+        
+        // When - the user is saved between reading the user and caching the dashboard
+        cache.invalidate("user-1");
+        boolean stored = cache.put("user-1", generation, new Dashboard("old@example.com", "Welcome"));
+        
+        // Then
+        assertFalse(stored);
+        assertFalse(cache.get("user-1").isPresent());
+        assertTrue(cache.put("user-1", cache.generation("user-1"), new Dashboard("new@example.com", "Welcome")));
+        assertEquals("new@example.com", cache.get("user-1").get().getUserEmail());
+    }
+    
+    @Test
+    @DisplayName("Session should expire once the injected clock passes its lifetime")
+    void testSessionExpiresWithFakeClock() {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 1, 15, 9, 0));
+        SessionManager clockedSessions = new SessionManager(clock);
+        Session session = clockedSessions.createSession("user-id");
+        
+        // When
+        clock.advance(Duration.ofHours(Session.SESSION_LIFETIME_HOURS));
+        boolean validAtLimit = clockedSessions.isValidSession(session.getSessionId());
+        clock.advance(Duration.ofSeconds(1));
+        
+        // Then
+        assertTrue(validAtLimit);
+        assertFalse(clockedSessions.isValidSession(session.getSessionId()));
+        assertTrue(session.isExpired(clock));
+        assertFalse(new Session("user-id", clock).isExpired(clock));
+    }
+    
+    @Test
+    @DisplayName("The coarse clock's date-time and millis should come from the same reading")
+    void testCoarseTimeSourceIsConsistent() throws Exception {
+        // Given
+        try (CoarseTimeSource clock = new CoarseTimeSource()) {
+            Thread.sleep(5);
+            
+            // When / Then - one tick is published at a time, so both reads agree unless it changes
+            for (int i = 0; i < 10_000; i++) {
+                long millis = clock.currentTimeMillis();
+                LocalDateTime now = clock.now();
+                if (millis == clock.currentTimeMillis()) {
+                    assertEquals(millis, now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                }
+            }
+        }
+    }
+    
+    @Test
+    @DisplayName("Sessions in a mapped session table should survive a restart")
+    void testMappedSessionsSurviveRestart(@TempDir Path dir) {
+        // Given
+        Path file = dir.resolve("sessions.tbl");
+        String sessionId;
+        String loggedOutId;
+        try (MappedSessionStore store = MappedSessionStore.open(file, 64, TimeSource.system())) {
+            SessionManager manager = new SessionManager(store, TimeSource.system());
+            sessionId = manager.createSession("user-id").getSessionId();
+            loggedOutId = manager.createSession("other-user").getSessionId();
+            manager.invalidateSession(loggedOutId);
+        }
+        
+        // When
+        try (MappedSessionStore reopened = MappedSessionStore.open(file, 64, TimeSource.system())) {
+            SessionManager manager = new SessionManager(reopened, TimeSource.system());
+            
+            // Then
+            assertTrue(manager.isValidSession(sessionId));
+            assertEquals("user-id", manager.getSession(sessionId).get().getUserId());
+            assertFalse(manager.isValidSession(loggedOutId));
+            assertFalse(manager.isValidSession("invalid-session-id"));
+            assertEquals(1, reopened.size());
+        }
+    }
+    
+    @Test
+    @DisplayName("Memory footprint of a mapped session table should count sessions loaded after a restart")
+    void testMappedSessionFootprintAfterRestart(@TempDir Path dir) {
+        // Given
+        Path file = dir.resolve("sessions.tbl");
+        try (MappedSessionStore store = MappedSessionStore.open(file, 64, TimeSource.system())) {
+            SessionManager manager = new SessionManager(store, TimeSource.system());
+            manager.createSession("user-1");
+            manager.createSession("user-2");
+            manager.invalidateSession(manager.createSession("user-3").getSessionId());
+        }
+        
+        // When
+        try (MappedSessionStore reopened = MappedSessionStore.open(file, 64, TimeSource.system())) {
+            MemoryFootprint footprint = new SessionManager(reopened, TimeSource.system()).getMemoryFootprint();
+            
+            // Then
+            assertEquals(2, footprint.getEntityCount());
+            assertEquals(2L * MappedSessionStore.SLOT_SIZE, footprint.getTotalBytes());
+        }
+    }
+    
+    @Test
+    @DisplayName("A slot torn by a crash mid-write should be dropped when the table is reopened")
+    void testMappedSessionTableRepairsTornSlot(@TempDir Path dir) throws Exception {
+        // Given - a session whose slot was left with an odd sequence number
+        Path file = dir.resolve("sessions.tbl");
+        String tornId;
+        try (MappedSessionStore store = MappedSessionStore.open(file, 16, TimeSource.system())) {
+            tornId = new SessionManager(store, TimeSource.system()).createSession("user-id").getSessionId();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            for (int slot = 64; slot < buffer.capacity(); slot += 128) {
+                if (buffer.getInt(slot + 40) != 0) {
+                    buffer.putLong(slot, buffer.getLong(slot) + 1);
+                }
+            }
+            buffer.force();
+        }
+        
+        // When
+        try (MappedSessionStore reopened = MappedSessionStore.open(file, 16, TimeSource.system())) {
+            SessionManager manager = new SessionManager(reopened, TimeSource.system());
+            
+            // Then - lookups return instead of spinning, and the slot is writable again
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertFalse(manager.getSession(tornId).isPresent());
+                assertEquals(0, reopened.size());
+                Session reused = new Session("user-id", TimeSource.system());
+                reused.setSessionId(tornId);
+                reopened.put(reused);
+                assertEquals("user-id", manager.getSession(tornId).get().getUserId());
+            });
+        }
+    }
+    
+    @Test
+    @DisplayName("Reopening a mapped session table should finish the one write a crash cut short")
+    void testMappedSessionTableFinishesPendingWrite(@TempDir Path dir) throws Exception {
+        // Given - a write recorded in the header whose slot was left torn, and a stale count
+        Path file = dir.resolve("sessions.tbl");
+        String first;
+        String second;
+        try (MappedSessionStore store = MappedSessionStore.open(file, 16, TimeSource.system())) {
+            SessionManager manager = new SessionManager(store, TimeSource.system());
+            first = manager.createSession("user-1").getSessionId();
+            second = manager.createSession("user-2").getSessionId();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            for (int index = 0; index < 16; index++) {
+                int slot = 64 + index * 128;
+                if (buffer.getInt(slot + 40) != 0) {
+                    buffer.putLong(slot, buffer.getLong(slot) + 1);
+                    buffer.putInt(12, 7);
+                    buffer.putInt(16, index + 1);
+                    buffer.putInt(20, 1);
+                    break;
+                }
+            }
+            buffer.force();
+        }
+        
+        // When
+        try (MappedSessionStore reopened = MappedSessionStore.open(file, 16, TimeSource.system())) {
+            SessionManager manager = new SessionManager(reopened, TimeSource.system());
+            
+            // Then
+            assertEquals(1, reopened.size());
+            assertEquals(1, Stream.of(first, second).filter(manager::isValidSession).count());
+        }
+    }
+    
+    @Test
+    @DisplayName("Expired sessions should be purged on a background thread rather than when the table is opened")
+    void testMappedSessionTablePurgesInBackground(@TempDir Path dir) throws Exception {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 1, 15, 9, 0));
+        Path file = dir.resolve("sessions.tbl");
+        try (MappedSessionStore store = MappedSessionStore.open(file, 64, clock)) {
+            SessionManager manager = new SessionManager(store, clock);
+            for (int i = 0; i < 3; i++) {
+                manager.createSession("user-" + i);
+            }
+        }
+        clock.advance(Duration.ofHours(Session.SESSION_LIFETIME_HOURS + 1));
+        
+        // When
+        try (MappedSessionStore reopened = MappedSessionStore.open(file, 64, clock)) {
+            int sizeOnOpen = reopened.size();
+            reopened.startPurging(10);
+            for (int wait = 0; wait < 200 && reopened.size() > 0; wait++) {
+                Thread.sleep(10);
+            }
+            
+            // Then
+            assertEquals(3, sizeOnOpen);
+            assertEquals(0, reopened.size());
+            assertEquals(0, reopened.usedSlots());
+        }
+    }
+    
+    @Test
+    @DisplayName("Removed and expired sessions should not leave the mapped table without empty slots")
+    void testMappedSessionTableReclaimsDeadSlots(@TempDir Path dir) {
+        // Given
+        FakeTimeSource clock = new FakeTimeSource(LocalDateTime.of(2024, 1, 15, 9, 0));
+        try (MappedSessionStore store = MappedSessionStore.open(dir.resolve("sessions.tbl"), 64, clock)) {
+            SessionManager manager = new SessionManager(store, clock);
+            
+            // When - heavy churn through a small table, half logged out and half left to expire
+            for (int i = 0; i < 2_000; i++) {
+                Session session = manager.createSession("user-" + i);
+                if (i % 2 == 0) {
+                    manager.invalidateSession(session.getSessionId());
+                }
+                if (i % 16 == 15) {
+                    clock.advance(Duration.ofHours(Session.SESSION_LIFETIME_HOURS + 1));
+                }
+            }
+            
+            // Then
+            assertTrue(store.usedSlots() < store.getCapacity(), "Every slot is in use");
+            store.purgeExpired();
+            assertEquals(store.size(), store.usedSlots());
+            assertFalse(manager.getSession(UUID.randomUUID().toString()).isPresent());
+        }
+    }
+    
+    @Test
+    @DisplayName("Metrics should time each call, count failures from the result and publish JMX MBeans")
+    void testMetricsRecordLatencyOutcomesAndGauges() throws Exception {
+        // Given
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        try (MetricsRegistry metrics = new MetricsRegistry()) {
+            metrics.registerMBeans(server);
+            UserAuthenticationService service = UserAuthenticationService.builder(userRepository, sessionManager)
+                    .timeSource(TimeSource.system())
+                    .metrics(metrics)
+                    .build();
+            
+            // When
+            service.registerUser("user@example.com", "securePassword123");
+            service.registerUser("user@example.com", "securePassword123");
+            service.loginUser("user@example.com", "wrongPassword");
+            String sessionId = service.loginUser("user@example.com", "securePassword123").getSession().getSessionId();
+            
+            // Then
+            MethodMetrics register = metrics.getMethods().get("UserAuthenticationService.registerUser");
+            assertEquals(2, register.getCount());
+            assertEquals(1, register.getSuccessCount());
+            assertEquals(1, register.getFailureCount());
+            assertTrue(register.getP99Micros() <= register.getMaxMicros());
+            assertTrue(register.getMaxMicros() > 0);
+            assertEquals(1, metrics.getMethods().get("UserAuthenticationService.loginUser").getFailureCount());
+            assertEquals(1L, metrics.getGauges().get("UserRepository.size"));
+            assertEquals(1L, metrics.getGauges().get("SessionManager.size"));
+            assertEquals(userRepository.getMemoryFootprint().getTotalBytes(),
+                    metrics.getGauges().get("UserRepository.bytes"));
+            
+            ObjectName login = new ObjectName(
+                    "com.arqon.study:type=Method,name=UserAuthenticationService.loginUser");
+            assertEquals(1L, server.getAttribute(login, "SuccessCount"));
+            service.accessDashboard(sessionId);
+            assertTrue(server.isRegistered(new ObjectName(
+                    "com.arqon.study:type=Method,name=UserAuthenticationService.accessDashboard")));
+            assertEquals(1L, server.getAttribute(new ObjectName(
+                    "com.arqon.study:type=Gauge,name=UserRepository.size"), "Value"));
+            assertTrue(metrics.dump().contains("UserAuthenticationService.registerUser count=2 success=1 failure=1"));
+        }
+        assertTrue(server.queryNames(new ObjectName("com.arqon.study:*"), null).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Memory footprint should count users, sessions and the fixed email filter")
+    void testMemoryFootprintOfUsersAndSessions() {
+        // Given
+        UserRepository users = new UserRepository(1_000);
+        long filterBytes = users.getMemoryFootprint().getIndexBytes("emailFilter");
+        User user = new User();
+        user.setId("user-1");
+        user.setEmail("User@Example.com");
+        
+        // When
+        users.save(user);
+        Session session = sessionManager.createSession(user.getId());
+        
+        // Then
+        MemoryFootprint userFootprint = users.getMemoryFootprint();
+        assertTrue(filterBytes > 1_000);
+        assertEquals(filterBytes, userFootprint.getIndexBytes("emailFilter"));
+        assertEquals(1, userFootprint.getEntityCount());
+        assertTrue(userFootprint.getEntityBytes() > 100);
+        // The canonical email differs from the stored one, so it is a string of its own
+        assertTrue(userFootprint.getIndexBytes("byEmail") > userFootprint.getIndexBytes("byId"));
+        assertEquals(1, sessionManager.getMemoryFootprint().getEntityCount());
+        
+        sessionManager.invalidateSession(session.getSessionId());
+        assertEquals(0, sessionManager.getMemoryFootprint().getTotalBytes());
+    }
+    
+    @Test
+    @DisplayName("Latency histogram percentiles should stay within one sub-bucket of the true value")
+    void testLatencyHistogramPercentiles() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        // When
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        
+        // Then
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_500, histogram.getMean(), 1);
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p50 >= 50_000_000 && p50 <= 50_000_000 * 17 / 16, "p50 was " + p50);
+        assertTrue(p99 >= 99_000_000 && p99 <= 100_000_000, "p99 was " + p99);
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+    }
+    
+    @Test
+    @DisplayName("Budget: login and dashboard access should stay within their allocation budgets")
+    void testAuthenticationStaysWithinAllocationBudgets() {
+        // Given
+        PasswordHasher hasher = new PasswordHasher(1, 1, 64, 10_000);
+        UserAuthenticationService service = UserAuthenticationService.builder(userRepository, sessionManager)
+                .passwordHasher(hasher)
+                .timeSource(TimeSource.system())
+                .build();
+        service.registerUser("user@example.com", "securePassword123");
+        String sessionId = service.loginUser("user@example.com", "securePassword123").getSession().getSessionId();
+        PasswordCredential credential = userRepository.findByEmail("user@example.com").get().getCredential();
+        ArrayDeque<String> loggedIn = new ArrayDeque<>();
+        int[] registrations = {0};
+        
+        // When - hashing runs on the hasher's pool, so its threads are counted too
+        AllocationBudget budget = new AllocationBudget()
+                .countingThreads(thread -> thread.getName().startsWith("password-hasher-"))
+                .declare("PasswordHasher.verifyNow", 16,
+                        () -> PasswordHasher.verifyNow("securePassword123", credential))
+                .declare("PasswordHasher.hash", 1024, () -> hasher.hash("securePassword123"))
+                .declare("accessDashboard", 192, () -> service.accessDashboard(sessionId))
+                .declare("registerUser", 3072,
+                        () -> service.registerUser("user" + registrations[0]++ + "@example.com", "securePassword123"))
+                .declare("loginUser", 1280, () -> loggedIn.add(
+                        service.loginUser("user@example.com", "securePassword123").getSession().getSessionId()))
+                .declare("logoutUser", 128, () -> service.logoutUser(loggedIn.poll()));
+        
+        // Then
+        budget.assertWithinBudgets();
+        hasher.shutdown();
+    }
+    
+    @Test
+    @DisplayName("Tracing should attribute a dashboard load to its session, user and hashing spans")
+    void testTracingPropagatesAcrossCallsAndThreads(@TempDir Path dir)
+            throws Exception {
+        // Given
+        Path file = dir.resolve("spans.jsonl");
+        List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+        PasswordHasher hasher = new PasswordHasher(1000, 1, 4, 10_000);
+        try (JsonLinesSpanExporter json = new JsonLinesSpanExporter(file)) {
+            Tracer tracer = new Tracer(1.0, span -> {
+                spans.add(span);
+                json.export(span);
+            });
+            UserAuthenticationService service = UserAuthenticationService.builder(userRepository, sessionManager)
+                    .passwordHasher(hasher)
+                    .timeSource(TimeSource.system())
+                    .tracer(tracer)
+                    .build();
+            service.registerUser("user@example.com", "securePassword123");
+            String sessionId = service.loginUser("user@example.com", "securePassword123").getSession().getSessionId();
+            spans.clear();
+            
+            // When
+            service.accessDashboard(sessionId);
+            service.loginUser("user@example.com", "securePassword123");
+        }
+        
+        // Then
+        Span dashboard = spanNamed(spans, "UserAuthenticationService.accessDashboard");
+        assertNull(dashboard.getParentSpanId());
+        assertEquals(dashboard.getSpanId(), spanNamed(spans, "SessionManager.getSession").getParentSpanId());
+        Span findById = spanNamed(spans, "UserRepository.findById");
+        assertEquals(dashboard.getSpanId(), findById.getParentSpanId());
+        assertEquals(dashboard.getTraceId(), findById.getTraceId());
+        assertTrue(dashboard.getDurationNanos() >= findById.getDurationNanos());
+        
+        Span login = spanNamed(spans, "UserAuthenticationService.loginUser");
+        Span verify = spanNamed(spans, "PasswordHasher.verify");
+        Span derive = spanNamed(spans, "PasswordHasher.derive");
+        assertEquals(login.getSpanId(), verify.getParentSpanId());
+        assertEquals(verify.getSpanId(), derive.getParentSpanId());
+        assertEquals(login.getTraceId(), derive.getTraceId());
+        assertTrue(derive.getThreadName().startsWith("password-hasher-"));
+        assertNotEquals(dashboard.getTraceId(), login.getTraceId());
+        assertSame(Span.NOOP, Tracer.currentSpan());
+        
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"traceId\":\"" + dashboard.getTraceId())
+                && line.contains("\"name\":\"UserAuthenticationService.accessDashboard\"")));
+        hasher.shutdown();
+    }
+    
+    @Test
+    @DisplayName("A span exporter whose write fails should count the error and keep exporting")
+    void testSpanExporterSurvivesWriteErrors() throws Exception {
+        // Given - a writer whose first flush fails
+        StringWriter written = new StringWriter();
+        int[] flushes = {0};
+        Writer flaky = new FilterWriter(written) {
+            @Override
+            public void flush() throws IOException {
+                if (flushes[0]++ == 0) {
+                    throw new IOException("Disk full");
+                }
+                super.flush();
+            }
+        };
+        JsonLinesSpanExporter exporter = new JsonLinesSpanExporter(flaky, 4);
+        Tracer tracer = new Tracer(1.0, exporter);
+        
+        // When - more spans than the queue holds, each given time to be written
+        for (int i = 0; i < 20; i++) {
+            tracer.startTrace("span-" + i).close();
+            for (int wait = 0; wait < 200 && !written.toString().contains("\"span-" + i + "\""); wait++) {
+                Thread.sleep(10);
+            }
+        }
+        exporter.close();
+        
+        // Then
+        assertEquals(1, exporter.getWriteErrorCount());
+        assertEquals(0, exporter.getDroppedCount());
+        assertTrue(written.toString().contains("\"span-19\""));
+    }
+    
+    @Test
+    @DisplayName("Unsampled requests should record no spans")
+    void testTracingHeadSampling() {
+        // Given
+        List<Span> spans = new ArrayList<>();
+        UserAuthenticationService service = UserAuthenticationService.builder(userRepository, sessionManager)
+                .passwordHasher(new PasswordHasher(1000, 1, 4, 10_000))
+                .timeSource(TimeSource.system())
+                .tracer(new Tracer(0.0, spans::add))
+                .build();
+        
+        // When
+        service.registerUser("user@example.com", "securePassword123");
+        service.loginUser("user@example.com", "securePassword123");
+        
+        // Then
+        assertTrue(spans.isEmpty());
+        assertSame(Span.NOOP, Tracer.startSpan("orphan"));
+    }
+    
+    private static Span spanNamed(List<Span> spans, String name) {
+        synchronized (spans) {
+            return spans.stream().filter(span -> span.getName().equals(name)).findFirst()
+                    .orElseThrow(() -> new AssertionError("No span " + name + " in " + spans.size()));
+        }
+    }
+    
+    private static String sha256Hex(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }